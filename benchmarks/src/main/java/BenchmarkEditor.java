@@ -0,0 +1,157 @@
+import benchmarks.Editor;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Implementacja interfejsu Editor wywołująca klasy edytora z pakietu domyślnego.
+ * Przechowuje magazyn figur, jego indeks przestrzenny oraz uchwyty do figur utworzonych
+ * przez metodę create, na których wykonywane są operacje geometryczne.
+ */
+
+public class BenchmarkEditor implements Editor {
+    private final FigureStore store;
+    private final SpatialIndex index;
+    private final TiledRenderer renderer;
+    private final FigurePainter painter;
+    private final ArrayList<Figure> handles;
+
+    /**
+     * Tworzy pusty edytor.
+     */
+
+    public BenchmarkEditor() {
+        store = new FigureStore();
+        index = new SpatialIndex(store);
+        renderer = new TiledRenderer(store, index);
+        painter = new FigurePainter();
+        handles = new ArrayList<>();
+    }
+
+    @Override
+    public void clear() {
+        store.clear();
+        handles.clear();
+    }
+
+    @Override
+    public int figureType(String name) {
+        return Figures.valueOf(name).ordinal();
+    }
+
+    @Override
+    public int create(int type, int x, int y) {
+        var figure = new Figure(store, Figures.values()[type], x, y);
+        figure.setOffset(x, y);
+
+        if (handles.size() <= figure.getSlot()) handles.add(figure);
+        else handles.set(figure.getSlot(), figure);
+
+        return figure.getSlot();
+    }
+
+    @Override
+    public void resize(int slot, int mouseX, int mouseY) {
+        handles.get(slot).resize(mouseX, mouseY, false);
+    }
+
+    @Override
+    public void move(int slot, int x, int y) {
+        handles.get(slot).move(x, y);
+    }
+
+    @Override
+    public void scale(int slot, int percentage) {
+        handles.get(slot).scale(percentage);
+    }
+
+    @Override
+    public void generate(int count, long seed, int width, int height) {
+        clear();
+
+        var random = new Random(seed);
+        var names = Figures.values();
+        int[] records = new int[count * FigureStore.RECORD_INTS];
+
+        for (int i = 0, r = 0; i < count; i++) {
+            records[r++] = names[i % names.length].ordinal();
+            records[r++] = random.nextInt(width);
+            records[r++] = random.nextInt(height);
+            records[r++] = 1 + random.nextInt(64);
+            records[r++] = 1 + random.nextInt(64);
+            records[r++] = random.nextInt() | 0xFF000000;
+        }
+
+        store.addRecords(records, count);
+    }
+
+    @Override
+    public int figureAt(int x, int y) {
+        return index.figureAt(x, y);
+    }
+
+    @Override
+    public int figureAtPerType(int x, int y) {
+        return index.figureAtPerType(x, y);
+    }
+
+    @Override
+    public int figureAtLinear(int x, int y) {
+        for (int slot = store.size() - 1; slot >= 0; slot--) {
+            if (store.contains(slot, x, y)) return slot;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void paint(Graphics2D g, int width, int height, boolean tiled) {
+        if (tiled) renderer.render(g, new Rectangle(width, height), 0, store.size());
+        else painter.paintAll(g, store);
+    }
+
+    @Override
+    public void save(Path path) throws IOException {
+        FigureFile.save(path, store);
+    }
+
+    @Override
+    public int load(Path path) throws IOException {
+        clear();
+        FigureFile.load(path, store);
+
+        return store.size();
+    }
+
+    @Override
+    public void recolor(int slot, int argb) {
+        store.setColor(slot, argb);
+    }
+
+    @Override
+    public int snapshot() {
+        return store.snapshot().size();
+    }
+
+    @Override
+    public int copyRecords(int[] records) {
+        for (int slot = 0, r = 0; slot < store.size(); slot++, r += FigureStore.RECORD_INTS) {
+            records[r] = store.getType(slot);
+            records[r + 1] = store.getX(slot);
+            records[r + 2] = store.getY(slot);
+            records[r + 3] = store.getWidth(slot);
+            records[r + 4] = store.getHeight(slot);
+            records[r + 5] = store.getColor(slot);
+        }
+
+        return store.size();
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+}
@@ -0,0 +1,173 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Interfejs, przez który benchmarki wywołują kod edytora. Klasy edytora leżą w pakiecie domyślnym,
+ * do którego nie można się odwołać z nazwanego pakietu, a JMH wymaga, by benchmarki miały pakiet.
+ * Interfejs jest implementowany przez klasę BenchmarkEditor z pakietu domyślnego, ładowaną
+ * jednorazowo przez refleksję, a wywołania metod jedynej implementacji są rozwijane przez JIT.
+ */
+
+public interface Editor {
+
+    /**
+     * Tworzy nowy obiekt edytora.
+     * @return obiekt edytora
+     */
+
+    static Editor create() {
+        try {
+            return (Editor) Class.forName("BenchmarkEditor").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalStateException("Brak klasy BenchmarkEditor", exception);
+        }
+    }
+
+    /**
+     * Usuwa wszystkie figury.
+     */
+
+    void clear();
+
+    /**
+     * Zwraca numer rodzaju figury o podanej nazwie stałej z Figures.
+     * @param name nazwa rodzaju figury, np. CIRCLE
+     * @return numer figury z Figures
+     */
+
+    int figureType(String name);
+
+    /**
+     * Tworzy nową figurę tak jak podczas przeciągania myszą.
+     * @param type numer figury z Figures
+     * @param x współrzędna x kursora
+     * @param y współrzędna y kursora
+     * @return slot utworzonej figury
+     */
+
+    int create(int type, int x, int y);
+
+    /**
+     * Zmienia wielkość figury tak jak podczas jej tworzenia.
+     * @param slot slot figury
+     * @param mouseX współrzędna x kursora
+     * @param mouseY współrzędna y kursora
+     */
+
+    void resize(int slot, int mouseX, int mouseY);
+
+    /**
+     * Przesuwa figurę tak jak podczas przeciągania.
+     * @param slot slot figury
+     * @param x współrzędna x kursora
+     * @param y współrzędna y kursora
+     */
+
+    void move(int slot, int x, int y);
+
+    /**
+     * Skaluje figurę tak jak kółko myszy.
+     * @param slot slot figury
+     * @param percentage wartość skalowania
+     */
+
+    void scale(int slot, int percentage);
+
+    /**
+     * Wypełnia edytor losowymi figurami wszystkich rodzajów.
+     * @param count liczba figur
+     * @param seed ziarno generatora liczb losowych
+     * @param width szerokość obszaru, w którym leżą figury
+     * @param height wysokość obszaru, w którym leżą figury
+     */
+
+    void generate(int count, long seed, int width, int height);
+
+    /**
+     * Szuka najwyżej narysowanej figury w punkcie przy użyciu indeksu przestrzennego.
+     * @param x współrzędna x
+     * @param y współrzędna y
+     * @return slot figury lub -1
+     */
+
+    int figureAt(int x, int y);
+
+    /**
+     * Szuka najwyżej narysowanej figury w punkcie przy użyciu indeksu przestrzennego, sprawdzając
+     * kształty kandydatów osobno dla każdego rodzaju figury.
+     * @param x współrzędna x
+     * @param y współrzędna y
+     * @return slot figury lub -1
+     */
+
+    int figureAtPerType(int x, int y);
+
+    /**
+     * Szuka najwyżej narysowanej figury w punkcie, sprawdzając po kolei wszystkie figury.
+     * @param x współrzędna x
+     * @param y współrzędna y
+     * @return slot figury lub -1
+     */
+
+    int figureAtLinear(int x, int y);
+
+    /**
+     * Rysuje wszystkie figury tak jak główny komponent.
+     * @param g obiekt Graphics
+     * @param width szerokość rysowanego obszaru
+     * @param height wysokość rysowanego obszaru
+     * @param tiled true, żeby rysować równolegle kafelkami
+     */
+
+    void paint(Graphics2D g, int width, int height, boolean tiled);
+
+    /**
+     * Zapisuje figury do pliku.
+     * @param path ścieżka pliku
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    void save(Path path) throws IOException;
+
+    /**
+     * Wczytuje figury z pliku w miejsce obecnych.
+     * @param path ścieżka pliku
+     * @return liczba wczytanych figur
+     * @throws IOException jeżeli odczyt się nie powiedzie
+     */
+
+    int load(Path path) throws IOException;
+
+    /**
+     * Zmienia kolor figury.
+     * @param slot slot figury
+     * @param argb nowy kolor
+     */
+
+    void recolor(int slot, int argb);
+
+    /**
+     * Tworzy niezmienną kopię figur, którą można czytać w innym wątku.
+     * @return liczba figur w kopii
+     */
+
+    int snapshot();
+
+    /**
+     * Kopiuje wszystkie figury do tablicy rekordów, tak jak przed wprowadzeniem kopii współdzielących fragmenty.
+     * @param records tablica na rekordy wszystkich figur
+     * @return liczba skopiowanych figur
+     */
+
+    int copyRecords(int[] records);
+
+    /**
+     * Zwraca liczbę figur.
+     * @return liczba figur
+     */
+
+    int size();
+}
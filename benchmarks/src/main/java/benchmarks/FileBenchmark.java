@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark zapisu i odczytu dokumentu z 1k, 100k i 1M figur w formacie binarnym
+ * oraz pełnego cyklu zapis-odczyt.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FileBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int figures;
+
+    private Editor source;
+    private Editor target;
+    private Path directory;
+    private Path saved;
+    private Path written;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = Editor.create();
+        source.generate(figures, 42, 4_096, 4_096);
+        target = Editor.create();
+
+        directory = Files.createTempDirectory("figury-benchmark");
+        saved = directory.resolve("saved.fig");
+        written = directory.resolve("written.fig");
+
+        source.save(saved);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(saved);
+        Files.deleteIfExists(written);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        source.save(written);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        return target.load(saved);
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        source.save(written);
+        return target.load(written);
+    }
+}
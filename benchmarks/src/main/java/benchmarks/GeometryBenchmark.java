@@ -0,0 +1,78 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarki operacji geometrycznych wykonywanych na figurze podczas edycji: tworzenia,
+ * zmiany wielkości, przesuwania i skalowania, osobno dla każdego rodzaju figury.
+ * Figury leżą w magazynie z indeksem przestrzennym, więc wyniki obejmują też jego aktualizację.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GeometryBenchmark {
+    private static final int CREATED = 1_000;
+
+    @Param({"CIRCLE", "RECTANGLE", "TRIANGLE"})
+    public String type;
+
+    private Editor editor;
+    private int ordinal;
+    private int slot;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        editor = Editor.create();
+        ordinal = editor.figureType(type);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        editor.clear();
+        slot = editor.create(ordinal, 100, 100);
+        editor.resize(slot, 200, 200);
+        step = 0;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CREATED)
+    public int create() {
+        // Magazyn jest czyszczony po każdej serii, żeby nie rósł bez końca w trakcie pomiaru.
+        editor.clear();
+
+        int last = 0;
+        for (int i = 0; i < CREATED; i++) last = editor.create(ordinal, i, i);
+
+        return last;
+    }
+
+    @Benchmark
+    public void resize() {
+        step = (step + 1) & 255;
+        editor.resize(slot, 100 + step, 300 - step);
+    }
+
+    @Benchmark
+    public void move() {
+        step = (step + 1) & 1023;
+        editor.move(slot, step, step);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void scale() {
+        editor.scale(slot, 1);
+        editor.scale(slot, -1);
+
+        // Powiększanie i zmniejszanie nie znoszą się dokładnie przez zaokrąglenia, więc co jakiś czas
+        // przywracany jest początkowy rozmiar figury.
+        if ((++step & 63) == 0) editor.resize(slot, 200, 200);
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark wyszukiwania figury pod kursorem po kliknięciu wśród N figur, przy użyciu indeksu
+ * przestrzennego oraz dla porównania przez sprawdzenie wszystkich figur po kolei. Wariant perType
+ * sprawdza kandydatów z komórki indeksu pętlami osobnymi dla każdego jądra kształtu, a index
+ * jedną pętlą po figurach wszystkich rodzajów.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HitTestBenchmark {
+    private static final int AREA = 4_096;
+    private static final int POINTS = 1_024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int figures;
+
+    private Editor editor;
+    private int[] xs;
+    private int[] ys;
+    private int point;
+
+    @Setup
+    public void setUp() {
+        editor = Editor.create();
+        editor.generate(figures, 42, AREA, AREA);
+
+        var random = new Random(7);
+        xs = new int[POINTS];
+        ys = new int[POINTS];
+
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = random.nextInt(AREA);
+            ys[i] = random.nextInt(AREA);
+        }
+    }
+
+    @Benchmark
+    public int index() {
+        point = (point + 1) & (POINTS - 1);
+        return editor.figureAt(xs[point], ys[point]);
+    }
+
+    @Benchmark
+    public int perType() {
+        point = (point + 1) & (POINTS - 1);
+        return editor.figureAtPerType(xs[point], ys[point]);
+    }
+
+    @Benchmark
+    public int linear() {
+        point = (point + 1) & (POINTS - 1);
+        return editor.figureAtLinear(xs[point], ys[point]);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark rysowania całej sceny do obrazu BufferedImage poza ekranem, tak jak robi to
+ * paintComponent głównego komponentu bez clipu: zwykłym przejściem po figurach oraz kafelkami.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+    private static final int WIDTH = 1_600;
+    private static final int HEIGHT = 1_200;
+
+    @Param({"1000", "100000", "1000000"})
+    public int figures;
+
+    @Param({"false", "true"})
+    public boolean tiled;
+
+    private Editor editor;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup
+    public void setUp() {
+        editor = Editor.create();
+        editor.generate(figures, 42, WIDTH, HEIGHT);
+
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        editor.paint(g, WIDTH, HEIGHT, tiled);
+
+        return image;
+    }
+}
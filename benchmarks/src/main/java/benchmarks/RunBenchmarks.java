@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Uruchamia benchmarki z argumentami JMH, domyślnie zapisując wyniki w formacie JSON
+ * do pliku jmh-result.json, żeby można je było porównywać między wersjami programu.
+ * Przykład: java -jar benchmarks/target/benchmarks.jar HitTest -p figures=100000
+ */
+
+public class RunBenchmarks {
+
+    /**
+     * Punkt wejścia benchmarków.
+     * @param args argumenty JMH
+     * @throws RunnerException jeżeli benchmark się nie powiedzie
+     * @throws CommandLineOptionException jeżeli argumenty są nieprawidłowe
+     */
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        var commandLine = new CommandLineOptions(args);
+        var options = new OptionsBuilder().parent(commandLine);
+
+        // Format i plik wyników podane w argumentach mają pierwszeństwo przed domyślnymi.
+        if (!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!commandLine.getResult().hasValue()) options.result("jmh-result.json");
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark tworzenia kopii dokumentu z 1k, 100k i 1M figur do odczytu w innym wątku.
+ * Przed każdą kopią zmieniana jest jedna figura, więc pomiar obejmuje też skopiowanie
+ * jej fragmentu. Dla porównania mierzone jest kopiowanie wszystkich figur do tablicy rekordów.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SnapshotBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int figures;
+
+    private Editor editor;
+    private int[] records;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        editor = Editor.create();
+        editor.generate(figures, 42, 4_096, 4_096);
+        records = new int[figures * 6];
+        step = 0;
+    }
+
+    @Benchmark
+    public int snapshot() {
+        step = (step + 7_919) % figures;
+        editor.recolor(step, 0xFF000000 | step);
+
+        return editor.snapshot();
+    }
+
+    @Benchmark
+    public int copyRecords() {
+        step = (step + 7_919) % figures;
+        editor.recolor(step, 0xFF000000 | step);
+
+        return editor.copyRecords(records);
+    }
+}
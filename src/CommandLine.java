@@ -0,0 +1,411 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Obiekt CommandLine obsługuje tryb wsadowy programu uruchamiany z argumentami wiersza poleceń.
+ * Pierwszy argument jest nazwą polecenia, a pozostałe jego argumentami i opcjami w postaci
+ * --nazwa wartość. Tryb wsadowy nie tworzy okien, więc działa na serwerach bez ekranu.
+ */
+
+public class CommandLine {
+    private final PrintStream out;
+    private final PrintStream err;
+
+    /**
+     * Tworzy obiekt obsługujący polecenia, który wypisuje wyniki do podanych strumieni.
+     * @param out strumień wyników
+     * @param err strumień błędów
+     */
+
+    public CommandLine(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Wykonuje polecenie.
+     * @param args argumenty wiersza poleceń
+     * @return kod wyjścia programu, 0 oznacza powodzenie
+     */
+
+    public int run(String[] args) {
+        try {
+            var arguments = new Arguments(args);
+
+            switch (arguments.command()) {
+                case "export" -> {
+                    return export(arguments);
+                }
+                case "generate" -> {
+                    return generate(arguments);
+                }
+                case "replay" -> {
+                    return replay(arguments);
+                }
+                case "overlaps" -> {
+                    return overlaps(arguments);
+                }
+                case "paginate" -> {
+                    return paginate(arguments);
+                }
+                case "vector" -> {
+                    return vector(arguments);
+                }
+                default -> {
+                    usage();
+                    return 2;
+                }
+            }
+        } catch (IllegalArgumentException exception) {
+            err.println(exception.getMessage());
+            usage();
+            return 2;
+        } catch (IOException exception) {
+            err.println("Błąd: " + exception.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Eksportuje jeden dokument albo wszystkie dokumenty z katalogu do obrazów PNG,
+     * przetwarzając dokumenty równolegle, a następnie wypisuje przepustowość.
+     * @param arguments argumenty polecenia
+     * @return kod wyjścia
+     * @throws IOException jeżeli nie uda się odczytać katalogu lub utworzyć katalogu wyjściowego
+     */
+
+    private int export(Arguments arguments) throws IOException {
+        Path input = Path.of(arguments.positional(0, "brak katalogu lub pliku wejściowego"));
+        Path output = Path.of(arguments.positional(1, "brak katalogu wyjściowego"));
+
+        var exporter = new ImageExporter(arguments.intOption("width", 0), arguments.intOption("height", 0),
+                arguments.doubleOption("scale", 1));
+        int threads = arguments.intOption("threads", Runtime.getRuntime().availableProcessors());
+
+        List<Path> documents;
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> files = Files.list(input)) {
+                documents = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        } else {
+            documents = List.of(input);
+        }
+
+        Files.createDirectories(output);
+
+        var exported = new AtomicInteger();
+        var failed = new AtomicInteger();
+        var figures = new AtomicLong();
+        long start = System.nanoTime();
+
+        // Dokumenty są eksportowane równolegle w osobnej puli o podanej liczbie wątków.
+        var pool = new ForkJoinPool(Math.max(threads, 1));
+
+        try {
+            pool.submit(() -> documents.parallelStream().forEach(document -> {
+                Path image = output.resolve(document.getFileName() + ".png");
+
+                try {
+                    figures.addAndGet(exporter.export(document, image));
+                    exported.incrementAndGet();
+                } catch (IOException | RuntimeException exception) {
+                    failed.incrementAndGet();
+                    err.println(document + ": " + exception.getMessage());
+                }
+            })).get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } catch (ExecutionException exception) {
+            throw new IOException(exception.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+        out.printf("Wyeksportowano %d dokumentów (%d figur) w %.3f s na %d wątkach: %.1f dokumentów/s, %.0f figur/s%n",
+                exported.get(), figures.get(), seconds, threads, exported.get() / seconds, figures.get() / seconds);
+        if (failed.get() > 0) out.printf("Nie udało się wyeksportować %d dokumentów%n", failed.get());
+
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Tworzy dokument testowy z losowymi figurami każdego rodzaju i zapisuje go do pliku.
+     * @param arguments argumenty polecenia
+     * @return kod wyjścia
+     * @throws IOException jeżeli zapis dokumentu się nie powiedzie
+     */
+
+    private int generate(Arguments arguments) throws IOException {
+        Path output = Path.of(arguments.positional(0, "brak pliku wyjściowego"));
+
+        SceneGenerator.Sizes sizes;
+        try {
+            sizes = SceneGenerator.Sizes.valueOf(arguments.option("sizes", "uniform").toUpperCase());
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Błąd: opcja --sizes wymaga wartości uniform lub log");
+        }
+
+        var generator = new SceneGenerator(arguments.intOption("count", 10_000),
+                arguments.intOption("min-size", 4), arguments.intOption("max-size", 64), sizes,
+                arguments.doubleOption("overlap", 1), arguments.intOption("clusters", 0),
+                arguments.intOption("seed", 42));
+
+        var store = new FigureStore();
+        long start = System.nanoTime();
+        generator.generate(store);
+        FigureFile.save(output, store);
+
+        out.printf("Utworzono dokument %dx%d z %d figurami w %.3f s%n", generator.documentSize(),
+                generator.documentSize(), store.size(), (System.nanoTime() - start) / 1e9);
+
+        return 0;
+    }
+
+    /**
+     * Odtwarza nagranie zdarzeń bez ekranu, opcjonalnie na figurach wczytanych z dokumentu,
+     * a następnie wypisuje czasy obsługi zdarzeń.
+     * @param arguments argumenty polecenia
+     * @return kod wyjścia
+     * @throws IOException jeżeli odczyt nagrania lub dokumentu się nie powiedzie
+     */
+
+    private int replay(Arguments arguments) throws IOException {
+        Path trace = Path.of(arguments.positional(0, "brak pliku nagrania"));
+
+        var store = new FigureStore();
+        String document = arguments.option("document", null);
+        if (document != null) FigureFile.load(Path.of(document), store);
+
+        var replay = new InteractionReplay(Boolean.parseBoolean(arguments.option("paint", "true")));
+        int events = replay.replay(trace, store);
+
+        out.printf("Odtworzono %d zdarzeń, dokument ma %d figur%n", events, store.size());
+        replay.report(out);
+
+        return 0;
+    }
+
+    /**
+     * Wyszukuje w dokumencie wszystkie pary nachodzących na siebie figur, wypisuje ich liczbę
+     * i czas wyszukiwania, a opcjonalnie zapisuje pary do pliku tekstowego, po jednej w wierszu.
+     * @param arguments argumenty polecenia
+     * @return kod wyjścia
+     * @throws IOException jeżeli odczyt dokumentu lub zapis par się nie powiedzie
+     */
+
+    private int overlaps(Arguments arguments) throws IOException {
+        Path input = Path.of(arguments.positional(0, "brak pliku wejściowego"));
+        String output = arguments.option("output", null);
+        int threads = arguments.intOption("threads", Runtime.getRuntime().availableProcessors());
+
+        var store = new FigureStore();
+        FigureFile.load(input, store);
+
+        var pool = new ForkJoinPool(Math.max(threads, 1));
+        IntList pairs;
+        long start = System.nanoTime();
+
+        try {
+            pairs = new OverlapFinder(pool).find(store.snapshot());
+        } finally {
+            pool.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.printf("Znaleziono %d par nachodzących na siebie figur wśród %d figur w %.3f s na %d wątkach%n",
+                pairs.size() / 2, store.size(), seconds, threads);
+
+        if (output != null) {
+            try (var writer = Files.newBufferedWriter(Path.of(output))) {
+                for (int i = 0; i < pairs.size(); i += 2) {
+                    writer.write(pairs.get(i) + " " + pairs.get(i + 1));
+                    writer.newLine();
+                }
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Tworzy dokument stronicowany ze zwykłego pliku figur bez wczytywania go do pamięci.
+     * @param arguments argumenty polecenia
+     * @return kod wyjścia
+     * @throws IOException jeżeli odczyt lub zapis dokumentu się nie powiedzie
+     */
+
+    private int paginate(Arguments arguments) throws IOException {
+        Path input = Path.of(arguments.positional(0, "brak pliku wejściowego"));
+        Path output = Path.of(arguments.positional(1, "brak pliku wyjściowego"));
+
+        long start = System.nanoTime();
+        int pages = PagedDocument.create(input, output, arguments.intOption("page-size", PagedDocument.PAGE_FIGURES));
+
+        out.printf("Utworzono dokument stronicowany z %d stronami (%d MB) w %.3f s%n", pages,
+                Files.size(output) >> 20, (System.nanoTime() - start) / 1e9);
+
+        return 0;
+    }
+
+    /**
+     * Zapisuje dokument jako grafikę wektorową SVG albo PDF, a następnie wypisuje przepustowość.
+     * @param arguments argumenty polecenia
+     * @return kod wyjścia
+     * @throws IOException jeżeli odczyt dokumentu lub zapis pliku się nie powiedzie
+     */
+
+    private int vector(Arguments arguments) throws IOException {
+        Path input = Path.of(arguments.positional(0, "brak pliku wejściowego"));
+        Path output = Path.of(arguments.positional(1, "brak pliku wyjściowego"));
+
+        VectorExporter.Format format;
+        try {
+            format = VectorExporter.Format.valueOf(arguments.option("format", "svg").toUpperCase());
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Błąd: opcja --format wymaga wartości svg lub pdf");
+        }
+
+        long start = System.nanoTime();
+        int figures = new VectorExporter(format).export(input, output);
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+        long bytes = Files.size(output);
+
+        out.printf("Zapisano %d figur (%d bajtów) w %.3f s: %.1f MB/s, %.0f figur/s%n", figures, bytes, seconds,
+                bytes / seconds / (1 << 20), figures / seconds);
+
+        return 0;
+    }
+
+    /**
+     * Wypisuje opis dostępnych poleceń.
+     */
+
+    private void usage() {
+        err.println("Użycie:");
+        err.println("  export <katalog|plik> <katalog wyjściowy> [--width N] [--height N] [--scale S] [--threads N]");
+        err.println("      rysuje dokumenty do obrazów PNG");
+        err.println("  generate <plik> [--count N] [--min-size N] [--max-size N] [--sizes uniform|log]");
+        err.println("           [--overlap D] [--clusters N] [--seed N]");
+        err.println("      tworzy dokument z N losowymi figurami każdego rodzaju");
+        err.println("  replay <nagranie> [--document plik] [--paint true|false]");
+        err.println("      odtwarza nagrane zdarzenia i wypisuje czasy ich obsługi");
+        err.println("  overlaps <plik> [--threads N] [--output plik]");
+        err.println("      wyszukuje pary nachodzących na siebie figur");
+        err.println("  paginate <plik> <plik stronicowany> [--page-size N]");
+        err.println("      dzieli dokument na strony, które edytor wczytuje tylko dla widocznego obszaru");
+        err.println("  vector <plik> <plik wyjściowy> [--format svg|pdf]");
+        err.println("      zapisuje dokument jako grafikę wektorową do druku");
+    }
+
+    /**
+     * Argumenty polecenia podzielone na nazwę polecenia, argumenty pozycyjne i opcje.
+     */
+
+    private static class Arguments {
+        private final String command;
+        private final List<String> positional;
+        private final Map<String, String> options;
+
+        /**
+         * Dzieli argumenty wiersza poleceń.
+         * @param args argumenty wiersza poleceń
+         */
+
+        private Arguments(String[] args) {
+            if (args.length == 0) throw new IllegalArgumentException("Brak polecenia");
+
+            command = args[0];
+            positional = new ArrayList<>();
+            options = new HashMap<>();
+
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].startsWith("--")) {
+                    if (i + 1 >= args.length) throw new IllegalArgumentException("Brak wartości opcji " + args[i]);
+                    options.put(args[i].substring(2), args[++i]);
+                } else {
+                    positional.add(args[i]);
+                }
+            }
+        }
+
+        /**
+         * Zwraca nazwę polecenia.
+         * @return nazwa polecenia
+         */
+
+        private String command() {
+            return command;
+        }
+
+        /**
+         * Zwraca argument pozycyjny.
+         * @param i numer argumentu
+         * @param message opis błędu, jeżeli argumentu brakuje
+         * @return wartość argumentu
+         */
+
+        private String positional(int i, String message) {
+            if (i >= positional.size()) throw new IllegalArgumentException("Błąd: " + message);
+            return positional.get(i);
+        }
+
+        /**
+         * Zwraca wartość opcji.
+         * @param name nazwa opcji
+         * @param defaultValue wartość, gdy opcja nie została podana
+         * @return wartość opcji
+         */
+
+        private String option(String name, String defaultValue) {
+            return options.getOrDefault(name, defaultValue);
+        }
+
+        /**
+         * Zwraca wartość opcji będącej liczbą całkowitą.
+         * @param name nazwa opcji
+         * @param defaultValue wartość, gdy opcja nie została podana
+         * @return wartość opcji
+         */
+
+        private int intOption(String name, int defaultValue) {
+            String value = options.get(name);
+
+            try {
+                return value == null ? defaultValue : Integer.parseInt(value);
+            } catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("Błąd: opcja --" + name + " wymaga liczby całkowitej");
+            }
+        }
+
+        /**
+         * Zwraca wartość opcji będącej liczbą.
+         * @param name nazwa opcji
+         * @param defaultValue wartość, gdy opcja nie została podana
+         * @return wartość opcji
+         */
+
+        private double doubleOption(String name, double defaultValue) {
+            String value = options.get(name);
+
+            try {
+                return value == null ? defaultValue : Double.parseDouble(value);
+            } catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("Błąd: opcja --" + name + " wymaga liczby");
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Obiekt EditHistory przechowuje historię zmian figur do cofania i ponawiania. Zmiany wykonane między
+ * begin a end, np. podczas jednego przeciągnięcia myszy, tworzą jeden wpis. Wpis zapamiętuje tylko
+ * zmienione figury: ich sloty oraz prostokąty i kolory sprzed zmiany i po niej w tablicach typów prostych,
+ * a także rekordy figur dodanych na wierzch, więc cofnięcie i ponowienie zależą od liczby zmienionych
+ * figur, a nie od wielkości dokumentu. Wczytanie całego dokumentu, oznaczone przez beginReplace,
+ * jest zapamiętywane jako dwie kopie FigureSnapshot, które współdzielą fragmenty tablic z magazynem.
+ * Łączny rozmiar wpisów jest ograniczony przez MAX_BYTES, który można zmienić właściwością
+ * figury.undoBytes, a po jego przekroczeniu usuwane są najstarsze wpisy. Zmiana figur poza wpisem
+ * czyści historię, bo wpisy mogłyby już nie pasować do dokumentu. Metody należy wywoływać z wątku
+ * obsługi zdarzeń.
+ */
+
+public class EditHistory implements FigureStore.Listener {
+    public static final long MAX_BYTES = Long.getLong("figury.undoBytes", 64L << 20);
+
+    private static final int VALUES = 5;
+    private static final int ENTRY_BYTES = 64;
+    private static final int BATCH_SIZE = 20_000;
+
+    private final FigureStore store;
+    private final ArrayDeque<Entry> undo;
+    private final ArrayDeque<Entry> redo;
+
+    private long bytes;
+    private int depth;
+    private boolean applying;
+
+    private int entryStamp;
+    private int[] stamps;
+    private final IntList changedSlots;
+    private final IntList before;
+    private int addedFrom;
+    private FigureSnapshot replaced;
+
+    /**
+     * Tworzy pustą historię zmian figur z magazynu i zaczyna obserwować jego zmiany.
+     * @param store magazyn figur
+     */
+
+    public EditHistory(FigureStore store) {
+        this.store = store;
+        undo = new ArrayDeque<>();
+        redo = new ArrayDeque<>();
+
+        bytes = 0;
+        depth = 0;
+        applying = false;
+
+        entryStamp = 0;
+        stamps = new int[16];
+        changedSlots = new IntList();
+        before = new IntList();
+        addedFrom = -1;
+        replaced = null;
+
+        store.addListener(this);
+    }
+
+    /**
+     * Zaczyna wpis albo, jeżeli wpis jest już rozpoczęty, dołącza kolejne zmiany do niego.
+     * Każde wywołanie należy zakończyć wywołaniem end.
+     */
+
+    public void begin() {
+        if (depth++ > 0) return;
+
+        entryStamp++;
+        changedSlots.clear();
+        before.clear();
+        addedFrom = -1;
+        replaced = null;
+    }
+
+    /**
+     * Zaczyna wpis, który zastąpi cały dokument, np. przy wczytywaniu pliku. Cofnięcie takiego wpisu
+     * przywraca wszystkie figury sprzed jego rozpoczęcia. Wywołanie należy zakończyć wywołaniem end.
+     */
+
+    public void beginReplace() {
+        begin();
+        if (replaced == null) replaced = store.snapshot();
+    }
+
+    /**
+     * Kończy wpis rozpoczęty przez begin lub beginReplace. Wpis bez zmian nie trafia do historii.
+     */
+
+    public void end() {
+        if (depth == 0 || --depth > 0) return;
+
+        Entry entry = replaced != null ? replaceEntry() : changeEntry();
+        replaced = null;
+        if (entry == null) return;
+
+        clear(redo);
+        undo.addLast(entry);
+        bytes += entry.bytes;
+
+        // Najstarsze wpisy są usuwane, dopóki historia nie mieści się w budżecie.
+        while (bytes > MAX_BYTES && !undo.isEmpty()) bytes -= undo.removeFirst().bytes;
+    }
+
+    /**
+     * Sprawdza, czy jest wpis do cofnięcia.
+     * @return true jeżeli można cofnąć zmianę
+     */
+
+    public boolean canUndo() {
+        return depth == 0 && !undo.isEmpty();
+    }
+
+    /**
+     * Sprawdza, czy jest wpis do ponowienia.
+     * @return true jeżeli można ponowić zmianę
+     */
+
+    public boolean canRedo() {
+        return depth == 0 && !redo.isEmpty();
+    }
+
+    /**
+     * Cofa ostatni wpis. Wywoływać tylko, gdy canUndo zwraca true.
+     * @return obszar dokumentu, w którym zmieniły się figury, albo null, jeżeli zmienił się cały dokument
+     */
+
+    public Rectangle undo() {
+        Entry entry = undo.removeLast();
+        redo.addLast(entry);
+
+        applying = true;
+        try {
+            if (entry.replacedBefore != null) {
+                restore(entry.replacedBefore);
+            } else {
+                apply(entry.slots, entry.before);
+                if (entry.added != null) store.truncate(entry.addedFrom);
+            }
+        } finally {
+            applying = false;
+        }
+
+        return entry.bounds();
+    }
+
+    /**
+     * Ponawia ostatnio cofnięty wpis. Wywoływać tylko, gdy canRedo zwraca true.
+     * @return obszar dokumentu, w którym zmieniły się figury, albo null, jeżeli zmienił się cały dokument
+     */
+
+    public Rectangle redo() {
+        Entry entry = redo.removeLast();
+        undo.addLast(entry);
+
+        applying = true;
+        try {
+            if (entry.replacedAfter != null) {
+                restore(entry.replacedAfter);
+            } else {
+                apply(entry.slots, entry.after);
+                if (entry.added != null) store.addRecords(entry.added, entry.added.length / FigureStore.RECORD_INTS);
+            }
+        } finally {
+            applying = false;
+        }
+
+        return entry.bounds();
+    }
+
+    /**
+     * Zapamiętuje prostokąt i kolor figury przed jej pierwszą zmianą w bieżącym wpisie.
+     * @param slot slot zmienianej figury
+     */
+
+    @Override
+    public void figureChanging(int slot) {
+        if (applying || replaced != null) return;
+        if (depth == 0) {
+            forget();
+            return;
+        }
+
+        // Figury dodane w tym wpisie są zapamiętywane w całości przy jego końcu.
+        if (addedFrom >= 0 && slot >= addedFrom) return;
+
+        if (slot >= stamps.length) stamps = Arrays.copyOf(stamps, Math.max(slot + 1, stamps.length * 2));
+        if (stamps[slot] == entryStamp) return;
+
+        stamps[slot] = entryStamp;
+        changedSlots.add(slot);
+        before.add(store.getX(slot));
+        before.add(store.getY(slot));
+        before.add(store.getWidth(slot));
+        before.add(store.getHeight(slot));
+        before.add(store.getColor(slot));
+    }
+
+    @Override
+    public void figureAdded(int slot) {
+        if (applying || replaced != null) return;
+        if (depth == 0) {
+            forget();
+            return;
+        }
+
+        if (addedFrom < 0) addedFrom = slot;
+    }
+
+    @Override
+    public void figureChanged(int slot) {
+    }
+
+    @Override
+    public void figuresRemoved(int from, int to) {
+        if (!applying) forget();
+    }
+
+    @Override
+    public void cleared() {
+        if (!applying && replaced == null) forget();
+    }
+
+    /**
+     * Tworzy wpis ze zmienionych i dodanych figur bieżącego wpisu.
+     * @return wpis lub null, jeżeli żadna figura się nie zmieniła
+     */
+
+    private Entry changeEntry() {
+        int count = changedSlots.size();
+        boolean added = addedFrom >= 0 && addedFrom < store.size();
+        if (count == 0 && !added) return null;
+
+        var entry = new Entry();
+        entry.slots = changedSlots.toArray();
+        entry.before = before.toArray();
+        entry.after = new int[count * VALUES];
+
+        for (int i = 0, v = 0; i < count; i++, v += VALUES) {
+            int slot = entry.slots[i];
+
+            entry.after[v] = store.getX(slot);
+            entry.after[v + 1] = store.getY(slot);
+            entry.after[v + 2] = store.getWidth(slot);
+            entry.after[v + 3] = store.getHeight(slot);
+            entry.after[v + 4] = store.getColor(slot);
+
+            entry.include(entry.before, v);
+            entry.include(entry.after, v);
+        }
+
+        if (added) {
+            entry.addedFrom = addedFrom;
+            entry.added = new int[(store.size() - addedFrom) * FigureStore.RECORD_INTS];
+
+            for (int slot = addedFrom, r = 0; slot < store.size(); slot++, r += FigureStore.RECORD_INTS) {
+                entry.added[r] = store.getType(slot);
+                entry.added[r + 1] = store.getX(slot);
+                entry.added[r + 2] = store.getY(slot);
+                entry.added[r + 3] = store.getWidth(slot);
+                entry.added[r + 4] = store.getHeight(slot);
+                entry.added[r + 5] = store.getColor(slot);
+
+                entry.include(entry.added, r + 1);
+            }
+        }
+
+        entry.bytes = ENTRY_BYTES + 4L * (entry.slots.length + entry.before.length + entry.after.length)
+                + (entry.added != null ? 4L * entry.added.length : 0);
+
+        return entry;
+    }
+
+    /**
+     * Tworzy wpis zastępujący cały dokument.
+     * @return wpis lub null, jeżeli dokument się nie zmienił
+     */
+
+    private Entry replaceEntry() {
+        FigureSnapshot after = store.snapshot();
+        if (after == replaced) return null;
+
+        // Kopie współdzielą fragmenty z magazynem, ale w budżecie są liczone w całości,
+        // bo po dalszej edycji magazynu przestaną je współdzielić.
+        var entry = new Entry();
+        entry.replacedBefore = replaced;
+        entry.replacedAfter = after;
+        entry.bytes = ENTRY_BYTES + (long) (replaced.size() + after.size()) * FigureStore.RECORD_INTS * Integer.BYTES;
+
+        return entry;
+    }
+
+    /**
+     * Ustawia figurom zapamiętane prostokąty i kolory.
+     * @param slots sloty figur
+     * @param values po VALUES liczb na figurę: x, y, szerokość, wysokość i kolor
+     */
+
+    private void apply(int[] slots, int[] values) {
+        for (int i = 0, v = 0; i < slots.length; i++, v += VALUES) {
+            store.setBounds(slots[i], values[v], values[v + 1], values[v + 2], values[v + 3]);
+            if (store.getColor(slots[i]) != values[v + 4]) store.setColor(slots[i], values[v + 4]);
+        }
+    }
+
+    /**
+     * Zastępuje wszystkie figury magazynu figurami z kopii.
+     * @param snapshot kopia figur
+     */
+
+    private void restore(FigureSnapshot snapshot) {
+        store.clear();
+
+        int[] batch = new int[Math.min(snapshot.size(), BATCH_SIZE) * FigureStore.RECORD_INTS];
+        for (int first = 0; first < snapshot.size(); first += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, snapshot.size() - first);
+            snapshot.copyRecords(first, count, batch);
+            store.addRecords(batch, count);
+        }
+    }
+
+    /**
+     * Czyści historię po zmianie figur, której nie obejmuje żaden wpis.
+     */
+
+    private void forget() {
+        clear(undo);
+        clear(redo);
+    }
+
+    /**
+     * Usuwa wpisy z kolejki, odejmując ich rozmiar od łącznego rozmiaru historii.
+     * @param entries kolejka wpisów
+     */
+
+    private void clear(ArrayDeque<Entry> entries) {
+        for (Entry entry : entries) bytes -= entry.bytes;
+        entries.clear();
+    }
+
+    /**
+     * Wpis historii. Zmienione figury są zapisane jako sloty i po VALUES liczb na figurę sprzed zmiany
+     * i po niej, a figury dodane na wierzch jako rekordy w formacie FigureStore.addRecords.
+     * Wpis zastępujący cały dokument przechowuje zamiast tego kopie figur sprzed zmiany i po niej.
+     */
+
+    private static class Entry {
+        private int[] slots;
+        private int[] before;
+        private int[] after;
+        private int addedFrom;
+        private int[] added;
+        private FigureSnapshot replacedBefore;
+        private FigureSnapshot replacedAfter;
+        private long bytes;
+
+        private int minX = Integer.MAX_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+
+        /**
+         * Poszerza obszar zmian wpisu o prostokąt zapisany w tablicy jako x, y, szerokość i wysokość.
+         * @param values tablica z prostokątem
+         * @param offset pozycja współrzędnej x prostokąta
+         */
+
+        private void include(int[] values, int offset) {
+            minX = Math.min(minX, values[offset]);
+            minY = Math.min(minY, values[offset + 1]);
+            maxX = Math.max(maxX, values[offset] + values[offset + 2]);
+            maxY = Math.max(maxY, values[offset + 1] + values[offset + 3]);
+        }
+
+        /**
+         * Zwraca obszar zmian wpisu.
+         * @return obszar dokumentu lub null dla wpisu zastępującego cały dokument
+         */
+
+        private Rectangle bounds() {
+            if (replacedBefore != null) return null;
+            return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+        }
+    }
+}
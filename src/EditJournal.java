@@ -0,0 +1,663 @@
+import javax.swing.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Obiekt EditJournal zapisuje każdą zmianę figur w magazynie do dziennika, do którego dane są
+ * tylko dopisywane, więc po awarii programu można odtworzyć ostatni stan dokumentu. Dziennik
+ * jest podzielony na pokolenia: pełną kopię figur snapshot-N.fig w formacie FigureFile
+ * i dziennik journal-N.log ze zmianami wykonanymi po jej utworzeniu. Zmiany są zbierane
+ * w buforze w wątku obsługi zdarzeń i dopisywane do pliku partiami w osobnym wątku,
+ * który co sekundę wymusza ich zapis na dysk. Gdy dziennik stanie się większy od kopii,
+ * w tle tworzona jest nowa kopia i zaczyna się kolejne pokolenie, dzięki czemu koszt
+ * zapisu zależy od liczby zmian, a nie od wielkości dokumentu. Usunięcie figur z wierzchu,
+ * np. przy cofaniu ich utworzenia, jest zapisywane jako rekord z liczbą pozostawionych figur.
+ * Katalog dziennika jest blokowany plikiem LOCK_FILE do zamknięcia dziennika, więc drugi program
+ * korzystający z tego samego katalogu nie może odtworzyć ani zmieniać pokoleń zapisywanych przez pierwszy.
+ */
+
+public class EditJournal implements FigureStore.Listener, Closeable {
+    public static final int MAGIC = 0x46494A4C;
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 7 * Integer.BYTES;
+
+    private static final int ADD = 1;
+    private static final int CHANGE = 2;
+    private static final int CLEAR = 3;
+    private static final int REMOVE = 4;
+
+    private static final long FLUSH_INTERVAL = 200;
+    private static final long SYNC_INTERVAL = 1_000;
+    private static final long COMPACT_THRESHOLD = Long.getLong("figury.journalThreshold", 4L << 20);
+    private static final int BUFFER_SIZE = 1 << 12;
+
+    private static final String LOCK_FILE = "figury.lock";
+    private static final Pattern FILE_NAME = Pattern.compile("(snapshot|journal)-(\\d+)\\.(fig|log)");
+
+    private final Path directory;
+    private final FigureStore store;
+    private final ScheduledExecutorService writer;
+    private final Object lock;
+    private final FileChannel directoryLock;
+
+    private ByteBuffer pending;
+    private ByteBuffer spare;
+    private boolean rotating;
+
+    private FileChannel channel;
+    private long generation;
+    private long journalBytes;
+    private long snapshotBytes;
+    private long lastSync;
+    private boolean unsynced;
+    private volatile boolean compactionRequested;
+
+    /**
+     * Tworzy dziennik dopisujący zmiany do otwartego pliku danego pokolenia.
+     * @param directory katalog dziennika
+     * @param store magazyn figur
+     * @param channel kanał pliku dziennika ustawiony na jego końcu
+     * @param generation numer pokolenia
+     * @param snapshotBytes rozmiar kopii, od której zaczyna się pokolenie
+     * @param directoryLock kanał pliku blokady katalogu, zamykany razem z dziennikiem
+     * @throws IOException jeżeli nie uda się odczytać rozmiaru dziennika
+     */
+
+    private EditJournal(Path directory, FigureStore store, FileChannel channel, long generation,
+                        long snapshotBytes, FileChannel directoryLock) throws IOException {
+        this.directory = directory;
+        this.directoryLock = directoryLock;
+        this.store = store;
+        this.channel = channel;
+        this.generation = generation;
+        this.snapshotBytes = snapshotBytes;
+
+        journalBytes = channel.size();
+        lastSync = System.currentTimeMillis();
+        unsynced = false;
+        compactionRequested = false;
+
+        lock = new Object();
+        pending = ByteBuffer.allocate(BUFFER_SIZE);
+        spare = ByteBuffer.allocate(BUFFER_SIZE);
+        rotating = false;
+
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "figury-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Zwraca katalog dziennika, który można zmienić właściwością figury.autosave.
+     * @return ścieżka katalogu
+     */
+
+    public static Path defaultDirectory() {
+        String directory = System.getProperty("figury.autosave");
+        if (directory != null) return Path.of(directory);
+
+        return Path.of(System.getProperty("user.home"), ".figury", "autosave");
+    }
+
+    /**
+     * Odtwarza w pustym magazynie figury zapisane w katalogu dziennika, a następnie zaczyna
+     * zapisywać do dziennika wszystkie zmiany magazynu.
+     * @param directory katalog dziennika
+     * @param store pusty magazyn figur
+     * @return otwarty dziennik
+     * @throws IOException jeżeli nie uda się odczytać lub utworzyć plików dziennika
+     */
+
+    public static EditJournal open(Path directory, FigureStore store) throws IOException {
+        return recover(directory).attach(store);
+    }
+
+    /**
+     * Odtwarza figury zapisane w katalogu dziennika we własnym magazynie i przygotowuje plik
+     * dziennika do dalszego zapisu. Nie zmienia magazynu programu, więc można ją wywołać w dowolnym
+     * wątku, np. podczas tworzenia okna, a odtworzone figury przenieść później metodą Recovery.attach.
+     * Katalog pozostaje zablokowany do zamknięcia dziennika albo odtworzonego dokumentu.
+     * @param directory katalog dziennika
+     * @return odtworzony dokument
+     * @throws IOException jeżeli nie uda się odczytać lub utworzyć plików dziennika albo katalog
+     *                     jest używany przez inny program
+     */
+
+    public static Recovery recover(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        FileChannel directoryLock = lock(directory);
+
+        try {
+            return recover(directory, directoryLock);
+        } catch (IOException | RuntimeException exception) {
+            directoryLock.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Blokuje katalog dziennika plikiem LOCK_FILE. Blokada jest zwalniana przez system również
+     * po awarii programu.
+     * @param directory katalog dziennika
+     * @return kanał pliku blokady, którego zamknięcie zwalnia blokadę
+     * @throws IOException jeżeli katalog jest już zablokowany albo nie uda się utworzyć pliku blokady
+     */
+
+    private static FileChannel lock(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        boolean locked = false;
+
+        try {
+            locked = channel.tryLock() != null;
+        } catch (OverlappingFileLockException exception) {
+            // Katalog jest już zablokowany w tym samym procesie.
+        } finally {
+            if (!locked) channel.close();
+        }
+
+        if (!locked) throw new IOException("Katalog dziennika jest używany przez inny program: " + directory);
+        return channel;
+    }
+
+    /**
+     * Odtwarza figury z zablokowanego katalogu dziennika.
+     * @param directory katalog dziennika
+     * @param directoryLock kanał pliku blokady katalogu
+     * @return odtworzony dokument
+     * @throws IOException jeżeli nie uda się odczytać lub utworzyć plików dziennika
+     */
+
+    private static Recovery recover(Path directory, FileChannel directoryLock) throws IOException {
+        var snapshots = new TreeMap<Long, Path>();
+        var journals = new TreeMap<Long, Path>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches()) return;
+
+                long number = Long.parseLong(matcher.group(2));
+                if (matcher.group(1).equals("snapshot")) snapshots.put(number, file);
+                else journals.put(number, file);
+            });
+        }
+
+        // Odtwarza najnowszą kopię i wszystkie dzienniki od jej pokolenia. Dziennik starszego pokolenia
+        // jest usuwany dopiero po zapisaniu nowej kopii, więc przerwane tworzenie kopii niczego nie gubi.
+        var store = new FigureStore();
+        long base = snapshots.isEmpty() ? 1 : snapshots.lastKey();
+        long snapshotBytes = 0;
+
+        if (snapshots.containsKey(base)) {
+            FigureFile.load(snapshots.get(base), store);
+            snapshotBytes = Files.size(snapshots.get(base));
+        }
+
+        long generation = base;
+        long validLength = -1;
+
+        for (Map.Entry<Long, Path> journal : journals.tailMap(base, true).entrySet()) {
+            generation = journal.getKey();
+            validLength = replay(journal.getValue(), store);
+        }
+
+        // Uszkodzony koniec ostatniego dziennika jest obcinany, a brakujący dziennik tworzony od nowa.
+        FileChannel channel;
+
+        if (validLength < HEADER_SIZE) {
+            channel = create(journalPath(directory, generation), generation);
+        } else {
+            channel = FileChannel.open(journalPath(directory, generation), StandardOpenOption.WRITE);
+            channel.truncate(validLength);
+            channel.position(validLength);
+        }
+
+        return new Recovery(directory, store.snapshot(), channel, base, generation, snapshotBytes, directoryLock);
+    }
+
+    @Override
+    public void figureAdded(int slot) {
+        append(ADD, store.getType(slot), slot);
+    }
+
+    @Override
+    public void figureChanged(int slot) {
+        append(CHANGE, slot, slot);
+    }
+
+    @Override
+    public void figuresRemoved(int from, int to) {
+        synchronized (lock) {
+            ensureRemaining();
+            pending.putInt(REMOVE).putInt(from);
+            for (int i = 2; i < RECORD_SIZE / Integer.BYTES; i++) pending.putInt(0);
+        }
+    }
+
+    @Override
+    public void cleared() {
+        synchronized (lock) {
+            ensureRemaining();
+            pending.putInt(CLEAR);
+            for (int i = 1; i < RECORD_SIZE / Integer.BYTES; i++) pending.putInt(0);
+        }
+    }
+
+    /**
+     * Zapisuje na dysk wszystkie zebrane zmiany i zamyka dziennik. Czeka na zakończenie
+     * tworzonej w tle kopii, więc po powrocie z metody dokument można w całości odtworzyć.
+     * @throws IOException jeżeli zamykanie zostanie przerwane
+     */
+
+    @Override
+    public void close() throws IOException {
+        writer.execute(() -> {
+            try {
+                ByteBuffer bytes;
+                synchronized (lock) {
+                    bytes = takePending();
+                }
+
+                write(bytes);
+                channel.force(false);
+                channel.close();
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        });
+        writer.shutdown();
+
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Przerwano zamykanie dziennika", exception);
+        } finally {
+            directoryLock.close();
+        }
+    }
+
+    /**
+     * Dopisuje do bufora rekord z aktualnym stanem figury.
+     * @param operation rodzaj zmiany
+     * @param key numer figury dla ADD albo slot dla CHANGE
+     * @param slot slot figury
+     */
+
+    private void append(int operation, int key, int slot) {
+        synchronized (lock) {
+            ensureRemaining();
+            pending.putInt(operation).putInt(key)
+                    .putInt(store.getX(slot)).putInt(store.getY(slot))
+                    .putInt(store.getWidth(slot)).putInt(store.getHeight(slot))
+                    .putInt(store.getColor(slot));
+        }
+    }
+
+    /**
+     * Zapewnia miejsce na jeden rekord w buforze, podwajając go w razie potrzeby.
+     */
+
+    private void ensureRemaining() {
+        if (pending.remaining() >= RECORD_SIZE) return;
+
+        var larger = ByteBuffer.allocate(pending.capacity() * 2);
+        pending.flip();
+        larger.put(pending);
+        pending = larger;
+    }
+
+    /**
+     * Zabiera bufor z zebranymi zmianami do zapisu i podstawia pusty. Wywoływać z blokadą lock.
+     * @return bufor gotowy do odczytu
+     */
+
+    private ByteBuffer takePending() {
+        ByteBuffer bytes = pending;
+        bytes.flip();
+
+        pending = spare != null ? spare : ByteBuffer.allocate(BUFFER_SIZE);
+        spare = null;
+
+        return bytes;
+    }
+
+    /**
+     * Dopisuje bufor do bieżącego pliku dziennika i oddaje go do ponownego użycia.
+     * @param bytes bufor gotowy do odczytu
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    private void write(ByteBuffer bytes) throws IOException {
+        if (bytes.hasRemaining()) unsynced = true;
+
+        while (bytes.hasRemaining()) journalBytes += channel.write(bytes);
+        bytes.clear();
+
+        synchronized (lock) {
+            if (spare == null) spare = bytes;
+        }
+    }
+
+    /**
+     * Okresowo dopisuje zebrane zmiany do pliku, wymusza ich zapis na dysk co SYNC_INTERVAL
+     * i zleca utworzenie nowej kopii, gdy dziennik stanie się zbyt duży.
+     */
+
+    private void flush() {
+        try {
+            ByteBuffer bytes = null;
+
+            // Podczas zmiany pokolenia zmiany czekają w buforze, bo należą już do nowego dziennika.
+            synchronized (lock) {
+                if (!rotating && pending.position() > 0) bytes = takePending();
+            }
+
+            if (bytes != null) write(bytes);
+
+            long now = System.currentTimeMillis();
+            if (unsynced && now - lastSync >= SYNC_INTERVAL) {
+                channel.force(false);
+                unsynced = false;
+                lastSync = now;
+            }
+
+            if (!compactionRequested && journalBytes > Math.max(COMPACT_THRESHOLD, snapshotBytes)) {
+                compactionRequested = true;
+                SwingUtilities.invokeLater(this::compact);
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Tworzy kopię figur w wątku obsługi zdarzeń, w tej samej chwili zamyka bieżące pokolenie
+     * dziennika i zleca zapisanie kopii w tle.
+     */
+
+    private void compact() {
+        FigureSnapshot figures = store.snapshot();
+        ByteBuffer bytes;
+
+        synchronized (lock) {
+            bytes = takePending();
+            rotating = true;
+        }
+
+        writer.execute(() -> rotate(bytes, figures));
+    }
+
+    /**
+     * Kończy bieżący dziennik zmianami sprzed kopii, otwiera dziennik nowego pokolenia,
+     * zapisuje kopię figur i usuwa pliki starszych pokoleń.
+     * @param bytes zmiany zebrane przed wykonaniem kopii
+     * @param figures kopia figur
+     */
+
+    private void rotate(ByteBuffer bytes, FigureSnapshot figures) {
+        try {
+            try {
+                write(bytes);
+                channel.force(false);
+                channel.close();
+
+                channel = create(journalPath(directory, generation + 1), generation + 1);
+                generation++;
+                journalBytes = HEADER_SIZE;
+                unsynced = false;
+            } finally {
+                synchronized (lock) {
+                    rotating = false;
+                }
+            }
+
+            Path snapshot = snapshotPath(directory, generation);
+            FigureFile.save(snapshot, figures, progress -> true);
+            snapshotBytes = Files.size(snapshot);
+
+            deleteBefore(generation);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        } finally {
+            compactionRequested = false;
+        }
+    }
+
+    /**
+     * Usuwa kopie i dzienniki pokoleń starszych niż podane.
+     * @param first najstarsze zachowywane pokolenie
+     * @throws IOException jeżeli nie uda się odczytać katalogu lub usunąć pliku
+     */
+
+    private void deleteBefore(long first) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(2)) < first) Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Zwraca ścieżkę kopii figur danego pokolenia.
+     * @param directory katalog dziennika
+     * @param generation numer pokolenia
+     * @return ścieżka pliku
+     */
+
+    private static Path snapshotPath(Path directory, long generation) {
+        return directory.resolve(String.format("snapshot-%d.fig", generation));
+    }
+
+    /**
+     * Zwraca ścieżkę dziennika danego pokolenia.
+     * @param directory katalog dziennika
+     * @param generation numer pokolenia
+     * @return ścieżka pliku
+     */
+
+    private static Path journalPath(Path directory, long generation) {
+        return directory.resolve(String.format("journal-%d.log", generation));
+    }
+
+    /**
+     * Tworzy pusty plik dziennika z nagłówkiem.
+     * @param path ścieżka pliku
+     * @param generation numer pokolenia
+     * @return kanał pliku ustawiony za nagłówkiem
+     * @throws IOException jeżeli nie uda się utworzyć pliku
+     */
+
+    private static FileChannel create(Path path, long generation) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+        while (header.hasRemaining()) channel.write(header);
+        channel.force(false);
+
+        return channel;
+    }
+
+    /**
+     * Wykonuje na magazynie zmiany zapisane w dzienniku. Odczyt kończy się na pierwszym
+     * niepełnym lub uszkodzonym rekordzie, który mógł powstać podczas awarii.
+     * @param path ścieżka dziennika
+     * @param store magazyn figur
+     * @return długość poprawnej części pliku lub -1, jeżeli plik nie ma poprawnego nagłówka
+     * @throws IOException jeżeli odczyt się nie powiedzie
+     */
+
+    private static long replay(Path path, FigureStore store) throws IOException {
+        MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return -1;
+
+        // Kolejne dodane figury są zbierane w tablicy rekordów i dodawane do magazynu razem.
+        int types = Figures.values().length;
+        int[] added = new int[1024 * FigureStore.RECORD_INTS];
+        int count = 0;
+        int position = HEADER_SIZE;
+
+        while (buffer.capacity() - position >= RECORD_SIZE) {
+            int operation = buffer.getInt(position);
+            int key = buffer.getInt(position + 4);
+
+            boolean valid = switch (operation) {
+                case ADD -> key >= 0 && key < types;
+                case CHANGE -> key >= 0 && key < store.size() + count;
+                case CLEAR -> true;
+                case REMOVE -> key >= 0 && key <= store.size() + count;
+                default -> false;
+            };
+            if (!valid) break;
+
+            if (operation == ADD) {
+                if (count * FigureStore.RECORD_INTS == added.length) {
+                    store.addRecords(added, count);
+                    count = 0;
+                }
+
+                int r = count++ * FigureStore.RECORD_INTS;
+                for (int field = 0; field < FigureStore.RECORD_INTS; field++) {
+                    added[r + field] = buffer.getInt(position + (field + 1) * Integer.BYTES);
+                }
+            } else {
+                store.addRecords(added, count);
+                count = 0;
+
+                if (operation == CLEAR) {
+                    store.clear();
+                } else if (operation == REMOVE) {
+                    store.truncate(key);
+                } else {
+                    store.setBounds(key, buffer.getInt(position + 8), buffer.getInt(position + 12),
+                            buffer.getInt(position + 16), buffer.getInt(position + 20));
+                    store.setColor(key, buffer.getInt(position + 24));
+                }
+            }
+
+            position += RECORD_SIZE;
+        }
+
+        store.addRecords(added, count);
+        return position;
+    }
+
+    /**
+     * Dokument odtworzony z katalogu dziennika, którego zmiany nie są jeszcze zapisywane.
+     * Odtworzone figury są przenoszone do magazynu programu partiami po COPY_BATCH figur.
+     */
+
+    public static class Recovery {
+        private static final int COPY_BATCH = 1 << 14;
+
+        private final Path directory;
+        private final FigureSnapshot figures;
+        private final FileChannel channel;
+        private final long base;
+        private final long generation;
+        private final long snapshotBytes;
+        private final FileChannel directoryLock;
+
+        /**
+         * Tworzy odtworzony dokument.
+         * @param directory katalog dziennika
+         * @param figures odtworzone figury
+         * @param channel kanał pliku dziennika ustawiony na jego końcu
+         * @param base pokolenie odtworzonej kopii
+         * @param generation pokolenie dziennika, do którego będą dopisywane zmiany
+         * @param snapshotBytes rozmiar odtworzonej kopii
+         * @param directoryLock kanał pliku blokady katalogu
+         */
+
+        private Recovery(Path directory, FigureSnapshot figures, FileChannel channel, long base, long generation,
+                         long snapshotBytes, FileChannel directoryLock) {
+            this.directory = directory;
+            this.figures = figures;
+            this.channel = channel;
+            this.base = base;
+            this.generation = generation;
+            this.snapshotBytes = snapshotBytes;
+            this.directoryLock = directoryLock;
+        }
+
+        /**
+         * Zwraca liczbę odtworzonych figur.
+         * @return liczba figur
+         */
+
+        public int size() {
+            return figures.size();
+        }
+
+        /**
+         * Dodaje odtworzone figury do pustego magazynu i zaczyna zapisywać do dziennika wszystkie
+         * zmiany magazynu. Wywoływać w wątku, który zmienia magazyn.
+         * @param store pusty magazyn figur
+         * @return otwarty dziennik
+         * @throws IOException jeżeli nie uda się usunąć plików starszych pokoleń
+         */
+
+        public EditJournal attach(FigureStore store) throws IOException {
+            if (store.size() > 0) throw new IllegalStateException("Magazyn figur nie jest pusty");
+
+            int[] records = new int[Math.min(Math.max(figures.size(), 1), COPY_BATCH) * FigureStore.RECORD_INTS];
+            for (int from = 0; from < figures.size(); from += COPY_BATCH) {
+                int count = Math.min(COPY_BATCH, figures.size() - from);
+                figures.copyRecords(from, count, records);
+                store.addRecords(records, count);
+            }
+
+            var journal = new EditJournal(directory, store, channel, generation, snapshotBytes, directoryLock);
+            journal.deleteBefore(base);
+
+            store.addListener(journal);
+            journal.writer.scheduleWithFixedDelay(journal::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+
+            return journal;
+        }
+
+        /**
+         * Zamyka dziennik bez dodawania odtworzonych figur do magazynu i zwalnia blokadę katalogu.
+         * Pliki dziennika pozostają bez zmian, więc dokument zostanie odtworzony przy następnym
+         * uruchomieniu programu.
+         * @throws IOException jeżeli zamknięcie pliku się nie powiedzie
+         */
+
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                directoryLock.close();
+            }
+        }
+    }
+}
@@ -1,19 +1,17 @@
 import java.awt.*;
-import java.awt.geom.*;
-import java.io.Serializable;
 
 /**
- * Obiekt Figure reprezentuje figurę utworzoną w programie.
- * Posiada nazwę, kolor, kształt oraz prostokąt w który ten kształt jest wpisany.
- * Dodatkowo posiada współrzędne swojego lewego górnego rogu oraz odległość
- * tego rogu od kursora myszy podczas przesuwania.
+ * Obiekt Figure jest uchwytem do jednej figury zapisanej w magazynie FigureStore.
+ * Sama figura (nazwa, kolor i prostokąt, w który wpisany jest jej kształt) jest
+ * przechowywana w tablicach magazynu, a uchwyt pamięta tylko jej slot, współrzędne
+ * punktu zaczepienia używanego przy zmianie wielkości oraz odległość lewego górnego
+ * rogu figury od kursora myszy podczas przesuwania. Podczas przeciągania uchwyt pamięta
+ * też nowe położenie figury, które trafia do magazynu dopiero po zakończeniu przeciągania.
  */
 
-public class Figure implements Serializable {
-    private final Rectangle2D bound;
-    private final Figures name;
-    private Shape shape;
-    private Color color;
+public class Figure {
+    private final FigureStore store;
+    private final int slot;
 
     private int offsetX;
     private int offsetY;
@@ -21,29 +19,34 @@ public class Figure implements Serializable {
     private int x;
     private int y;
 
+    private boolean dragging;
+    private int dragX;
+    private int dragY;
+
     /**
-     * Tworzy nową figurę o nazwie name oraz współrzędnych (mouseX, mouseY).
+     * Tworzy nową figurę o nazwie name oraz współrzędnych (mouseX, mouseY) i dodaje ją do magazynu.
+     * @param store magazyn, do którego zostanie dodana figura
      * @param name nazwa figury
      * @param mouseX współrzędna x figury
      * @param mouseY współrzędna y figury
      */
 
-    public Figure(Figures name, int mouseX, int mouseY) {
-        // Utworzenie prostokąta, w który wpisana jest figura.
-        bound = new Rectangle2D.Double(mouseX, mouseY, 0, 0);
+    public Figure(FigureStore store, Figures name, int mouseX, int mouseY) {
+        this(store, store.add(name, mouseX, mouseY, 0, 0, Color.BLACK.getRGB()));
+    }
 
-        this.name = name;
-        color = Color.BLACK;
+    /**
+     * Tworzy uchwyt do figury zapisanej już w magazynie.
+     * @param store magazyn figur
+     * @param slot slot figury
+     */
 
-        this.x = mouseX;
-        this.y = mouseY;
+    public Figure(FigureStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
 
-        // Utworzenie kształtu w zależności od nazwy figury.
-        switch (name) {
-            case RECTANGLE -> shape = new Rectangle2D.Double(mouseX, mouseY, 0, 0);
-            case CIRCLE -> shape = new Ellipse2D.Double(mouseX, mouseY, 0, 0);
-            case TRIANGLE -> shape = new Polygon(new int[]{mouseX, mouseX, mouseX}, new int[]{mouseY, mouseY, mouseY}, 3);
-        }
+        this.x = store.getX(slot);
+        this.y = store.getY(slot);
     }
 
     /**
@@ -77,9 +80,8 @@ public class Figure implements Serializable {
         if (mouseY < y) newY = y - newHeight;
             else newY = y;
 
-        // Transformacja prostokąta figury i wpisywanie do niego kształtu.
-        bound.setFrame(newX, newY, newWidth, newHeight);
-        merge();
+        // Transformacja prostokąta figury.
+        store.setBounds(slot, newX, newY, newWidth, newHeight);
     }
 
     /**
@@ -91,15 +93,14 @@ public class Figure implements Serializable {
 
     public void scale(int percentage) {
         // Wyliczenie przeskalowanych wymiarów w zależności od starych wymiarów.
-        int oldWidth = (int) getBound().getWidth();
-        int oldHeight = (int) getBound().getHeight();
+        int oldWidth = store.getWidth(slot);
+        int oldHeight = store.getHeight(slot);
 
         int newWidth = (int)(oldWidth + percentage * oldWidth / 10.0);
         int newHeight = (int)(oldHeight + percentage * oldHeight / 10.0);
 
-        // Transformacja prostokąta figury i wpisywanie do niego kształtu.
-        bound.setFrame(x, y, newWidth, newHeight);
-        merge();
+        // Transformacja prostokąta figury.
+        store.setBounds(slot, x, y, newWidth, newHeight);
     }
 
     /**
@@ -110,46 +111,58 @@ public class Figure implements Serializable {
      */
 
     public void move(int x, int y) {
-        // Transformacja prostokąta figury w zależności od starych współrzędnych,
-        // a następnie wpisanie do niego kształtu.
-        int oldWidth = (int) bound.getWidth();
-        int oldHeight = (int) bound.getHeight();
+        // Transformacja prostokąta figury w zależności od starych współrzędnych.
+        this.x = x - offsetX;
+        this.y = y - offsetY;
 
-        bound.setFrame(x - offsetX, y - offsetY, oldWidth, oldHeight);
+        store.setBounds(slot, this.x, this.y, store.getWidth(slot), store.getHeight(slot));
+    }
 
-        this.x = (int) bound.getX();
-        this.y = (int) bound.getY();
+    /**
+     * Przeciąga figurę w zależności od położenia kursora (x, y) tak jak move, ale zapamiętuje
+     * nowe położenie tylko w uchwycie, bez zmieniania magazynu.
+     * @param x współrzędna x kursora
+     * @param y współrzędna y kursora
+     */
 
-        merge();
+    public void drag(int x, int y) {
+        dragX = x - offsetX;
+        dragY = y - offsetY;
+        dragging = true;
     }
 
     /**
-     * Wpisuje kształt figury w jej prostokąt.
+     * Kończy przeciąganie i zapisuje w magazynie położenie, do którego figura została przeciągnięta.
+     * @return true jeżeli figura była przeciągana
      */
 
-    private void merge() {
-        // Wpisuje kształt figury w jej prostokąt w zależności od nazwy figury.
-        switch (name) {
-            case RECTANGLE -> ((Rectangle2D)shape).setFrame(bound);
-            case CIRCLE -> ((Ellipse2D)shape).setFrame(bound);
-            case TRIANGLE -> {
-                Polygon p = (Polygon) shape;
+    public boolean commitDrag() {
+        if (!dragging) return false;
 
-                int boundX = (int) bound.getX();
-                int boundY = (int) bound.getY();
+        dragging = false;
+        x = dragX;
+        y = dragY;
+        store.setBounds(slot, x, y, store.getWidth(slot), store.getHeight(slot));
 
-                int boundWidth = (int) bound.getWidth();
-                int boundHeight = (int) bound.getHeight();
+        return true;
+    }
 
-                p.xpoints[0] = boundX;
-                p.xpoints[1] = boundX + boundWidth / 2;
-                p.xpoints[2] = boundX + boundWidth;
+    /**
+     * Zwraca współrzędną x lewego górnego rogu figury, uwzględniając przeciąganie.
+     * @return współrzędna x figury
+     */
 
-                p.ypoints[0] = boundY + boundHeight;
-                p.ypoints[1] = boundY;
-                p.ypoints[2] = boundY + boundHeight;
-            }
-        }
+    public int getX() {
+        return dragging ? dragX : store.getX(slot);
+    }
+
+    /**
+     * Zwraca współrzędną y lewego górnego rogu figury, uwzględniając przeciąganie.
+     * @return współrzędna y figury
+     */
+
+    public int getY() {
+        return dragging ? dragY : store.getY(slot);
     }
 
     /**
@@ -160,39 +173,58 @@ public class Figure implements Serializable {
      */
 
     public void setOffset(int x, int y) {
-        offsetX = (int) (x - getBound().getX());
-        offsetY = (int) (y - getBound().getY());
+        offsetX = x - getX();
+        offsetY = y - getY();
     }
 
     /**
-     * Zwraca kształt figury.
-     * @return kształt figury
+     * Sprawdza, czy kształt figury zawiera punkt (x, y), uwzględniając przeciąganie.
+     * @param x współrzędna x punktu
+     * @param y współrzędna y punktu
+     * @return true jeżeli punkt leży wewnątrz figury
      */
 
-    public Shape getShape() {
-        return shape;
+    public boolean contains(int x, int y) {
+        // Punkt jest przesuwany o przeciągnięcie, bo magazyn zna tylko poprzednie położenie figury.
+        return store.contains(slot, x - getX() + store.getX(slot), y - getY() + store.getY(slot));
+    }
+
+    /**
+     * Zwraca slot figury w magazynie.
+     * @return slot figury
+     */
+
+    public int getSlot() {
+        return slot;
     }
 
     /**
      * Zwraca prostokąt figury.
-     * @return prostokąt figury
+     * @return nowy obiekt z prostokątem figury
      */
 
-    public Rectangle2D getBound() {
-        return bound;
+    public Rectangle getBound() {
+        return new Rectangle(getX(), getY(), store.getWidth(slot), store.getHeight(slot));
     }
 
+    /**
+     * Zwraca nazwę figury.
+     * @return nazwa figury
+     */
+
+    public Figures getName() { return store.getName(slot); }
+
     /**
      * Zwraca kolor figury.
      * @return kolor figury
      */
 
-    public Color getColor() { return color; }
+    public Color getColor() { return new Color(store.getColor(slot), true); }
 
     /**
      * Ustawia nowy kolor figury.
      * @param color nowy kolor figury
      */
 
-    public void setColor(Color color) { this.color = color; }
+    public void setColor(Color color) { store.setColor(slot, color.getRGB()); }
 }
@@ -0,0 +1,1072 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Główny komponent programu rysujący figury i obsługujący funkcjonalności
+ * z nimi związane. Zawiera dwa pola createdFigure, które przechowuje figurę
+ * w momencie jej tworzenia oraz markedFigure, które przechowuje figurę,
+ * która jest zaznaczona, a także pole currentFigure z nazwą aktualnie tworzonej figury
+ * i flagę isShiftPressed, która przechowuje informację czy jest wciśnięty klawisz shift.
+ * <p>
+ * Rysowane są tylko figury widoczne w odświeżanym obszarze, a po każdej zmianie figury odświeżany
+ * jest tylko obszar, który zajmowała przed zmianą i po niej. Podczas edycji figury pozostałe figury
+ * są kopiowane z warstw wyrenderowanych na początku edycji, a przeciągana figura z jej obrazu.
+ * Zdarzenia przeciągania i kółka myszy są stosowane najwyżej raz na klatkę ekranu. Każda klatka
+ * jest mierzona, a włączona nakładka pokazuje percentyle pomiarów z ostatniej sekundy.
+ * <p>
+ * Widok można przesuwać środkowym przyciskiem myszy i przybliżać kółkiem z klawiszem ctrl.
+ * Z otwartym dokumentem stronicowanym po zmianie widoku wczytywane są strony widocznego obszaru.
+ * <p>
+ * Kliknięcie z klawiszem shift i prostokąt zaznaczania wybierają kilka figur, które są zmieniane
+ * razem. Przesuwane i tworzone figury są dociągane do krawędzi i środków innych figur. Zmiany
+ * wykonane jednym gestem myszy tworzą jeden wpis historii, którą cofa ctrl+Z, a ponawia ctrl+Y.
+ * <p>
+ * Komponent nie potrzebuje okna, więc obsługę zdarzeń można odtwarzać bez ekranu,
+ * a obsłużone zdarzenia można nagrywać obiektem InteractionRecorder.
+ */
+
+public class FigureCanvas extends JComponent {
+    private static final int REPAINT_MARGIN = 2;
+    private static final Rectangle HUD_BOUNDS = new Rectangle(8, 8, 250, 110);
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 160);
+    private static final int HUD_INTERVAL = 1_000;
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    private static final int MIN_WHEEL_ROTATION = -9;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int SNAP_TOLERANCE = 6;
+    private static final Stroke SELECTION_STROKE = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+            10, new float[] {4, 4}, 0);
+
+    private final FigureStore figures;
+    private final SpatialIndex index;
+    private final FrameMetrics metrics;
+
+    private Figures currentFigure;
+    private boolean isShiftPressed;
+    private Figure createdFigure;
+    private Figure markedFigure;
+    private final Selection selection;
+    private final EditHistory history;
+    private final SnapIndex snapIndex;
+    private Supplier<Color> colorChooser;
+    private InteractionRecorder recorder;
+    private PagedDocument document;
+    private Runnable paintAction;
+
+    private final Viewport viewport = new Viewport();
+    private final Rectangle dirtyBound = new Rectangle();
+    private final Rectangle screenBound = new Rectangle();
+    private final Rectangle paintBound = new Rectangle();
+    private final Rectangle selectionBound = new Rectangle();
+    private final Rectangle changedBound = new Rectangle();
+    private final Rectangle band = new Rectangle();
+    private final Rectangle pageBound = new Rectangle();
+    private final Rectangle2D.Double pageArea = new Rectangle2D.Double();
+    private final Rectangle2D.Double visibleArea = new Rectangle2D.Double();
+    private final Point snapShift = new Point();
+    private final int[] snapMatch = new int[2];
+    private final IntList visibleFigures = new IntList();
+    private final FigurePainter painter = new FigurePainter();
+    private final TiledRenderer tiledRenderer;
+    private final FigureLayers layers;
+    private final Timer hudTimer = new Timer(HUD_INTERVAL, e -> updateHud());
+
+    private final Timer inputTimer = new Timer(frameInterval(), e -> applyInput());
+
+    private String[] hudLines = new String[0];
+
+    private boolean dragPending;
+    private int dragX;
+    private int dragY;
+    private int wheelRotation;
+    private int wheelX;
+    private int wheelY;
+    private int zoomRotation;
+    private int zoomX;
+    private int zoomY;
+    private boolean panning;
+    private int panX;
+    private int panY;
+    private long pendingWhen;
+    private boolean selecting;
+    private int bandX;
+    private int bandY;
+    private boolean movingSelection;
+    private int moveX;
+    private int moveY;
+    private int movedX;
+    private int movedY;
+    private boolean snapping;
+    private int guideX;
+    private int guideY;
+    private boolean editing;
+    private boolean pagesPending;
+
+    /**
+     * Tworzy główny komponent, inicjalizuje pola oraz dodaje obsługę myszy
+     * do danego komponentu. Kolor klikniętej figury jest wybierany w oknie JColorChooser.
+     * @param figures magazyn figur
+     * @param index indeks przestrzenny figur z magazynu
+     * @param metrics pomiary płynności rysowania
+     */
+
+    public FigureCanvas(FigureStore figures, SpatialIndex index, FrameMetrics metrics) {
+        this.figures = figures;
+        this.index = index;
+        this.metrics = metrics;
+        tiledRenderer = new TiledRenderer(figures, index);
+        layers = new FigureLayers(figures, tiledRenderer, viewport);
+        selection = new Selection(figures);
+        history = new EditHistory(figures);
+        snapIndex = new SnapIndex(figures);
+
+        currentFigure = null;
+        isShiftPressed = false;
+        markedFigure = null;
+        createdFigure = null;
+        colorChooser = () -> JColorChooser.showDialog(null, "ASD", Color.RED);
+        recorder = null;
+        document = null;
+        paintAction = null;
+        snapping = true;
+        guideX = SnapIndex.NONE;
+        guideY = SnapIndex.NONE;
+
+        attachMouseHandler();
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updatePages();
+            }
+        });
+    }
+
+    /**
+     * Ustawia figurę, która zostanie utworzona przy następnym przeciągnięciu myszy.
+     * @param figure nazwa figury lub null
+     */
+
+    public void setCurrentFigure(Figures figure) {
+        if (recorder != null) recorder.recordFigure(figure);
+        currentFigure = figure;
+    }
+
+    /**
+     * Zwraca historię zmian figur, do której trafiają zmiany wykonane myszą.
+     * @return historia zmian
+     */
+
+    public EditHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Cofa ostatnią zmianę figur, jeżeli żaden gest myszy nie jest w trakcie.
+     */
+
+    public void undo() {
+        applyInput();
+        if (history.canUndo()) historyChanged(history.undo());
+    }
+
+    /**
+     * Ponawia ostatnio cofniętą zmianę figur, jeżeli żaden gest myszy nie jest w trakcie.
+     */
+
+    public void redo() {
+        applyInput();
+        if (history.canRedo()) historyChanged(history.redo());
+    }
+
+    /**
+     * Ustawia funkcję wybierającą kolor figury klikniętej prawym przyciskiem myszy.
+     * @param colorChooser funkcja zwracająca wybrany kolor lub null, jeżeli wybór został anulowany
+     */
+
+    public void setColorChooser(Supplier<Color> colorChooser) {
+        this.colorChooser = colorChooser;
+    }
+
+    /**
+     * Ustawia dokument stronicowany, którego strony są wczytywane do magazynu po zmianie widoku.
+     * @param document otwarty dokument lub null, jeżeli magazyn zawiera cały dokument
+     */
+
+    public void setDocument(PagedDocument document) {
+        this.document = document;
+        updatePages();
+    }
+
+    /**
+     * Ustawia akcję wykonywaną jeden raz po najbliższym narysowaniu komponentu, np. żeby zmierzyć
+     * czas do pierwszego narysowania okna.
+     * @param action wykonywana akcja lub null
+     */
+
+    public void whenPainted(Runnable action) {
+        paintAction = action;
+    }
+
+    /**
+     * Włącza lub wyłącza dociąganie figur do krawędzi i środków innych figur.
+     * @param snapping true, żeby dociągać figury
+     */
+
+    public void setSnapping(boolean snapping) {
+        this.snapping = snapping;
+    }
+
+    /**
+     * Ustawia obiekt nagrywający obsługiwane zdarzenia myszy i klawiatury.
+     * @param recorder obiekt nagrywający lub null, żeby zakończyć nagrywanie
+     */
+
+    public void setRecorder(InteractionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Tworzy obsługę klawiatury, którą należy dodać do okna zawierającego komponent,
+     * bo to okno otrzymuje zdarzenia klawiatury.
+     * @return obiekt obsługujący zdarzenia klawiatury
+     */
+
+    public KeyListener createKeyHandler() {
+        // Zmienia flagę isShiftPressed w zależności od wciśnięcia fizycznego przycisku
+        return new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (recorder != null) recorder.record(e);
+                if(e.getKeyCode() == KeyEvent.VK_SHIFT && !isShiftPressed) isShiftPressed = true;
+
+                // Ctrl+Z cofa, a ctrl+Y ponawia zmianę figur.
+                if (e.isControlDown() && e.getKeyCode() == KeyEvent.VK_Z) undo();
+                else if (e.isControlDown() && e.getKeyCode() == KeyEvent.VK_Y) redo();
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e) {
+                if (recorder != null) recorder.record(e);
+                if(e.getKeyCode() == KeyEvent.VK_SHIFT) isShiftPressed = false;
+            }
+        };
+    }
+
+    /**
+     * Stosuje od razu zdarzenia myszy odłożone do najbliższej klatki.
+     */
+
+    public void flushInput() {
+        applyInput();
+    }
+
+    /**
+     * Usuwa zaznaczenie, porzuca odłożone zdarzenia myszy i przerywa tworzenie figury,
+     * np. przed wczytaniem nowych figur.
+     */
+
+    public void reset() {
+        layers.endDrag();
+        markedFigure = null;
+        createdFigure = null;
+        dragPending = false;
+        wheelRotation = 0;
+        zoomRotation = 0;
+        panning = false;
+        selecting = false;
+        movingSelection = false;
+        clearGuides();
+        endGesture();
+        selection.clear();
+        selectionBound.setBounds(0, 0, 0, 0);
+        repaint();
+    }
+
+    /**
+     * Przywraca widok, w którym współrzędne dokumentu są równe współrzędnym ekranu.
+     */
+
+    public void resetViewport() {
+        viewport.reset();
+        viewChanged();
+    }
+
+    /**
+     * Pokazuje lub ukrywa nakładkę z pomiarami rysowania.
+     * @param visible true, żeby pokazać nakładkę
+     */
+
+    public void setHudVisible(boolean visible) {
+        if (visible) {
+            metrics.takeRecent();
+            hudTimer.start();
+        } else {
+            hudTimer.stop();
+            hudLines = new String[0];
+        }
+
+        repaint(HUD_BOUNDS);
+    }
+
+    /**
+     * Wyświetla figury przecinające odświeżany obszar komponentu kolorując je na ich kolory
+     * i zapisuje pomiary klatki.
+     * @param g obiekt Graphics
+     */
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        int count = paintFigures(g);
+        metrics.framePainted(start, count);
+
+        paintSelection(g);
+        paintGuides(g);
+        if (hudLines.length > 0) paintHud(g);
+        g.setColor(Color.BLACK);
+
+        if (paintAction != null) {
+            Runnable action = paintAction;
+            paintAction = null;
+            action.run();
+        }
+    }
+
+    /**
+     * Rysuje figury przecinające odświeżany obszar komponentu.
+     * @param g obiekt Graphics
+     * @return liczba narysowanych figur
+     */
+
+    private int paintFigures(Graphics g) {
+        // Jeżeli warstwy z nieedytowanymi figurami są aktualne, wystarczy je skopiować.
+        int layered = layers.paint(g, getWidth(), getHeight());
+        if (layered >= 0) return layered;
+
+        // Pobiera z indeksu tylko figury, które przecinają widoczną część odświeżanego obszaru,
+        // i rysuje je bezpośrednio z tablic magazynu. Duże sceny są rysowane równolegle kafelkami.
+        if (g.getClip() != null) g.getClipBounds(paintBound);
+        else paintBound.setBounds(0, 0, getWidth(), getHeight());
+
+        if (figures.size() >= TiledRenderer.THRESHOLD) {
+            return tiledRenderer.render(g, paintBound, viewport, 0, figures.size());
+        }
+
+        visibleFigures.clear();
+        viewport.toWorld(paintBound, visibleArea);
+        index.query(visibleArea, visibleFigures);
+
+        Graphics2D g2 = (Graphics2D) g;
+        AffineTransform transform = g2.getTransform();
+        viewport.apply(g2);
+        painter.setViewport(viewport, paintBound);
+        painter.paint(g2, figures, visibleFigures);
+        g2.setTransform(transform);
+
+        return visibleFigures.size();
+    }
+
+    /**
+     * Rysuje przerywaną ramkę wokół kilku zaznaczonych figur i prostokąt zaznaczania.
+     * @param g obiekt Graphics
+     */
+
+    private void paintSelection(Graphics g) {
+        if (selection.size() < 2 && !selecting) return;
+
+        Graphics2D g2 = (Graphics2D) g;
+        Stroke stroke = g2.getStroke();
+        g2.setStroke(SELECTION_STROKE);
+        g2.setColor(Color.BLUE);
+
+        if (selection.size() > 1) {
+            viewport.toScreen(selectionBound, screenBound);
+            g2.drawRect(screenBound.x - 1, screenBound.y - 1, screenBound.width + 1, screenBound.height + 1);
+        }
+
+        if (selecting) {
+            viewport.toScreen(band, screenBound);
+            g2.drawRect(screenBound.x, screenBound.y, screenBound.width, screenBound.height);
+        }
+
+        g2.setStroke(stroke);
+    }
+
+    /**
+     * Rysuje przez cały komponent linie pomocnicze, do których została dociągnięta figura.
+     * @param g obiekt Graphics
+     */
+
+    private void paintGuides(Graphics g) {
+        if (guideX == SnapIndex.NONE && guideY == SnapIndex.NONE) return;
+
+        g.setColor(Color.MAGENTA);
+        if (guideX != SnapIndex.NONE) {
+            int x = (int) Math.round(viewport.toScreenX(guideX));
+            g.drawLine(x, 0, x, getHeight());
+        }
+
+        if (guideY != SnapIndex.NONE) {
+            int y = (int) Math.round(viewport.toScreenY(guideY));
+            g.drawLine(0, y, getWidth(), y);
+        }
+    }
+
+    /**
+     * Dociąga prostokąt do najbliższych krawędzi lub środków innych figur i przenosi linie pomocnicze
+     * do linii, do których został dociągnięty. Odległość dociągania jest stała na ekranie.
+     * @param x współrzędna x prostokąta
+     * @param y współrzędna y prostokąta
+     * @param width szerokość prostokąta, 0 dla punktu
+     * @param height wysokość prostokąta, 0 dla punktu
+     * @param skipped figury, do których nie można dociągać
+     * @param shift punkt, do którego zostanie zapisane przesunięcie dociągające prostokąt
+     */
+
+    private void snap(int x, int y, int width, int height, IntPredicate skipped, Point shift) {
+        int oldX = guideX;
+        int oldY = guideY;
+
+        shift.setLocation(0, 0);
+        guideX = SnapIndex.NONE;
+        guideY = SnapIndex.NONE;
+
+        if (snapping) {
+            int tolerance = (int) Math.ceil(SNAP_TOLERANCE / viewport.getScale());
+
+            if (snapIndex.snap(SnapIndex.X, x, width, tolerance, skipped, snapMatch)) {
+                shift.x = snapMatch[0];
+                guideX = snapMatch[1];
+            }
+
+            if (snapIndex.snap(SnapIndex.Y, y, height, tolerance, skipped, snapMatch)) {
+                shift.y = snapMatch[0];
+                guideY = snapMatch[1];
+            }
+        }
+
+        if (oldX != guideX || oldY != guideY) {
+            repaintGuides(oldX, oldY);
+            repaintGuides(guideX, guideY);
+        }
+    }
+
+    /**
+     * Usuwa linie pomocnicze po zakończeniu przeciągania.
+     */
+
+    private void clearGuides() {
+        repaintGuides(guideX, guideY);
+        guideX = SnapIndex.NONE;
+        guideY = SnapIndex.NONE;
+    }
+
+    /**
+     * Odświeża paski komponentu zajmowane przez linie pomocnicze.
+     * @param x współrzędna x pionowej linii w dokumencie lub NONE
+     * @param y współrzędna y poziomej linii w dokumencie lub NONE
+     */
+
+    private void repaintGuides(int x, int y) {
+        if (x != SnapIndex.NONE) repaint((int) Math.round(viewport.toScreenX(x)) - 1, 0, 3, getHeight());
+        if (y != SnapIndex.NONE) repaint(0, (int) Math.round(viewport.toScreenY(y)) - 1, getWidth(), 3);
+    }
+
+    /**
+     * Rysuje nakładkę z pomiarami w lewym górnym rogu komponentu.
+     * @param g obiekt Graphics
+     */
+
+    private void paintHud(Graphics g) {
+        g.setColor(HUD_BACKGROUND);
+        g.fillRect(HUD_BOUNDS.x, HUD_BOUNDS.y, HUD_BOUNDS.width, HUD_BOUNDS.height);
+        g.setColor(Color.WHITE);
+
+        int lineHeight = g.getFontMetrics().getHeight();
+        for (int i = 0; i < hudLines.length; i++) {
+            g.drawString(hudLines[i], HUD_BOUNDS.x + 6, HUD_BOUNDS.y + 4 + lineHeight * (i + 1));
+        }
+    }
+
+    /**
+     * Pobiera pomiary z ostatniej sekundy i odświeża nakładkę.
+     */
+
+    private void updateHud() {
+        hudLines = metrics.takeRecent();
+        repaint(HUD_BOUNDS);
+    }
+
+    /**
+     * Przygotowuje warstwy z pozostałymi figurami przed edycją danej figury.
+     * @param f edytowana figura
+     */
+
+    private void beginEdit(Figure f) {
+        layers.prepare(f.getSlot(), getGraphicsConfiguration(), getWidth(), getHeight());
+    }
+
+    /**
+     * Zapamiętuje prostokąt figury przed jej zmianą.
+     * @param f figura, która zostanie zmieniona
+     */
+
+    private void rememberBound(Figure f) {
+        int slot = f.getSlot();
+        dirtyBound.setBounds(f.getX(), f.getY(), figures.getWidth(slot), figures.getHeight(slot));
+    }
+
+    /**
+     * Odświeża sumę prostokąta figury sprzed zmiany i jej obecnego prostokąta przeliczoną
+     * na współrzędne ekranu, poszerzoną o margines na wygładzanie krawędzi.
+     * @param f zmieniona figura
+     */
+
+    private void repaintChanged(Figure f) {
+        int slot = f.getSlot();
+        dirtyBound.add(f.getX(), f.getY());
+        dirtyBound.add(f.getX() + figures.getWidth(slot), f.getY() + figures.getHeight(slot));
+        viewport.toScreen(dirtyBound, screenBound);
+
+        repaint(screenBound.x - REPAINT_MARGIN, screenBound.y - REPAINT_MARGIN,
+                screenBound.width + 2 * REPAINT_MARGIN, screenBound.height + 2 * REPAINT_MARGIN);
+    }
+
+    /**
+     * Odświeża prostokąt dokumentu przeliczony na współrzędne ekranu, poszerzony o margines
+     * na wygładzanie krawędzi i ramkę zaznaczenia.
+     * @param bound prostokąt dokumentu
+     */
+
+    private void repaintWorld(Rectangle bound) {
+        viewport.toScreen(bound, screenBound);
+
+        repaint(screenBound.x - REPAINT_MARGIN, screenBound.y - REPAINT_MARGIN,
+                screenBound.width + 2 * REPAINT_MARGIN, screenBound.height + 2 * REPAINT_MARGIN);
+    }
+
+    /**
+     * Odświeża ramkę zaznaczenia przed zmianą zaznaczenia i po niej.
+     */
+
+    private void selectionChanged() {
+        if (!selectionBound.isEmpty()) repaintWorld(selectionBound);
+        selection.bounds(selectionBound);
+        if (selection.size() > 1) repaintWorld(selectionBound);
+    }
+
+    /**
+     * Odświeża figury zmienione razem z zaznaczeniem, których suma prostokątów sprzed zmiany
+     * i po niej jest zapisana w changedBound. Ramka zaznaczenia leży w tej sumie, więc wystarczy
+     * jedno odświeżenie.
+     */
+
+    private void repaintSelection() {
+        selection.bounds(selectionBound);
+        repaintWorld(changedBound);
+    }
+
+    /**
+     * Sprawdza, czy figura pod kursorem należy do zaznaczenia kilku figur.
+     * @param x współrzędna x kursora w dokumencie
+     * @param y współrzędna y kursora w dokumencie
+     * @return true jeżeli zmiana figury pod kursorem powinna zmienić całe zaznaczenie
+     */
+
+    private boolean isOverSelection(int x, int y) {
+        if (selection.size() < 2) return false;
+
+        int slot = index.figureAt(x, y);
+        return slot >= 0 && selection.contains(slot);
+    }
+
+    /**
+     * Zaczyna wpis historii obejmujący wszystkie zmiany figur do zwolnienia przycisków myszy.
+     */
+
+    private void beginGesture() {
+        if (editing) return;
+
+        editing = true;
+        history.begin();
+    }
+
+    /**
+     * Kończy wpis historii rozpoczęty przez beginGesture.
+     */
+
+    private void endGesture() {
+        if (!editing) return;
+
+        editing = false;
+        history.end();
+
+        if (pagesPending) updatePages();
+    }
+
+    /**
+     * Wczytuje strony dokumentu stronicowanego przecinające widok powiększony o połowę z każdej strony,
+     * żeby niewielkie przesunięcia widoku nie wymieniały stron. W trakcie gestu myszy figury mają
+     * zachować sloty, więc strony są wczytywane dopiero po jego zakończeniu. Po wypełnieniu magazynu
+     * od nowa zaznaczenie jest odtwarzane z nowych slotów zaznaczonych figur.
+     */
+
+    private void updatePages() {
+        if (document == null) return;
+        if (editing) {
+            pagesPending = true;
+            return;
+        }
+
+        pagesPending = false;
+        pageBound.setBounds(-getWidth() / 2, -getHeight() / 2, 2 * getWidth(), 2 * getHeight());
+        viewport.toWorld(pageBound, pageArea);
+
+        int[] selected = selection.slots().toArray();
+        try {
+            if (!document.show(pageArea, selected)) return;
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return;
+        }
+
+        layers.endDrag();
+        markedFigure = null;
+        createdFigure = null;
+
+        for (int slot : selected) selection.add(slot);
+        if (selected.length == 1) markedFigure = new Figure(figures, selected[0]);
+
+        selection.bounds(selectionBound);
+        repaint();
+    }
+
+    /**
+     * Porzuca zaznaczenie po cofnięciu lub ponowieniu zmiany, bo zaznaczone figury mogły zniknąć,
+     * i odświeża obszar zmienionych figur.
+     * @param bound obszar dokumentu ze zmienionymi figurami albo null, żeby odświeżyć cały komponent
+     */
+
+    private void historyChanged(Rectangle bound) {
+        markedFigure = null;
+        createdFigure = null;
+        selection.clear();
+        selectionChanged();
+
+        if (bound != null) repaintWorld(bound);
+        else repaint();
+    }
+
+    /**
+     * Unieważnia warstwy wyrenderowane w poprzednim widoku i odświeża cały komponent.
+     */
+
+    private void viewChanged() {
+        layers.invalidate();
+        repaint();
+        updatePages();
+    }
+
+    /**
+     * Zapisuje w magazynie położenie, do którego została przeciągnięta zaznaczona figura,
+     * i odświeża ją, bo podczas przeciągania była rysowana z obrazu.
+     */
+
+    private void commitDrag() {
+        if (markedFigure == null || !markedFigure.commitDrag()) return;
+
+        layers.endDrag();
+        rememberBound(markedFigure);
+        repaintChanged(markedFigure);
+    }
+
+    /**
+     * Zwraca odstęp między klatkami wynikający z częstotliwości odświeżania ekranu.
+     * @return odstęp w milisekundach
+     */
+
+    private int frameInterval() {
+        int refreshRate = DEFAULT_REFRESH_RATE;
+
+        if (!GraphicsEnvironment.isHeadless()) {
+            int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDisplayMode().getRefreshRate();
+            if (rate != DisplayMode.REFRESH_RATE_UNKNOWN && rate > 0) refreshRate = rate;
+        }
+
+        return Math.max(1, 1_000 / refreshRate);
+    }
+
+    /**
+     * Odkłada zdarzenie myszy do zastosowania w najbliższej klatce. Jeżeli od ostatniej klatki
+     * nie było zmian, odłożone zdarzenia są stosowane od razu, a kolejne dopiero po upływie klatki.
+     * @param e zdarzenie myszy
+     */
+
+    private void scheduleInput(MouseEvent e) {
+        metrics.inputQueued();
+        if (pendingWhen == 0) pendingWhen = e.getWhen();
+
+        if (!inputTimer.isRunning()) {
+            applyInput();
+            inputTimer.start();
+        }
+    }
+
+    /**
+     * Stosuje odłożone zdarzenia myszy: przesuwa widok albo przesuwa lub rozciąga figurę do ostatniego
+     * położenia kursora, skaluje figurę o sumę obrotów kółka i przybliża widok o sumę obrotów kółka
+     * z wciśniętym klawiszem ctrl. Zatrzymuje zegar klatek, gdy nie ma nic do zastosowania.
+     */
+
+    private void applyInput() {
+        if (!dragPending && wheelRotation == 0 && zoomRotation == 0) {
+            inputTimer.stop();
+            pendingWhen = 0;
+            return;
+        }
+
+        long when = pendingWhen;
+        pendingWhen = 0;
+
+        if (dragPending) {
+            dragPending = false;
+            if (applyDrag(dragX, dragY)) changed(when);
+        }
+
+        if (wheelRotation != 0) {
+            int rotation = wheelRotation;
+            wheelRotation = 0;
+            if (applyWheel(wheelX, wheelY, rotation)) changed(when);
+        }
+
+        if (zoomRotation != 0) {
+            int rotation = zoomRotation;
+            zoomRotation = 0;
+            commitDrag();
+            if (viewport.zoom(Math.pow(ZOOM_STEP, -rotation), zoomX, zoomY)) {
+                viewChanged();
+                changed(when);
+            }
+        }
+    }
+
+    /**
+     * Zapisuje w pomiarach zmianę figury wynikającą z odłożonych zdarzeń.
+     * @param when czas najstarszego z odłożonych zdarzeń
+     */
+
+    private void changed(long when) {
+        metrics.inputApplied();
+        metrics.inputReceived(when);
+    }
+
+    /**
+     * Przesuwa widok, przesuwa zaznaczoną figurę albo rozciąga tworzoną figurę do położenia kursora.
+     * @param screenX współrzędna x kursora na ekranie
+     * @param screenY współrzędna y kursora na ekranie
+     * @return true jeżeli widok lub figura zostały zmienione
+     */
+
+    private boolean applyDrag(int screenX, int screenY) {
+        if (panning) {
+            viewport.pan(screenX - panX, screenY - panY);
+            panX = screenX;
+            panY = screenY;
+            viewChanged();
+            return true;
+        }
+
+        int x = viewport.toWorldX(screenX);
+        int y = viewport.toWorldY(screenY);
+
+        // Rozciąga prostokąt zaznaczania od miejsca rozpoczęcia przeciągania do kursora.
+        if (selecting) {
+            repaintWorld(band);
+            band.setBounds(Math.min(bandX, x), Math.min(bandY, y), Math.abs(x - bandX), Math.abs(y - bandY));
+            repaintWorld(band);
+            return true;
+        }
+
+        // Przesuwa wszystkie zaznaczone figury jednym przejściem. Przesunięcie od początku przeciągania
+        // jest dociągane razem z prostokątem zaznaczenia w jego położeniu sprzed przeciągania.
+        if (currentFigure == null && movingSelection) {
+            int dx = x - moveX;
+            int dy = y - moveY;
+
+            snap(selectionBound.x - movedX + dx, selectionBound.y - movedY + dy, selectionBound.width,
+                    selectionBound.height, selection::contains, snapShift);
+            dx += snapShift.x;
+            dy += snapShift.y;
+            if (dx == movedX && dy == movedY) return false;
+
+            figures.move(selection.slots(), dx - movedX, dy - movedY, changedBound);
+            movedX = dx;
+            movedY = dy;
+            repaintSelection();
+            return true;
+        }
+
+        // Jeżeli kursor znajduje się w obrębie zaznaczonej figury przesuwa ją.
+        // Do końca przeciągania zmienia się tylko położenie obrazu figury.
+        if (currentFigure == null && markedFigure != null && markedFigure.contains(x, y)) {
+            beginEdit(markedFigure);
+            rememberBound(markedFigure);
+            markedFigure.drag(x, y);
+
+            int slot = markedFigure.getSlot();
+            snap(markedFigure.getX(), markedFigure.getY(), figures.getWidth(slot), figures.getHeight(slot),
+                    other -> other == slot, snapShift);
+            if (snapShift.x != 0 || snapShift.y != 0) markedFigure.drag(x + snapShift.x, y + snapShift.y);
+
+            layers.drag(markedFigure.getX(), markedFigure.getY());
+            repaintChanged(markedFigure);
+            return true;
+        }
+
+        // Jeżeli figura jest tworzona, skaluje ją wraz z kursorem dociągniętym do linii innych figur.
+        if (currentFigure != null && createdFigure != null) {
+            rememberBound(createdFigure);
+
+            int slot = createdFigure.getSlot();
+            snap(x, y, 0, 0, other -> other == slot, snapShift);
+            createdFigure.resize(x + snapShift.x, y + snapShift.y, isShiftPressed);
+            repaintChanged(createdFigure);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Skaluje zaznaczoną figurę, jeżeli kursor znajduje się w jej obrębie, albo wszystkie zaznaczone
+     * figury względem kursora, jeżeli kursor znajduje się nad jedną z kilku zaznaczonych figur.
+     * @param x współrzędna x kursora w dokumencie
+     * @param y współrzędna y kursora w dokumencie
+     * @param rotation suma obrotów kółka
+     * @return true jeżeli figura została zmieniona
+     */
+
+    private boolean applyWheel(int x, int y, int rotation) {
+        if (isOverSelection(x, y)) {
+            commitDrag();
+            history.begin();
+            figures.scale(selection.slots(), Math.max(rotation, MIN_WHEEL_ROTATION), x, y, changedBound);
+            history.end();
+            repaintSelection();
+            return true;
+        }
+
+        if (markedFigure == null || !markedFigure.contains(x, y)) return false;
+        commitDrag();
+
+        // Zmniejszenie o 100% lub więcej dałoby figurę bez rozmiaru, której nie da się już kliknąć.
+        beginEdit(markedFigure);
+        rememberBound(markedFigure);
+        history.begin();
+        markedFigure.scale(Math.max(rotation, MIN_WHEEL_ROTATION));
+        history.end();
+        repaintChanged(markedFigure);
+        return true;
+    }
+
+    /**
+     * Dodaje do komponentu obsługę myszy.
+     */
+
+    private void attachMouseHandler() {
+        var mouseHandler = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (recorder != null) recorder.record(e);
+
+                // Odłożone zdarzenia dotyczą figury sprzed kliknięcia, więc są stosowane najpierw.
+                applyInput();
+                commitDrag();
+
+                int x = viewport.toWorldX(e.getX());
+                int y = viewport.toWorldY(e.getY());
+
+                if (e.getButton() == MouseEvent.BUTTON2) {
+                    // Środkowy przycisk zaczyna przesuwanie widoku.
+                    panning = true;
+                    panX = e.getX();
+                    panY = e.getY();
+                } else if (e.getButton() == MouseEvent.BUTTON1) {
+                    // Wszystkie zmiany figur do zwolnienia przycisku tworzą jeden wpis historii.
+                    beginGesture();
+
+                    // Szuka w indeksie najwyżej narysowanej figury, która została kliknięta,
+                    // przekazuje ją do zmiennej markedFigure i przekazuje do tej figury
+                    // położenie kursora względem niej. Jeżeli nie znajdzie figury, markedFigure będzie null.
+                    long start = System.nanoTime();
+                    int slot = index.figureAt(x, y);
+                    metrics.hitTested(start);
+
+                    if (slot >= 0 && e.isShiftDown()) {
+                        // Shift dodaje klikniętą figurę do zaznaczenia albo ją z niego usuwa.
+                        markedFigure = selection.toggle(slot) ? new Figure(figures, slot) : null;
+                    } else if (slot >= 0) {
+                        // Kliknięcie figury spoza zaznaczenia zaznacza tylko ją, a kliknięcie
+                        // jednej z kilku zaznaczonych figur zaczyna przesuwanie ich wszystkich.
+                        if (!selection.contains(slot)) selection.clear();
+                        selection.add(slot);
+                        markedFigure = new Figure(figures, slot);
+
+                        movingSelection = selection.size() > 1;
+                        moveX = x;
+                        moveY = y;
+                        movedX = 0;
+                        movedY = 0;
+                    } else {
+                        // Kliknięcie pustego miejsca zaczyna zaznaczanie prostokątem, które bez shift
+                        // zastępuje poprzednie zaznaczenie.
+                        markedFigure = null;
+                        if (!e.isShiftDown()) selection.clear();
+
+                        selecting = currentFigure == null;
+                        bandX = x;
+                        bandY = y;
+                        band.setBounds(x, y, 0, 0);
+                    }
+
+                    if (markedFigure != null) markedFigure.setOffset(x, y);
+                    selectionChanged();
+                } else if(e.getButton() == MouseEvent.BUTTON3) {
+                    // Prawym przyciskiem też można przeciągnąć zaznaczoną figurę, więc zmiana koloru
+                    // i przeciągnięcie do zwolnienia przycisku tworzą jeden wpis historii.
+                    beginGesture();
+
+                    // Kolor klikniętej figury należącej do zaznaczenia kilku figur zmienia je wszystkie.
+                    if (isOverSelection(x, y)) {
+                        Color color = colorChooser.get();
+                        if (recorder != null) recorder.recordColor(color);
+
+                        if (color != null) {
+                            metrics.inputReceived(e.getWhen());
+                            history.begin();
+                            figures.setColor(selection.slots(), color.getRGB(), changedBound);
+                            history.end();
+                            repaintSelection();
+                        }
+
+                        return;
+                    }
+
+                    // Szuka figury, która została kliknięta, a następnie wywołuje okno wyboru koloru,
+                    // z którego pobiera wybrany kolor i przypisuje go danej figurze.
+                    if(markedFigure != null && markedFigure.contains(x, y)) {
+                        Color color = colorChooser.get();
+                        if (recorder != null) recorder.recordColor(color);
+
+                        // Zamknięcie okna bez wyboru koloru pozostawia figurę bez zmian.
+                        if (color != null) {
+                            metrics.inputReceived(e.getWhen());
+                            history.begin();
+                            markedFigure.setColor(color);
+                            history.end();
+
+                            rememberBound(markedFigure);
+                            repaintChanged(markedFigure);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (recorder != null) recorder.record(e);
+
+                // Ostatnie położenie kursora musi trafić do figury przed zakończeniem jej tworzenia
+                // lub przeciągania, a przeciągnięta figura do magazynu.
+                applyInput();
+                commitDrag();
+                clearGuides();
+
+                // Zwolnienie ostatniego przycisku kończy wpis historii z całym gestem.
+                int buttons = MouseEvent.BUTTON1_DOWN_MASK | MouseEvent.BUTTON2_DOWN_MASK | MouseEvent.BUTTON3_DOWN_MASK;
+                if ((e.getModifiersEx() & buttons) == 0) endGesture();
+
+                if (panning) {
+                    panning = false;
+                    return;
+                }
+
+                // Zaznacza figury leżące w całości w prostokącie zaznaczania.
+                if (selecting) {
+                    selecting = false;
+                    selection.addArea(index, band);
+                    if (selection.size() == 1) markedFigure = new Figure(figures, selection.slots().get(0));
+                    repaintWorld(band);
+                    selectionChanged();
+                }
+
+                movingSelection = false;
+
+                createdFigure = null;
+                currentFigure = null;
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (recorder != null) recorder.record(e);
+
+                // Obroty kółka są sumowane i raz na klatkę skalują figurę albo, z wciśniętym ctrl, przybliżają widok.
+                if (e.isControlDown()) {
+                    zoomRotation += e.getWheelRotation();
+                    zoomX = e.getX();
+                    zoomY = e.getY();
+                } else {
+                    wheelRotation += e.getWheelRotation();
+                    wheelX = viewport.toWorldX(e.getX());
+                    wheelY = viewport.toWorldY(e.getY());
+                }
+
+                scheduleInput(e);
+            }
+        };
+
+        addMouseListener(mouseHandler);
+        addMouseWheelListener(mouseHandler);
+        addMouseMotionListener(new MouseMotionAdapter() {
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (recorder != null) recorder.record(e);
+
+                // Jeżeli została wybrana figura, tworzy ją od razu w miejscu rozpoczęcia przeciągania,
+                // a kolejne zdarzenia tylko ją rozciągają.
+                if (!panning && currentFigure != null && createdFigure == null) {
+                    metrics.inputReceived(e.getWhen());
+                    beginGesture();
+
+                    Figure f = new Figure(figures, currentFigure, viewport.toWorldX(e.getX()), viewport.toWorldY(e.getY()));
+                    createdFigure = f;
+                    beginEdit(f);
+                    rememberBound(f);
+                    repaintChanged(f);
+                    return;
+                }
+
+                // Przesunięcie widoku, przesunięcie lub rozciągnięcie figury wykona się dla ostatniego położenia kursora w klatce.
+                dragPending = true;
+                dragX = e.getX();
+                dragY = e.getY();
+
+                scheduleInput(e);
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                // Zmienia kursor na krzyżyk jeżeli została wybrana figura do utworzenia.
+                if (currentFigure != null) setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
+                else setCursor(Cursor.getDefaultCursor());
+            }
+        });
+    }
+}
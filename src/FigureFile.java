@@ -0,0 +1,383 @@
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Obiekt FigureFile zapisuje i wczytuje figury w zwartym formacie binarnym.
+ * Plik zaczyna się nagłówkiem zawierającym sygnaturę, wersję formatu, liczbę figur
+ * oraz rozmiar rekordu, po którym następują rekordy o stałej długości. Każdy rekord
+ * zawiera numer figury z Figures, współrzędne x i y, szerokość, wysokość oraz kolor ARGB.
+ * Pliki zapisane starszą wersją programu przez ObjectOutputStream są nadal wczytywane.
+ */
+
+public class FigureFile {
+    public static final int MAGIC = 0x46494753;
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = FigureStore.RECORD_INTS * Integer.BYTES;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BATCH_SIZE = 1 << 14;
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    private FigureFile() {}
+
+    /**
+     * Zapisuje figury do pliku w formacie binarnym.
+     * @param path ścieżka pliku
+     * @param figures magazyn zapisywanych figur
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    public static void save(Path path, FigureStore figures) throws IOException {
+        save(path, figures.snapshot(), progress -> true);
+    }
+
+    /**
+     * Zapisuje kopię figur do pliku w formacie binarnym. Dane trafiają najpierw do pliku
+     * tymczasowego, który zastępuje docelowy plik dopiero po zapisaniu wszystkich rekordów,
+     * więc przerwany zapis nie niszczy poprzedniej zawartości pliku. Kopię można zapisywać
+     * w dowolnym wątku, również podczas dalszej edycji magazynu.
+     * @param path ścieżka pliku
+     * @param figures kopia figur utworzona przez FigureStore.snapshot
+     * @param progress obiekt informowany o postępie zapisu, który może go przerwać
+     * @return true jeżeli plik został zapisany, false jeżeli zapis został przerwany
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    public static boolean save(Path path, FigureSnapshot figures, Progress progress) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int count = figures.size();
+        boolean finished = false;
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            IntBuffer ints = buffer.asIntBuffer();
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(RECORD_SIZE);
+            ints.position(HEADER_SIZE / Integer.BYTES);
+
+            // Kopiuje rekordy do bufora całymi porcjami i opróżnia go do kanału, gdy się zapełni.
+            int[] records = new int[BUFFER_SIZE / Integer.BYTES];
+            int written = 0;
+
+            while (written < count) {
+                int length = Math.min(ints.remaining() / FigureStore.RECORD_INTS, count - written);
+
+                figures.copyRecords(written, length, records);
+                ints.put(records, 0, length * FigureStore.RECORD_INTS);
+                written += length;
+
+                buffer.limit(ints.position() * Integer.BYTES).position(0);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                buffer.clear();
+                ints.clear();
+
+                if (!progress.update((double) written / count)) return false;
+            }
+
+            // Zapisuje sam nagłówek, jeżeli nie było żadnych rekordów.
+            if (count == 0) flush(channel, buffer);
+
+            channel.force(false);
+            finished = true;
+        } finally {
+            if (!finished) Files.deleteIfExists(temporary);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Wczytuje wszystkie figury z pliku w formacie binarnym lub w starym formacie
+     * i dodaje je na wierzch magazynu.
+     * @param path ścieżka pliku
+     * @param figures magazyn, do którego zostaną dodane figury
+     * @throws IOException jeżeli odczyt się nie powiedzie albo plik jest uszkodzony
+     */
+
+    public static void load(Path path, FigureStore figures) throws IOException {
+        try (Reader reader = open(path)) {
+            int[] records = new int[BATCH_SIZE * FigureStore.RECORD_INTS];
+            int count;
+
+            while ((count = reader.read(records, BATCH_SIZE)) > 0) figures.addRecords(records, count);
+        }
+    }
+
+    /**
+     * Otwiera plik z figurami do odczytu, rozpoznając jego format.
+     * @param path ścieżka pliku
+     * @return obiekt odczytujący figury z pliku
+     * @throws IOException jeżeli nie uda się otworzyć pliku albo ma nieznany format
+     */
+
+    public static Reader open(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            int magic = in.readInt();
+
+            if (magic == MAGIC) return new BinaryReader(path);
+            if (magic >>> 16 == SERIALIZATION_MAGIC) return new LegacyReader(path);
+        } catch (EOFException exception) {
+            throw new IOException("Plik jest zbyt krótki: " + path, exception);
+        }
+
+        throw new IOException("Nieznany format pliku: " + path);
+    }
+
+    /**
+     * Zapisuje zawartość bufora do kanału i przygotowuje bufor do dalszego zapisu.
+     * @param channel kanał pliku
+     * @param buffer bufor z danymi
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Obiekt informowany o postępie zapisu.
+     */
+
+    public interface Progress {
+
+        /**
+         * Przekazuje aktualny postęp zapisu.
+         * @param progress część zapisanych danych, od 0 do 1
+         * @return true jeżeli zapis ma być kontynuowany, false żeby go przerwać
+         */
+
+        boolean update(double progress);
+    }
+
+    /**
+     * Obiekt odczytujący figury z pliku partiami.
+     */
+
+    public interface Reader extends Closeable {
+
+        /**
+         * Zwraca liczbę figur w pliku.
+         * @return liczba figur lub -1, jeżeli nie jest znana przed odczytem
+         */
+
+        int size();
+
+        /**
+         * Odczytuje kolejne figury z pliku i zapisuje je w tablicy rekordów od jej początku,
+         * po FigureStore.RECORD_INTS liczb na figurę.
+         * @param records tablica, do której zostaną zapisane rekordy
+         * @param max maksymalna liczba odczytanych figur
+         * @return liczba odczytanych figur, 0 oznacza koniec pliku
+         * @throws IOException jeżeli odczyt się nie powiedzie
+         */
+
+        int read(int[] records, int max) throws IOException;
+
+        /**
+         * Zwraca postęp odczytu.
+         * @return część pliku, która została już odczytana, od 0 do 1
+         */
+
+        double progress();
+    }
+
+    /**
+     * Odczytuje figury z pliku binarnego zmapowanego do pamięci. Plik jest mapowany oknami
+     * po około WINDOW_SIZE bajtów, więc można odczytywać pliki większe niż 2 GB, których
+     * nie da się zmapować w całości do jednego bufora.
+     */
+
+    private static class BinaryReader implements Reader {
+        private final FileChannel channel;
+        private final int size;
+        private final int recordSize;
+        private final int windowRecords;
+
+        private MappedByteBuffer buffer;
+        private int windowStart;
+        private int position;
+
+        private BinaryReader(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+
+            try {
+                if (channel.size() < HEADER_SIZE) throw new IOException("Uszkodzony nagłówek pliku: " + path);
+
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                int version = header.getInt(4);
+                size = header.getInt(8);
+                recordSize = header.getInt(12);
+
+                // Nowsze wersje mogą dopisywać pola na końcu rekordu, dlatego wystarczy, że rekord nie jest krótszy.
+                if (version < 1 || recordSize < RECORD_SIZE)
+                    throw new IOException("Nieobsługiwana wersja pliku: " + version);
+                if (size < 0 || channel.size() < HEADER_SIZE + (long) size * recordSize)
+                    throw new IOException("Plik jest niekompletny: " + path);
+            } catch (IOException exception) {
+                channel.close();
+                throw exception;
+            }
+
+            windowRecords = (int) Math.max(1, WINDOW_SIZE / recordSize);
+            windowStart = 0;
+            buffer = null;
+            position = 0;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int read(int[] records, int max) throws IOException {
+            int count = Math.min(max, size - position);
+            int types = Figures.values().length;
+
+            for (int i = 0, r = 0; i < count; i++, position++) {
+                // Mapuje kolejne okno pliku, gdy rekord leży poza obecnym.
+                if (buffer == null || position - windowStart >= windowRecords) {
+                    windowStart = position;
+                    long length = (long) Math.min(windowRecords, size - position) * recordSize;
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + (long) position * recordSize, length);
+                }
+
+                int offset = (position - windowStart) * recordSize;
+                int ordinal = buffer.getInt(offset);
+
+                if (ordinal < 0 || ordinal >= types)
+                    throw new IOException("Nieznana figura w rekordzie " + position);
+
+                for (int field = 0; field < FigureStore.RECORD_INTS; field++) {
+                    records[r++] = buffer.getInt(offset + field * Integer.BYTES);
+                }
+            }
+
+            return count;
+        }
+
+        @Override
+        public double progress() {
+            return size == 0 ? 1 : (double) position / size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Odczytuje figury z pliku zapisanego przez ObjectOutputStream w starszej wersji programu.
+     */
+
+    private static class LegacyReader implements Reader {
+        private final FileInputStream file;
+        private final ObjectInputStream in;
+        private final long length;
+
+        private boolean finished;
+
+        private LegacyReader(Path path) throws IOException {
+            file = new FileInputStream(path.toFile());
+            length = file.getChannel().size();
+
+            // Klasa Figure zapisana w starych plikach jest odczytywana jako LegacyFigure,
+            // która ma takie same pola, więc obecna klasa Figure może się dowolnie zmieniać.
+            in = new ObjectInputStream(new BufferedInputStream(file)) {
+                @Override
+                protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+                    ObjectStreamClass descriptor = super.readClassDescriptor();
+
+                    if (descriptor.getName().equals("Figure")) return ObjectStreamClass.lookup(LegacyFigure.class);
+                    return descriptor;
+                }
+            };
+
+            finished = false;
+        }
+
+        @Override
+        public int size() {
+            return -1;
+        }
+
+        @Override
+        public int read(int[] records, int max) throws IOException {
+            int count = 0;
+
+            while (!finished && count < max) {
+                try {
+                    var legacy = (LegacyFigure) in.readObject();
+                    Rectangle2D bound = legacy.bound;
+                    int r = count * FigureStore.RECORD_INTS;
+
+                    records[r] = legacy.name.ordinal();
+                    records[r + 1] = (int) bound.getX();
+                    records[r + 2] = (int) bound.getY();
+                    records[r + 3] = (int) bound.getWidth();
+                    records[r + 4] = (int) bound.getHeight();
+                    records[r + 5] = legacy.color == null ? Color.BLACK.getRGB() : legacy.color.getRGB();
+                    count++;
+                } catch (EOFException exception) {
+                    finished = true;
+                } catch (ClassNotFoundException | ClassCastException exception) {
+                    throw new IOException("Uszkodzony plik w starym formacie", exception);
+                }
+            }
+
+            return count;
+        }
+
+        @Override
+        public double progress() {
+            try {
+                return finished || length == 0 ? 1 : (double) file.getChannel().position() / length;
+            } catch (IOException exception) {
+                return 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Układ pól klasy Figure z wersji programu, która zapisywała figury przez ObjectOutputStream.
+     * Nazwy i typy pól muszą odpowiadać dokładnie tamtej klasie.
+     */
+
+    @SuppressWarnings("unused")
+    private static class LegacyFigure implements Serializable {
+        private static final long serialVersionUID = 7561496809182670149L;
+
+        private Rectangle2D bound;
+        private Figures name;
+        private Shape shape;
+        private Color color;
+
+        private int offsetX;
+        private int offsetY;
+
+        private int x;
+        private int y;
+    }
+}
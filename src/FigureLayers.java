@@ -0,0 +1,222 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Obiekt FigureLayers przechowuje obrazy z wyrenderowanymi figurami, które nie są aktualnie
+ * edytowane. Figury leżące pod edytowaną figurą są zapisane w dolnej warstwie, a figury leżące
+ * nad nią w górnej, dzięki czemu podczas przesuwania, tworzenia lub skalowania figury każda klatka
+ * sprowadza się do skopiowania dwóch obrazów i narysowania jednej figury. Warstwy są unieważniane,
+ * gdy zmieni się dowolna inna figura, zostanie dodana nowa albo usunięte wszystkie. Warstwy są
+ * rysowane w widoku komponentu, więc po przesunięciu lub przybliżeniu widoku trzeba je unieważnić.
+ * Przeciągana figura jest rysowana z obrazu zapamiętanego w SpriteCache, więc każda klatka
+ * przeciągania sprowadza się do skopiowania trzech obrazów.
+ */
+
+public class FigureLayers implements FigureStore.Listener {
+    private final FigureStore store;
+    private final FigurePainter painter;
+    private final TiledRenderer renderer;
+    private final Viewport viewport;
+    private final Rectangle bounds;
+    private final SpriteCache sprites;
+
+    private BufferedImage below;
+    private BufferedImage above;
+
+    private GraphicsConfiguration configuration;
+    private int activeSlot;
+    private int layerFigures;
+    private boolean valid;
+
+    private boolean dragging;
+    private BufferedImage sprite;
+    private int dragX;
+    private int dragY;
+
+    /**
+     * Tworzy puste warstwy dla figur z magazynu i zaczyna obserwować jego zmiany.
+     * Duże warstwy są renderowane równolegle przez podany obiekt TiledRenderer.
+     * @param store magazyn figur
+     * @param renderer obiekt rysujący duże sceny kafelkami
+     * @param viewport widok, w którym rysowane są figury
+     */
+
+    public FigureLayers(FigureStore store, TiledRenderer renderer, Viewport viewport) {
+        this.store = store;
+        this.renderer = renderer;
+        this.viewport = viewport;
+        painter = new FigurePainter();
+        bounds = new Rectangle();
+        sprites = new SpriteCache();
+
+        activeSlot = -1;
+        layerFigures = 0;
+        valid = false;
+
+        store.addListener(this);
+    }
+
+    /**
+     * Przygotowuje warstwy dla edytowanej figury. Jeżeli warstwy są aktualne dla tej figury
+     * i rozmiaru komponentu, nic nie robi, w przeciwnym razie renderuje je od nowa.
+     * @param slot slot edytowanej figury
+     * @param configuration konfiguracja ekranu komponentu lub null
+     * @param width szerokość komponentu
+     * @param height wysokość komponentu
+     */
+
+    public void prepare(int slot, GraphicsConfiguration configuration, int width, int height) {
+        if (isValid(width, height) && slot == activeSlot) return;
+        if (width <= 0 || height <= 0) return;
+
+        this.configuration = configuration;
+
+        layerFigures = 0;
+        below = render(configuration, width, height, 0, slot);
+        above = slot + 1 < store.size() ? render(configuration, width, height, slot + 1, store.size()) : null;
+
+        activeSlot = slot;
+        valid = true;
+    }
+
+    /**
+     * Rysuje dolną warstwę, edytowaną figurę i górną warstwę, o ile warstwy są aktualne.
+     * Rysowany jest tylko obszar ograniczony przez clip obiektu Graphics.
+     * @param g obiekt Graphics
+     * @param width szerokość komponentu
+     * @param height wysokość komponentu
+     * @return liczba figur narysowanych w warstwach razem z edytowaną figurą
+     *         albo -1, jeżeli warstwy są nieaktualne i nic nie zostało narysowane
+     */
+
+    public int paint(Graphics g, int width, int height) {
+        if (!isValid(width, height)) return -1;
+
+        g.drawImage(below, 0, 0, null);
+
+        if (dragging && sprite != null) {
+            g.drawImage(sprite, (int) Math.floor(viewport.toScreenX(dragX)), (int) Math.floor(viewport.toScreenY(dragY)), null);
+        } else {
+            // Edytowana figura jest rysowana w widoku, a przekształcenie obiektu Graphics jest potem przywracane.
+            // Figura zbyt duża na obraz jest podczas przeciągania przesuwana o przeciągnięcie.
+            Graphics2D g2 = (Graphics2D) g;
+            AffineTransform transform = g2.getTransform();
+            viewport.apply(g2);
+            if (dragging) g2.translate(dragX - store.getX(activeSlot), dragY - store.getY(activeSlot));
+            painter.paint(g2, store, activeSlot);
+            g2.setTransform(transform);
+        }
+
+        if (above != null) g.drawImage(above, 0, 0, null);
+
+        return layerFigures + 1;
+    }
+
+    /**
+     * Rysuje edytowaną figurę w położeniu, do którego jest przeciągana, zamiast w położeniu z magazynu.
+     * Na początku przeciągania pobiera obraz figury, który do jego końca jest tylko kopiowany.
+     * Figura nie może zmienić wyglądu ani skali widoku przed wywołaniem endDrag.
+     * @param x współrzędna x lewego górnego rogu figury
+     * @param y współrzędna y lewego górnego rogu figury
+     */
+
+    public void drag(int x, int y) {
+        if (!dragging && valid) sprite = sprites.get(store, activeSlot, viewport.getScale(), configuration);
+
+        dragging = true;
+        dragX = x;
+        dragY = y;
+    }
+
+    /**
+     * Kończy przeciąganie, więc edytowana figura jest znowu rysowana w położeniu z magazynu.
+     */
+
+    public void endDrag() {
+        dragging = false;
+        sprite = null;
+    }
+
+    /**
+     * Unieważnia warstwy.
+     */
+
+    public void invalidate() {
+        valid = false;
+    }
+
+    @Override
+    public void figureAdded(int slot) {
+        invalidate();
+    }
+
+    @Override
+    public void figureChanged(int slot) {
+        // Zmiana edytowanej figury nie wpływa na warstwy, bo jest ona rysowana osobno.
+        if (slot != activeSlot) invalidate();
+    }
+
+    @Override
+    public void figuresRemoved(int from, int to) {
+        invalidate();
+
+        if (activeSlot >= from) {
+            activeSlot = -1;
+            endDrag();
+        }
+    }
+
+    @Override
+    public void cleared() {
+        invalidate();
+        activeSlot = -1;
+        endDrag();
+        sprites.clear();
+    }
+
+    /**
+     * Sprawdza, czy warstwy są aktualne i mają rozmiar komponentu.
+     * @param width szerokość komponentu
+     * @param height wysokość komponentu
+     * @return true jeżeli warstwy można narysować
+     */
+
+    private boolean isValid(int width, int height) {
+        return valid && activeSlot < store.size() && below.getWidth() == width && below.getHeight() == height;
+    }
+
+    /**
+     * Renderuje figury o slotach od from do to do nowego przezroczystego obrazu
+     * i dolicza narysowane figury do liczby figur w warstwach.
+     * @param configuration konfiguracja ekranu lub null
+     * @param width szerokość obrazu
+     * @param height wysokość obrazu
+     * @param from pierwszy rysowany slot
+     * @param to slot za ostatnim rysowanym
+     * @return obraz z figurami
+     */
+
+    private BufferedImage render(GraphicsConfiguration configuration, int width, int height, int from, int to) {
+        BufferedImage image = configuration != null
+                ? configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g = image.createGraphics();
+        bounds.setBounds(0, 0, width, height);
+
+        if (to - from >= TiledRenderer.THRESHOLD) {
+            layerFigures += renderer.render(g, bounds, viewport, from, to);
+        } else {
+            viewport.apply(g);
+            painter.setViewport(viewport, bounds);
+            painter.paintRange(g, store, from, to);
+            painter.clearViewport();
+            layerFigures += to - from;
+        }
+
+        g.dispose();
+
+        return image;
+    }
+}
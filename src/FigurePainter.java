@@ -0,0 +1,280 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Obiekt FigurePainter rysuje figury z magazynu FigureStore bezpośrednio z jego tablic,
+ * bez tworzenia obiektów kształtów. Kolor jest zmieniany tylko wtedy, gdy kolejna figura
+ * ma inny kolor niż poprzednia, a obiekty Color są pamiętane w małej tablicy, więc rysowanie
+ * figur w powtarzających się kolorach niczego nie alokuje. Obiekt przechowuje tablice
+ * pomocnicze, więc każdy wątek rysujący powinien mieć własny. Przy oddalonym widoku figury mniejsze
+ * niż piksel ekranu nie są rysowane osobno, tylko wpisywane jako punkty do tablicy pikseli,
+ * która jest rysowana jednym obrazem pod większymi figurami.
+ */
+
+public class FigurePainter {
+    private static final int COLOR_CACHE_SIZE = 256;
+
+    private final int[] polygonX;
+    private final int[] polygonY;
+    private final Color[] colorCache;
+
+    private Color color;
+
+    private double scale;
+    private double offsetX;
+    private double offsetY;
+    private final Rectangle dotArea;
+    private BufferedImage dots;
+    private int[] dotPixels;
+    private boolean hasDots;
+
+    /**
+     * Tworzy nowy obiekt rysujący figury.
+     */
+
+    public FigurePainter() {
+        polygonX = new int[4];
+        polygonY = new int[4];
+        colorCache = new Color[COLOR_CACHE_SIZE];
+        color = null;
+
+        scale = 1;
+        dotArea = new Rectangle();
+        dots = null;
+        dotPixels = null;
+    }
+
+    /**
+     * Ustawia widok, w którym będą rysowane kolejne figury. Obiekt Graphics musi już mieć
+     * przekształcenie widoku. Jeżeli widok jest oddalony, figury mniejsze niż piksel są rysowane
+     * jako punkty w kolorze figury, która jest najwyżej w danym pikselu, a punkty spoza podanego
+     * obszaru są pomijane. Ustawienie obowiązuje do czasu wywołania clearViewport.
+     * @param viewport widok
+     * @param area rysowany obszar we współrzędnych ekranu
+     */
+
+    public void setViewport(Viewport viewport, Rectangle area) {
+        scale = viewport.getScale();
+        if (scale >= 1 || area.isEmpty()) {
+            scale = 1;
+            return;
+        }
+
+        offsetX = viewport.toScreenX(0);
+        offsetY = viewport.toScreenY(0);
+        dotArea.setBounds(area);
+
+        // Obraz z punktami jest tworzony ponownie tylko wtedy, gdy rysowany obszar się w nim nie mieści.
+        if (dots == null || dots.getWidth() < area.width || dots.getHeight() < area.height) {
+            int width = Math.max(area.width, dots == null ? 0 : dots.getWidth());
+            int height = Math.max(area.height, dots == null ? 0 : dots.getHeight());
+
+            dots = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            dotPixels = ((DataBufferInt) dots.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    /**
+     * Wyłącza rysowanie małych figur jako punktów.
+     */
+
+    public void clearViewport() {
+        scale = 1;
+    }
+
+    /**
+     * Rysuje wszystkie figury z magazynu w kolejności slotów.
+     * @param g obiekt Graphics
+     * @param store magazyn figur
+     */
+
+    public void paintAll(Graphics g, FigureStore store) {
+        paintRange(g, store, 0, store.size());
+    }
+
+    /**
+     * Rysuje figury o slotach od from (włącznie) do to (wyłącznie) w kolejności slotów.
+     * @param g obiekt Graphics
+     * @param store magazyn figur
+     * @param from pierwszy rysowany slot
+     * @param to slot za ostatnim rysowanym
+     */
+
+    public void paintRange(Graphics g, FigureStore store, int from, int to) {
+        color = null;
+
+        if (scale < 1) {
+            clearDots();
+            for (int slot = from; slot < to; slot++) addDot(store, slot);
+            paintDots(g);
+        }
+
+        for (int slot = from; slot < to; slot++) {
+            if (scale >= 1 || !isDot(store, slot)) fill(g, store, slot);
+        }
+    }
+
+    /**
+     * Rysuje figury o podanych slotach w kolejności listy.
+     * @param g obiekt Graphics
+     * @param store magazyn figur
+     * @param slots sloty rysowanych figur
+     */
+
+    public void paint(Graphics g, FigureStore store, IntList slots) {
+        paint(g, store, slots, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Rysuje figury o podanych slotach w kolejności listy, pomijając sloty spoza zakresu od from do to.
+     * @param g obiekt Graphics
+     * @param store magazyn figur
+     * @param slots sloty rysowanych figur
+     * @param from pierwszy rysowany slot
+     * @param to slot za ostatnim rysowanym
+     * @return liczba narysowanych figur
+     */
+
+    public int paint(Graphics g, FigureStore store, IntList slots, int from, int to) {
+        color = null;
+        int count = 0;
+
+        if (scale < 1) {
+            clearDots();
+
+            for (int i = 0; i < slots.size(); i++) {
+                int slot = slots.get(i);
+                if (slot >= from && slot < to) addDot(store, slot);
+            }
+
+            paintDots(g);
+        }
+
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+
+            if (slot >= from && slot < to) {
+                if (scale >= 1 || !isDot(store, slot)) fill(g, store, slot);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Rysuje jedną figurę.
+     * @param g obiekt Graphics
+     * @param store magazyn figur
+     * @param slot slot figury
+     */
+
+    public void paint(Graphics g, FigureStore store, int slot) {
+        color = null;
+        fill(g, store, slot);
+    }
+
+    /**
+     * Wypełnia kształt figury, zmieniając kolor tylko jeżeli różni się od poprzednio użytego.
+     * @param g obiekt Graphics
+     * @param store magazyn figur
+     * @param slot slot figury
+     */
+
+    private void fill(Graphics g, FigureStore store, int slot) {
+        int argb = store.getColor(slot);
+
+        if (color == null || color.getRGB() != argb) {
+            color = color(argb);
+            g.setColor(color);
+        }
+
+        int x = store.getX(slot);
+        int y = store.getY(slot);
+        int width = store.getWidth(slot);
+        int height = store.getHeight(slot);
+
+        store.getName(slot).kernel().fill(g, x, y, width, height, polygonX, polygonY);
+    }
+
+    /**
+     * Sprawdza, czy figura jest w bieżącym widoku mniejsza niż piksel.
+     * @param store magazyn figur
+     * @param slot slot figury
+     * @return true jeżeli figura jest rysowana jako punkt
+     */
+
+    private boolean isDot(FigureStore store, int slot) {
+        return store.getWidth(slot) * scale < 1 && store.getHeight(slot) * scale < 1;
+    }
+
+    /**
+     * Czyści część tablicy pikseli odpowiadającą rysowanemu obszarowi.
+     */
+
+    private void clearDots() {
+        int stride = dots.getWidth();
+        for (int row = 0; row < dotArea.height; row++) {
+            Arrays.fill(dotPixels, row * stride, row * stride + dotArea.width, 0);
+        }
+
+        hasDots = false;
+    }
+
+    /**
+     * Wpisuje figurę mniejszą niż piksel do tablicy pikseli. Figury są wpisywane w kolejności
+     * rysowania, więc w pikselu zostaje kolor figury leżącej najwyżej.
+     * @param store magazyn figur
+     * @param slot slot figury
+     */
+
+    private void addDot(FigureStore store, int slot) {
+        if (!isDot(store, slot)) return;
+
+        int px = (int) Math.floor(store.getX(slot) * scale + offsetX) - dotArea.x;
+        int py = (int) Math.floor(store.getY(slot) * scale + offsetY) - dotArea.y;
+        if (px < 0 || py < 0 || px >= dotArea.width || py >= dotArea.height) return;
+
+        dotPixels[py * dots.getWidth() + px] = store.getColor(slot);
+        hasDots = true;
+    }
+
+    /**
+     * Rysuje tablicę pikseli w rysowanym obszarze ekranu, na czas rysowania odwracając przekształcenie widoku.
+     * @param g obiekt Graphics z przekształceniem widoku
+     */
+
+    private void paintDots(Graphics g) {
+        if (!hasDots) return;
+
+        Graphics2D g2 = (Graphics2D) g;
+        AffineTransform transform = g2.getTransform();
+
+        g2.scale(1 / scale, 1 / scale);
+        g2.translate(-offsetX, -offsetY);
+        g2.drawImage(dots, dotArea.x, dotArea.y, dotArea.x + dotArea.width, dotArea.y + dotArea.height,
+                0, 0, dotArea.width, dotArea.height, null);
+        g2.setTransform(transform);
+    }
+
+    /**
+     * Zwraca obiekt Color dla koloru ARGB, tworząc go tylko wtedy, gdy nie ma go w pamięci podręcznej.
+     * @param argb kolor ARGB
+     * @return obiekt Color
+     */
+
+    private Color color(int argb) {
+        int i = (argb ^ (argb >>> 8) ^ (argb >>> 16)) & (COLOR_CACHE_SIZE - 1);
+        Color cached = colorCache[i];
+
+        if (cached == null || cached.getRGB() != argb) {
+            cached = new Color(argb, true);
+            colorCache[i] = cached;
+        }
+
+        return cached;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Obiekt FigureSnapshot jest niezmienną kopią figur z magazynu FigureStore z chwili jej utworzenia.
+ * Kopia współdzieli z magazynem fragmenty tablic, których magazyn już nie zmienia, bo przed zmianą
+ * figury kopiuje jej fragment. Dzięki temu kopię można odczytywać w dowolnym wątku bez blokad,
+ * podczas gdy wątek obsługi zdarzeń dalej edytuje figury.
+ */
+
+public class FigureSnapshot {
+    private static final Figures[] NAMES = Figures.values();
+
+    private final int size;
+    private final byte[][] types;
+    private final int[][] xs;
+    private final int[][] ys;
+    private final int[][] widths;
+    private final int[][] heights;
+    private final int[][] colors;
+
+    /**
+     * Tworzy kopię z fragmentów tablic magazynu.
+     * @param size liczba figur
+     * @param types fragmenty numerów figur
+     * @param xs fragmenty współrzędnych x
+     * @param ys fragmenty współrzędnych y
+     * @param widths fragmenty szerokości
+     * @param heights fragmenty wysokości
+     * @param colors fragmenty kolorów
+     */
+
+    FigureSnapshot(int size, byte[][] types, int[][] xs, int[][] ys, int[][] widths, int[][] heights, int[][] colors) {
+        this.size = size;
+        this.types = types;
+        this.xs = xs;
+        this.ys = ys;
+        this.widths = widths;
+        this.heights = heights;
+        this.colors = colors;
+    }
+
+    /**
+     * Kopiuje figury do tablicy rekordów w formacie FigureStore.addRecords.
+     * @param from pierwszy kopiowany slot
+     * @param count liczba kopiowanych figur
+     * @param records tablica, do której od początku zostaną zapisane rekordy
+     */
+
+    public void copyRecords(int from, int count, int[] records) {
+        for (int slot = from, r = 0; slot < from + count; slot++, r += FigureStore.RECORD_INTS) {
+            int chunk = slot >>> FigureStore.CHUNK_BITS;
+            int i = slot & FigureStore.CHUNK_MASK;
+
+            records[r] = types[chunk][i];
+            records[r + 1] = xs[chunk][i];
+            records[r + 2] = ys[chunk][i];
+            records[r + 3] = widths[chunk][i];
+            records[r + 4] = heights[chunk][i];
+            records[r + 5] = colors[chunk][i];
+        }
+    }
+
+    /**
+     * Zwraca liczbę figur.
+     * @return liczba figur
+     */
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Zwraca nazwę figury.
+     * @param slot slot figury
+     * @return nazwa figury
+     */
+
+    public Figures getName(int slot) { return NAMES[getType(slot)]; }
+
+    /**
+     * Zwraca numer figury z Figures.
+     * @param slot slot figury
+     * @return numer figury
+     */
+
+    public int getType(int slot) { return types[slot >>> FigureStore.CHUNK_BITS][slot & FigureStore.CHUNK_MASK]; }
+
+    /**
+     * Zwraca współrzędną x lewego górnego rogu prostokąta figury.
+     * @param slot slot figury
+     * @return współrzędna x
+     */
+
+    public int getX(int slot) { return xs[slot >>> FigureStore.CHUNK_BITS][slot & FigureStore.CHUNK_MASK]; }
+
+    /**
+     * Zwraca współrzędną y lewego górnego rogu prostokąta figury.
+     * @param slot slot figury
+     * @return współrzędna y
+     */
+
+    public int getY(int slot) { return ys[slot >>> FigureStore.CHUNK_BITS][slot & FigureStore.CHUNK_MASK]; }
+
+    /**
+     * Zwraca szerokość prostokąta figury.
+     * @param slot slot figury
+     * @return szerokość
+     */
+
+    public int getWidth(int slot) { return widths[slot >>> FigureStore.CHUNK_BITS][slot & FigureStore.CHUNK_MASK]; }
+
+    /**
+     * Zwraca wysokość prostokąta figury.
+     * @param slot slot figury
+     * @return wysokość
+     */
+
+    public int getHeight(int slot) { return heights[slot >>> FigureStore.CHUNK_BITS][slot & FigureStore.CHUNK_MASK]; }
+
+    /**
+     * Zwraca kolor ARGB figury.
+     * @param slot slot figury
+     * @return kolor ARGB
+     */
+
+    public int getColor(int slot) { return colors[slot >>> FigureStore.CHUNK_BITS][slot & FigureStore.CHUNK_MASK]; }
+}
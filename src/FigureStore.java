@@ -0,0 +1,619 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Obiekt FigureStore przechowuje wszystkie figury w równoległych tablicach typów prostych.
+ * Figura jest opisana numerem miejsca (slotu) w tablicach, pod którym zapisany jest numer
+ * figury z Figures, współrzędne lewego górnego rogu jej prostokąta, jego szerokość i wysokość
+ * oraz kolor ARGB. Kolejność slotów jest kolejnością rysowania figur. Zmiany figur są
+ * przekazywane obserwatorom, np. indeksowi przestrzennemu. Tablice są podzielone na fragmenty
+ * po CHUNK_SIZE figur, które niezmienione kopie magazynu (FigureSnapshot) współdzielą z nim,
+ * dopóki fragment nie zostanie zmieniony. Magazyn należy zmieniać tylko w jednym wątku,
+ * a pozostałe wątki mogą czytać opublikowane kopie. Wiele figur naraz można przesunąć, przeskalować
+ * lub przekolorować jednym przejściem po ich slotach, które powyżej PARALLEL_THRESHOLD figur,
+ * zmienianym właściwością figury.parallelThreshold, jest wykonywane równolegle w puli ForkJoinPool.
+ */
+
+public class FigureStore {
+    public static final int RECORD_INTS = 6;
+    public static final int PARALLEL_THRESHOLD = Integer.getInteger("figury.parallelThreshold", 20_000);
+
+    static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final Figures[] NAMES = Figures.values();
+    private static final int MOVE = 0;
+    private static final int SCALE = 1;
+    private static final int RECOLOR = 2;
+
+    private byte[][] types;
+    private int[][] xs;
+    private int[][] ys;
+    private int[][] widths;
+    private int[][] heights;
+    private int[][] colors;
+    private int[] owners;
+
+    private int size;
+    private int version;
+    private int sharedSize;
+    private boolean modified;
+    private FigureSnapshot snapshot;
+    private volatile FigureSnapshot published;
+
+    private final ArrayList<Listener> listeners;
+
+    /**
+     * Tworzy pusty magazyn figur.
+     */
+
+    public FigureStore() {
+        this(16);
+    }
+
+    /**
+     * Tworzy pusty magazyn figur o podanej początkowej pojemności.
+     * @param capacity początkowa pojemność
+     */
+
+    public FigureStore(int capacity) {
+        types = new byte[0][];
+        xs = new int[0][];
+        ys = new int[0][];
+        widths = new int[0][];
+        heights = new int[0][];
+        colors = new int[0][];
+        owners = new int[0];
+
+        size = 0;
+        version = 0;
+        sharedSize = 0;
+        modified = false;
+        listeners = new ArrayList<>();
+
+        ensureCapacity(Math.max(capacity, 1));
+
+        snapshot = snapshot();
+    }
+
+    /**
+     * Dodaje figurę na wierzch i zwraca jej slot.
+     * @param name nazwa figury
+     * @param x współrzędna x lewego górnego rogu prostokąta figury
+     * @param y współrzędna y lewego górnego rogu prostokąta figury
+     * @param width szerokość prostokąta
+     * @param height wysokość prostokąta
+     * @param argb kolor figury
+     * @return slot dodanej figury
+     */
+
+    public int add(Figures name, int x, int y, int width, int height, int argb) {
+        ensureCapacity(size + 1);
+
+        int slot = size++;
+        set(slot, name.ordinal(), x, y, width, height, argb);
+        modified = true;
+
+        for (Listener listener : listeners) listener.figureAdded(slot);
+        return slot;
+    }
+
+    /**
+     * Dodaje na wierzch figury zapisane w tablicy rekordów, każdy po RECORD_INTS liczb:
+     * numer figury, x, y, szerokość, wysokość i kolor ARGB.
+     * @param records tablica rekordów
+     * @param count liczba dodawanych rekordów
+     */
+
+    public void addRecords(int[] records, int count) {
+        ensureCapacity(size + count);
+
+        int first = size;
+        for (int i = 0, r = 0; i < count; i++, r += RECORD_INTS) {
+            set(size++, records[r], records[r + 1], records[r + 2], records[r + 3], records[r + 4], records[r + 5]);
+        }
+
+        if (count > 0) modified = true;
+
+        for (Listener listener : listeners) {
+            for (int slot = first; slot < size; slot++) listener.figureAdded(slot);
+        }
+    }
+
+    /**
+     * Zwraca niezmienną kopię wszystkich figur, którą można odczytywać w innym wątku podczas dalszej
+     * edycji, i publikuje ją dla innych wątków. Kopia współdzieli z magazynem fragmenty tablic, więc jej
+     * utworzenie zależy od liczby fragmentów, a nie figur, a fragment jest kopiowany dopiero przy
+     * pierwszej zmianie figury, która w nim leży. Jeżeli od poprzedniej kopii nic się nie zmieniło,
+     * zwracana jest poprzednia kopia. Wywoływać w wątku, który zmienia magazyn.
+     * @return kopia figur
+     */
+
+    public FigureSnapshot snapshot() {
+        if (!modified && snapshot != null) return snapshot;
+
+        // Fragmenty należące do poprzedniej wersji stają się współdzielone z nową kopią.
+        version++;
+        sharedSize = Math.max(sharedSize, size);
+        modified = false;
+
+        int chunks = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        snapshot = new FigureSnapshot(size, Arrays.copyOf(types, chunks), Arrays.copyOf(xs, chunks),
+                Arrays.copyOf(ys, chunks), Arrays.copyOf(widths, chunks), Arrays.copyOf(heights, chunks),
+                Arrays.copyOf(colors, chunks));
+        published = snapshot;
+
+        return snapshot;
+    }
+
+    /**
+     * Zwraca ostatnią kopię figur utworzoną metodą snapshot. Można wywoływać w dowolnym wątku.
+     * @return ostatnia opublikowana kopia figur
+     */
+
+    public FigureSnapshot published() {
+        return published;
+    }
+
+    /**
+     * Zmienia prostokąt figury i powiadamia obserwatorów.
+     * @param slot slot figury
+     * @param x nowa współrzędna x
+     * @param y nowa współrzędna y
+     * @param width nowa szerokość
+     * @param height nowa wysokość
+     */
+
+    public void setBounds(int slot, int x, int y, int width, int height) {
+        for (Listener listener : listeners) listener.figureChanging(slot);
+
+        int chunk = writableChunk(slot);
+        int i = slot & CHUNK_MASK;
+
+        xs[chunk][i] = x;
+        ys[chunk][i] = y;
+        widths[chunk][i] = width;
+        heights[chunk][i] = height;
+        modified = true;
+
+        for (Listener listener : listeners) listener.figureChanged(slot);
+    }
+
+    /**
+     * Zmienia kolor figury i powiadamia obserwatorów.
+     * @param slot slot figury
+     * @param argb nowy kolor
+     */
+
+    public void setColor(int slot, int argb) {
+        for (Listener listener : listeners) listener.figureChanging(slot);
+
+        colors[writableChunk(slot)][slot & CHUNK_MASK] = argb;
+        modified = true;
+
+        for (Listener listener : listeners) listener.figureChanged(slot);
+    }
+
+    /**
+     * Przesuwa figury o podany wektor i powiadamia obserwatorów.
+     * @param slots sloty przesuwanych figur, każdy co najwyżej raz
+     * @param dx przesunięcie w poziomie
+     * @param dy przesunięcie w pionie
+     * @param changed prostokąt, do którego zostanie zapisana suma prostokątów figur sprzed zmiany i po niej
+     */
+
+    public void move(IntList slots, int dx, int dy, Rectangle changed) {
+        update(slots, MOVE, dx, dy, 0, changed);
+    }
+
+    /**
+     * Skaluje figury względem punktu (pivotX, pivotY) tak jak Figure.scale skaluje jedną figurę,
+     * czyli o percentage dziesiątych, zmieniając też ich odległości od punktu, i powiadamia obserwatorów.
+     * @param slots sloty skalowanych figur, każdy co najwyżej raz
+     * @param percentage liczba dziesiątych, o które figury są powiększane, ujemna zmniejsza figury
+     * @param pivotX współrzędna x punktu, który pozostaje na miejscu
+     * @param pivotY współrzędna y punktu, który pozostaje na miejscu
+     * @param changed prostokąt, do którego zostanie zapisana suma prostokątów figur sprzed zmiany i po niej
+     */
+
+    public void scale(IntList slots, int percentage, int pivotX, int pivotY, Rectangle changed) {
+        update(slots, SCALE, pivotX, pivotY, percentage, changed);
+    }
+
+    /**
+     * Zmienia kolor figur i powiadamia obserwatorów.
+     * @param slots sloty zmienianych figur, każdy co najwyżej raz
+     * @param argb nowy kolor
+     * @param changed prostokąt, do którego zostanie zapisana suma prostokątów figur
+     */
+
+    public void setColor(IntList slots, int argb, Rectangle changed) {
+        update(slots, RECOLOR, argb, 0, 0, changed);
+    }
+
+    /**
+     * Usuwa figury leżące na wierzchu, od podanego slotu wzwyż, i powiadamia obserwatorów.
+     * @param size liczba pozostawianych figur
+     */
+
+    public void truncate(int size) {
+        if (size < 0 || size >= this.size) return;
+
+        int removed = this.size;
+        this.size = size;
+        modified = true;
+
+        for (Listener listener : listeners) listener.figuresRemoved(size, removed);
+    }
+
+    /**
+     * Usuwa wszystkie figury i powiadamia obserwatorów.
+     */
+
+    public void clear() {
+        size = 0;
+        modified = true;
+
+        for (Listener listener : listeners) listener.cleared();
+    }
+
+    /**
+     * Sprawdza, czy kształt figury zawiera punkt (px, py), porównując punkt z prostokątem figury
+     * i przekazując go do jądra kształtu, bez tworzenia obiektów kształtów.
+     * @param slot slot figury
+     * @param px współrzędna x punktu
+     * @param py współrzędna y punktu
+     * @return true jeżeli punkt leży wewnątrz figury
+     */
+
+    public boolean contains(int slot, double px, double py) {
+        double x = getX(slot);
+        double y = getY(slot);
+        double width = getWidth(slot);
+        double height = getHeight(slot);
+
+        if (width <= 0 || height <= 0 || px < x || py < y || px >= x + width || py >= y + height) return false;
+
+        return getName(slot).kernel().contains(x, y, width, height, px, py);
+    }
+
+    /**
+     * Dodaje obserwatora zmian figur.
+     * @param listener obserwator
+     */
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Usuwa obserwatora zmian figur.
+     * @param listener obserwator
+     */
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Zwraca liczbę figur.
+     * @return liczba figur
+     */
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Zwraca nazwę figury.
+     * @param slot slot figury
+     * @return nazwa figury
+     */
+
+    public Figures getName(int slot) { return NAMES[getType(slot)]; }
+
+    /**
+     * Zwraca numer figury z Figures.
+     * @param slot slot figury
+     * @return numer figury
+     */
+
+    public int getType(int slot) { return types[slot >>> CHUNK_BITS][slot & CHUNK_MASK]; }
+
+    /**
+     * Zwraca współrzędną x lewego górnego rogu prostokąta figury.
+     * @param slot slot figury
+     * @return współrzędna x
+     */
+
+    public int getX(int slot) { return xs[slot >>> CHUNK_BITS][slot & CHUNK_MASK]; }
+
+    /**
+     * Zwraca współrzędną y lewego górnego rogu prostokąta figury.
+     * @param slot slot figury
+     * @return współrzędna y
+     */
+
+    public int getY(int slot) { return ys[slot >>> CHUNK_BITS][slot & CHUNK_MASK]; }
+
+    /**
+     * Zwraca szerokość prostokąta figury.
+     * @param slot slot figury
+     * @return szerokość
+     */
+
+    public int getWidth(int slot) { return widths[slot >>> CHUNK_BITS][slot & CHUNK_MASK]; }
+
+    /**
+     * Zwraca wysokość prostokąta figury.
+     * @param slot slot figury
+     * @return wysokość
+     */
+
+    public int getHeight(int slot) { return heights[slot >>> CHUNK_BITS][slot & CHUNK_MASK]; }
+
+    /**
+     * Zwraca kolor ARGB figury.
+     * @param slot slot figury
+     * @return kolor ARGB
+     */
+
+    public int getColor(int slot) { return colors[slot >>> CHUNK_BITS][slot & CHUNK_MASK]; }
+
+    /**
+     * Zapisuje dane figury w tablicach.
+     * @param slot slot figury
+     * @param type numer figury z Figures
+     * @param x współrzędna x
+     * @param y współrzędna y
+     * @param width szerokość
+     * @param height wysokość
+     * @param argb kolor ARGB
+     */
+
+    private void set(int slot, int type, int x, int y, int width, int height, int argb) {
+        if (type < 0 || type >= NAMES.length) throw new IllegalArgumentException("Nieznana figura: " + type);
+
+        int chunk = writableChunk(slot);
+        int i = slot & CHUNK_MASK;
+
+        types[chunk][i] = (byte) type;
+        xs[chunk][i] = x;
+        ys[chunk][i] = y;
+        widths[chunk][i] = width;
+        heights[chunk][i] = height;
+        colors[chunk][i] = argb;
+    }
+
+    /**
+     * Zmienia wiele figur jednym przejściem i powiadamia obserwatorów o każdej z nich.
+     * @param slots sloty zmienianych figur
+     * @param operation rodzaj zmiany: MOVE, SCALE albo RECOLOR
+     * @param a przesunięcie x, współrzędna x punktu skalowania albo kolor
+     * @param b przesunięcie y albo współrzędna y punktu skalowania
+     * @param percentage liczba dziesiątych przy skalowaniu
+     * @param changed prostokąt, do którego zostanie zapisana suma prostokątów figur sprzed zmiany i po niej
+     */
+
+    private void update(IntList slots, int operation, int a, int b, int percentage, Rectangle changed) {
+        int count = slots.size();
+        if (count == 0) {
+            changed.setBounds(0, 0, 0, 0);
+            return;
+        }
+
+        for (Listener listener : listeners) {
+            for (int i = 0; i < count; i++) listener.figureChanging(slots.get(i));
+        }
+
+        // Fragmenty są kopiowane z góry w jednym wątku, więc przejście zmienia już tylko
+        // wartości w tablicach należących do magazynu i może się odbywać w wielu wątkach.
+        for (int i = 0; i < count; i++) writableChunk(slots.get(i));
+
+        int[] bounds = new Update(slots, operation, a, b, percentage, 0, count).invoke();
+        changed.setBounds(bounds[0], bounds[1], bounds[2] - bounds[0], bounds[3] - bounds[1]);
+        modified = true;
+
+        for (Listener listener : listeners) {
+            for (int i = 0; i < count; i++) listener.figureChanged(slots.get(i));
+        }
+    }
+
+    /**
+     * Zwraca fragment, w którym leży slot, kopiując go najpierw, jeżeli może go czytać któraś z kopii.
+     * Kopia nigdy nie czyta slotów od sharedSize wzwyż, więc dopisywanie nowych figur niczego nie kopiuje.
+     * @param slot zmieniany slot
+     * @return numer fragmentu
+     */
+
+    private int writableChunk(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+
+        if (slot < sharedSize && owners[chunk] != version) {
+            types[chunk] = types[chunk].clone();
+            xs[chunk] = xs[chunk].clone();
+            ys[chunk] = ys[chunk].clone();
+            widths[chunk] = widths[chunk].clone();
+            heights[chunk] = heights[chunk].clone();
+            colors[chunk] = colors[chunk].clone();
+            owners[chunk] = version;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Dokłada fragmenty tablic tak, by zmieściły co najmniej podaną liczbę figur.
+     * @param capacity wymagana pojemność
+     */
+
+    private void ensureCapacity(int capacity) {
+        int chunks = (capacity + CHUNK_MASK) >>> CHUNK_BITS;
+        if (chunks <= types.length) return;
+
+        // Nowe fragmenty są dokładane bez kopiowania istniejących, które mogą należeć do kopii magazynu.
+        int first = types.length;
+        int newChunks = Math.max(chunks, first + (first >> 1));
+
+        types = Arrays.copyOf(types, newChunks);
+        xs = Arrays.copyOf(xs, newChunks);
+        ys = Arrays.copyOf(ys, newChunks);
+        widths = Arrays.copyOf(widths, newChunks);
+        heights = Arrays.copyOf(heights, newChunks);
+        colors = Arrays.copyOf(colors, newChunks);
+        owners = Arrays.copyOf(owners, newChunks);
+
+        for (int chunk = first; chunk < newChunks; chunk++) {
+            types[chunk] = new byte[CHUNK_SIZE];
+            xs[chunk] = new int[CHUNK_SIZE];
+            ys[chunk] = new int[CHUNK_SIZE];
+            widths[chunk] = new int[CHUNK_SIZE];
+            heights[chunk] = new int[CHUNK_SIZE];
+            colors[chunk] = new int[CHUNK_SIZE];
+            owners[chunk] = version;
+        }
+    }
+
+    /**
+     * Zadanie zmieniające figury z pozycji od first do last listy slotów, dzielące się na połowy,
+     * dopóki obejmuje co najmniej PARALLEL_THRESHOLD figur. Wywołane przez invoke poniżej progu
+     * wykonuje się w całości w wątku wywołującym. Wynikiem jest prostokąt {minX, minY, maxX, maxY}
+     * obejmujący zmienione figury przed zmianą i po niej.
+     */
+
+    @SuppressWarnings("serial")
+    private class Update extends RecursiveTask<int[]> {
+        private final IntList slots;
+        private final int operation;
+        private final int a;
+        private final int b;
+        private final int percentage;
+        private final int first;
+        private final int last;
+
+        private Update(IntList slots, int operation, int a, int b, int percentage, int first, int last) {
+            this.slots = slots;
+            this.operation = operation;
+            this.a = a;
+            this.b = b;
+            this.percentage = percentage;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (last - first >= PARALLEL_THRESHOLD) {
+                int middle = (first + last) >>> 1;
+                var left = new Update(slots, operation, a, b, percentage, first, middle);
+                var right = new Update(slots, operation, a, b, percentage, middle, last);
+
+                invokeAll(left, right);
+
+                int[] bounds = left.join();
+                int[] other = right.join();
+                bounds[0] = Math.min(bounds[0], other[0]);
+                bounds[1] = Math.min(bounds[1], other[1]);
+                bounds[2] = Math.max(bounds[2], other[2]);
+                bounds[3] = Math.max(bounds[3], other[3]);
+
+                return bounds;
+            }
+
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            double factor = 1 + percentage / 10.0;
+
+            for (int k = first; k < last; k++) {
+                int slot = slots.get(k);
+                int chunk = slot >>> CHUNK_BITS;
+                int i = slot & CHUNK_MASK;
+
+                int x = xs[chunk][i];
+                int y = ys[chunk][i];
+                int width = widths[chunk][i];
+                int height = heights[chunk][i];
+
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x + width);
+                maxY = Math.max(maxY, y + height);
+
+                switch (operation) {
+                    case MOVE -> {
+                        x += a;
+                        y += b;
+                    }
+                    case SCALE -> {
+                        x = (int) Math.floor(a + (x - a) * factor);
+                        y = (int) Math.floor(b + (y - b) * factor);
+                        width = (int) (width + percentage * width / 10.0);
+                        height = (int) (height + percentage * height / 10.0);
+                    }
+                    default -> colors[chunk][i] = a;
+                }
+
+                xs[chunk][i] = x;
+                ys[chunk][i] = y;
+                widths[chunk][i] = width;
+                heights[chunk][i] = height;
+
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x + width);
+                maxY = Math.max(maxY, y + height);
+            }
+
+            return new int[] {minX, minY, maxX, maxY};
+        }
+    }
+
+    /**
+     * Obserwator zmian figur w magazynie.
+     */
+
+    public interface Listener {
+
+        /**
+         * Wywoływana po dodaniu figury.
+         * @param slot slot dodanej figury
+         */
+
+        void figureAdded(int slot);
+
+        /**
+         * Wywoływana przed zmianą prostokąta lub koloru figury, gdy figura ma jeszcze poprzednie
+         * wartości. Domyślnie nic nie robi.
+         * @param slot slot zmienianej figury
+         */
+
+        default void figureChanging(int slot) {
+        }
+
+        /**
+         * Wywoływana po zmianie prostokąta lub koloru figury.
+         * @param slot slot zmienionej figury
+         */
+
+        void figureChanged(int slot);
+
+        /**
+         * Wywoływana po usunięciu figur leżących na wierzchu.
+         * @param from slot pierwszej usuniętej figury, równy nowej liczbie figur
+         * @param to slot za ostatnią usuniętą figurą
+         */
+
+        void figuresRemoved(int from, int to);
+
+        /**
+         * Wywoływana po usunięciu wszystkich figur.
+         */
+
+        void cleared();
+    }
+}
@@ -1,17 +1,22 @@
 /**
- * Enum zawierający nazwy dostępnych w programie figur.
+ * Enum zawierający nazwy dostępnych w programie figur. Każda figura wskazuje jądro kształtu,
+ * które zawiera jej geometrię i sposób rysowania.
  */
 
 public enum Figures {
-    CIRCLE("koło"),
-    RECTANGLE("prostokąt"),
-    TRIANGLE("trójkąt");
+    CIRCLE("koło", ShapeKernel.ELLIPSE),
+    RECTANGLE("prostokąt", ShapeKernel.BOX),
+    TRIANGLE("trójkąt", ShapeKernel.TRIANGLE);
 
     private String name;
+    private ShapeKernel kernel;
 
-    Figures(String name) {
+    Figures(String name, ShapeKernel kernel) {
         this.name = name;
+        this.kernel = kernel;
     }
 
     public String getName() { return this.name; }
+
+    public ShapeKernel kernel() { return this.kernel; }
 }
@@ -0,0 +1,302 @@
+import jdk.jfr.*;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Obiekt FrameMetrics zbiera pomiary płynności działania edytora: czas rysowania klatki,
+ * czas od zdarzenia myszy do klatki, która je uwzględnia, liczbę narysowanych figur
+ * i czas wyszukania klikniętej figury, a także ile zdarzeń myszy zostało połączonych w jedną
+ * zmianę figury i przez to pominiętych. Pomiary od uruchomienia programu są dostępne przez JMX
+ * jako Figury:type=FrameMetrics, a każda klatka i każde wyszukanie są też zdarzeniami JFR
+ * figury.Frame i figury.HitTest, tworzonymi tylko wtedy, gdy nagrywanie JFR je obejmuje.
+ * Osobne histogramy ostatnich pomiarów są odczytywane i zerowane przez nakładkę na komponencie.
+ * Metody zapisujące pomiary należy wywoływać z wątku obsługi zdarzeń.
+ */
+
+public class FrameMetrics implements FrameMetricsMBean {
+    public static final String OBJECT_NAME = "Figury:type=FrameMetrics";
+
+    private static final EventType FRAME_EVENT = EventType.getEventType(FrameEvent.class);
+    private static final EventType HIT_TEST_EVENT = EventType.getEventType(HitTestEvent.class);
+
+    private final Histogram paint;
+    private final Histogram latency;
+    private final Histogram figures;
+    private final Histogram hitTest;
+
+    private final Histogram recentPaint;
+    private final Histogram recentLatency;
+    private final Histogram recentFigures;
+    private final Histogram recentHitTest;
+
+    private final AtomicLong inputEvents;
+    private final AtomicLong inputUpdates;
+    private final AtomicLong recentInputEvents;
+    private final AtomicLong recentInputUpdates;
+
+    private long pendingInput;
+
+    /**
+     * Tworzy obiekt bez pomiarów.
+     */
+
+    public FrameMetrics() {
+        paint = new Histogram();
+        latency = new Histogram();
+        figures = new Histogram();
+        hitTest = new Histogram();
+
+        recentPaint = new Histogram();
+        recentLatency = new Histogram();
+        recentFigures = new Histogram();
+        recentHitTest = new Histogram();
+
+        inputEvents = new AtomicLong();
+        inputUpdates = new AtomicLong();
+        recentInputEvents = new AtomicLong();
+        recentInputUpdates = new AtomicLong();
+
+        pendingInput = 0;
+    }
+
+    /**
+     * Rejestruje obiekt w serwerze JMX maszyny wirtualnej.
+     */
+
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Zapamiętuje czas zdarzenia myszy, które zmieniło figury. Do następnej klatki
+     * liczy się najstarsze z takich zdarzeń.
+     * @param when czas zdarzenia z MouseEvent.getWhen
+     */
+
+    public void inputReceived(long when) {
+        if (pendingInput == 0) pendingInput = when;
+    }
+
+    /**
+     * Zlicza zdarzenie myszy odłożone do zastosowania w najbliższej klatce.
+     */
+
+    public void inputQueued() {
+        inputEvents.incrementAndGet();
+        recentInputEvents.incrementAndGet();
+    }
+
+    /**
+     * Zlicza zmianę figury wykonaną na podstawie odłożonych zdarzeń myszy.
+     */
+
+    public void inputApplied() {
+        inputUpdates.incrementAndGet();
+        recentInputUpdates.incrementAndGet();
+    }
+
+    /**
+     * Zapisuje pomiary narysowanej klatki.
+     * @param start wartość System.nanoTime z początku rysowania
+     * @param count liczba narysowanych figur
+     */
+
+    public void framePainted(long start, int count) {
+        long duration = System.nanoTime() - start;
+
+        paint.record(duration);
+        recentPaint.record(duration);
+        figures.record(count);
+        recentFigures.record(count);
+
+        // Czas zdarzeń AWT ma rozdzielczość milisekund, więc opóźnienie też.
+        long inputLatency = -1;
+
+        if (pendingInput != 0) {
+            inputLatency = (System.currentTimeMillis() - pendingInput) * 1_000_000;
+            pendingInput = 0;
+
+            latency.record(inputLatency);
+            recentLatency.record(inputLatency);
+        }
+
+        if (FRAME_EVENT.isEnabled()) {
+            var event = new FrameEvent();
+            event.paintDuration = duration;
+            event.inputLatency = inputLatency;
+            event.figures = count;
+            event.commit();
+        }
+    }
+
+    /**
+     * Zapisuje czas wyszukania klikniętej figury.
+     * @param start wartość System.nanoTime sprzed wyszukiwania
+     */
+
+    public void hitTested(long start) {
+        long duration = System.nanoTime() - start;
+
+        hitTest.record(duration);
+        recentHitTest.record(duration);
+
+        if (HIT_TEST_EVENT.isEnabled()) {
+            var event = new HitTestEvent();
+            event.searchDuration = duration;
+            event.commit();
+        }
+    }
+
+    /**
+     * Zwraca opis percentyli z ostatnich pomiarów i zaczyna zbierać je od nowa.
+     * @return wiersze opisu
+     */
+
+    public String[] takeRecent() {
+        String[] lines = {
+                String.format("klatki: %d", recentPaint.count()),
+                String.format("rysowanie p50/p99: %.2f / %.2f ms",
+                        recentPaint.percentile(0.5) / 1e6, recentPaint.percentile(0.99) / 1e6),
+                String.format("opóźnienie p50/p99: %.0f / %.0f ms",
+                        recentLatency.percentile(0.5) / 1e6, recentLatency.percentile(0.99) / 1e6),
+                String.format("figury p50/p99: %d / %d", recentFigures.percentile(0.5), recentFigures.percentile(0.99)),
+                String.format("trafienie p50/p99: %.1f / %.1f µs",
+                        recentHitTest.percentile(0.5) / 1e3, recentHitTest.percentile(0.99) / 1e3),
+                String.format("zdarzenia: %d, pominięte: %.0f%%", recentInputEvents.get(),
+                        droppedRatio(recentInputEvents.get(), recentInputUpdates.get()) * 100)
+        };
+
+        recentPaint.reset();
+        recentLatency.reset();
+        recentFigures.reset();
+        recentHitTest.reset();
+        recentInputEvents.set(0);
+        recentInputUpdates.set(0);
+
+        return lines;
+    }
+
+    @Override
+    public long getFrames() {
+        return paint.count();
+    }
+
+    @Override
+    public double getPaintMillisP50() {
+        return paint.percentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getPaintMillisP99() {
+        return paint.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getLatencyMillisP50() {
+        return latency.percentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getLatencyMillisP99() {
+        return latency.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public long getFiguresP50() {
+        return figures.percentile(0.5);
+    }
+
+    @Override
+    public long getFiguresP99() {
+        return figures.percentile(0.99);
+    }
+
+    @Override
+    public double getHitTestMicrosP50() {
+        return hitTest.percentile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getHitTestMicrosP99() {
+        return hitTest.percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public long getInputEvents() {
+        return inputEvents.get();
+    }
+
+    @Override
+    public long getDroppedInputEvents() {
+        return Math.max(inputEvents.get() - inputUpdates.get(), 0);
+    }
+
+    @Override
+    public double getDroppedInputRatio() {
+        return droppedRatio(inputEvents.get(), inputUpdates.get());
+    }
+
+    @Override
+    public void reset() {
+        paint.reset();
+        latency.reset();
+        figures.reset();
+        hitTest.reset();
+        inputEvents.set(0);
+        inputUpdates.set(0);
+    }
+
+    /**
+     * Wylicza, jaka część zdarzeń myszy nie spowodowała osobnej zmiany figury.
+     * @param events liczba zdarzeń
+     * @param updates liczba zmian figur
+     * @return część pominiętych zdarzeń od 0 do 1
+     */
+
+    private static double droppedRatio(long events, long updates) {
+        return events == 0 ? 0 : Math.max(events - updates, 0) / (double) events;
+    }
+
+    /**
+     * Zdarzenie JFR opisujące jedną narysowaną klatkę.
+     */
+
+    @Name("figury.Frame")
+    @Label("Klatka")
+    @Category("Figury")
+    @StackTrace(false)
+    static class FrameEvent extends Event {
+        @Label("Czas rysowania")
+        @Timespan(Timespan.NANOSECONDS)
+        long paintDuration;
+
+        @Label("Opóźnienie zdarzenia")
+        @Description("Czas od zdarzenia myszy do tej klatki lub -1, jeżeli klatka nie wynika ze zdarzenia")
+        @Timespan(Timespan.NANOSECONDS)
+        long inputLatency;
+
+        @Label("Liczba figur")
+        int figures;
+    }
+
+    /**
+     * Zdarzenie JFR opisujące wyszukanie klikniętej figury.
+     */
+
+    @Name("figury.HitTest")
+    @Label("Wyszukanie figury")
+    @Category("Figury")
+    @StackTrace(false)
+    static class HitTestEvent extends Event {
+        @Label("Czas wyszukania")
+        @Timespan(Timespan.NANOSECONDS)
+        long searchDuration;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Interfejs JMX obiektu FrameMetrics, udostępniający percentyle czasów rysowania,
+ * opóźnień zdarzeń, liczby figur w klatce i czasów wyszukiwania figury oraz liczbę pominiętych
+ * zdarzeń myszy od uruchomienia programu lub ostatniego wywołania reset.
+ */
+
+public interface FrameMetricsMBean {
+
+    /**
+     * Zwraca liczbę narysowanych klatek.
+     * @return liczba klatek
+     */
+
+    long getFrames();
+
+    /**
+     * Zwraca medianę czasu wykonania paintComponent.
+     * @return czas w milisekundach
+     */
+
+    double getPaintMillisP50();
+
+    /**
+     * Zwraca 99. percentyl czasu wykonania paintComponent.
+     * @return czas w milisekundach
+     */
+
+    double getPaintMillisP99();
+
+    /**
+     * Zwraca medianę czasu od zdarzenia myszy do narysowania klatki, która je uwzględnia.
+     * @return czas w milisekundach
+     */
+
+    double getLatencyMillisP50();
+
+    /**
+     * Zwraca 99. percentyl czasu od zdarzenia myszy do narysowania klatki, która je uwzględnia.
+     * @return czas w milisekundach
+     */
+
+    double getLatencyMillisP99();
+
+    /**
+     * Zwraca medianę liczby figur narysowanych w klatce.
+     * @return liczba figur
+     */
+
+    long getFiguresP50();
+
+    /**
+     * Zwraca 99. percentyl liczby figur narysowanych w klatce.
+     * @return liczba figur
+     */
+
+    long getFiguresP99();
+
+    /**
+     * Zwraca medianę czasu wyszukania klikniętej figury.
+     * @return czas w mikrosekundach
+     */
+
+    double getHitTestMicrosP50();
+
+    /**
+     * Zwraca 99. percentyl czasu wyszukania klikniętej figury.
+     * @return czas w mikrosekundach
+     */
+
+    double getHitTestMicrosP99();
+
+    /**
+     * Zwraca liczbę zdarzeń przeciągania i kółka myszy odłożonych do najbliższej klatki.
+     * @return liczba zdarzeń
+     */
+
+    long getInputEvents();
+
+    /**
+     * Zwraca liczbę zdarzeń myszy, które zostały połączone z późniejszymi w jedną zmianę figury.
+     * @return liczba pominiętych zdarzeń
+     */
+
+    long getDroppedInputEvents();
+
+    /**
+     * Zwraca, jaka część zdarzeń myszy została połączona z późniejszymi w jedną zmianę figury.
+     * @return część pominiętych zdarzeń od 0 do 1
+     */
+
+    double getDroppedInputRatio();
+
+    /**
+     * Usuwa wszystkie zebrane pomiary.
+     */
+
+    void reset();
+}
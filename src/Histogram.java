@@ -0,0 +1,105 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Obiekt Histogram zlicza nieujemne wartości w przedziałach o wykładniczo rosnącej szerokości,
+ * podzielonych na 16 równych części, więc błąd odczytanego percentyla nie przekracza około 6%.
+ * Zapisanie wartości to jedno atomowe zwiększenie licznika bez alokacji, a histogram
+ * można bezpiecznie odczytywać z innego wątku niż ten, który go wypełnia.
+ */
+
+public class Histogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+
+    /**
+     * Tworzy pusty histogram.
+     */
+
+    public Histogram() {
+        counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Zapisuje wartość w histogramie. Wartości ujemne są liczone jako 0.
+     * @param value zapisywana wartość
+     */
+
+    public void record(long value) {
+        counts.incrementAndGet(bucket(Math.max(value, 0)));
+    }
+
+    /**
+     * Zwraca liczbę zapisanych wartości.
+     * @return liczba wartości
+     */
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += counts.get(i);
+
+        return count;
+    }
+
+    /**
+     * Zwraca przybliżoną wartość, od której nie jest większa podana część zapisanych wartości.
+     * @param fraction część wartości, np. 0.99 dla 99. percentyla
+     * @return środek przedziału zawierającego percentyl lub 0, jeżeli histogram jest pusty
+     */
+
+    public long percentile(double fraction) {
+        long count = count();
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return lowerBound(i) + (lowerBound(i + 1) - lowerBound(i)) / 2;
+        }
+
+        return lowerBound(BUCKETS - 1);
+    }
+
+    /**
+     * Usuwa wszystkie zapisane wartości.
+     */
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    }
+
+    /**
+     * Zwraca numer przedziału, do którego należy wartość.
+     * @param value nieujemna wartość
+     * @return numer przedziału
+     */
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Zwraca najmniejszą wartość należącą do przedziału.
+     * @param bucket numer przedziału
+     * @return dolna granica przedziału
+     */
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        if (bucket >= BUCKETS) return Long.MAX_VALUE;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+}
@@ -0,0 +1,94 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Obiekt ImageExporter rysuje figury z dokumentu do obrazu PNG bez wyświetlania okna programu.
+ * Korzysta z tego samego magazynu figur i obiektu rysującego co główne okno, więc obraz
+ * wygląda tak samo jak dokument w edytorze. Działa również z ustawieniem java.awt.headless=true.
+ */
+
+public class ImageExporter {
+    private static final int MAX_SIZE = 16_384;
+
+    private final int width;
+    private final int height;
+    private final double scale;
+
+    /**
+     * Tworzy obiekt eksportujący dokumenty do obrazów o podanych wymiarach i skali.
+     * @param width szerokość obrazu lub 0, żeby wyliczyć ją z wymiarów dokumentu
+     * @param height wysokość obrazu lub 0, żeby wyliczyć ją z wymiarów dokumentu
+     * @param scale skala, w jakiej figury są rysowane na obrazie
+     */
+
+    public ImageExporter(int width, int height, double scale) {
+        if (width < 0 || height < 0 || scale <= 0) throw new IllegalArgumentException("Nieprawidłowe wymiary obrazu");
+
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+    }
+
+    /**
+     * Wczytuje dokument z pliku i zapisuje go jako obraz PNG.
+     * @param input plik z figurami
+     * @param output plik obrazu
+     * @return liczba narysowanych figur
+     * @throws IOException jeżeli odczyt dokumentu lub zapis obrazu się nie powiedzie
+     */
+
+    public int export(Path input, Path output) throws IOException {
+        var store = new FigureStore();
+        FigureFile.load(input, store);
+
+        ImageIO.write(render(store), "png", output.toFile());
+        return store.size();
+    }
+
+    /**
+     * Rysuje figury z magazynu na białym tle do nowego obrazu. Obraz zaczyna się w punkcie (0, 0)
+     * dokumentu, a jeżeli figury leżą przy ujemnych współrzędnych, w ich lewym górnym rogu.
+     * @param store magazyn figur
+     * @return obraz z figurami
+     */
+
+    public BufferedImage render(FigureStore store) {
+        // Brakujące wymiary obrazu są wyliczane z obszaru zajmowanego przez figury.
+        long left = 0;
+        long top = 0;
+        long right = 1;
+        long bottom = 1;
+
+        for (int slot = 0; slot < store.size(); slot++) {
+            left = Math.min(left, store.getX(slot));
+            top = Math.min(top, store.getY(slot));
+            right = Math.max(right, (long) store.getX(slot) + store.getWidth(slot));
+            bottom = Math.max(bottom, (long) store.getY(slot) + store.getHeight(slot));
+        }
+
+        double documentWidth = right - left;
+        double documentHeight = bottom - top;
+
+        int imageWidth = width > 0 ? width : (int) Math.ceil(documentWidth * scale);
+        int imageHeight = height > 0 ? height : (int) Math.ceil(documentHeight * scale);
+
+        imageWidth = Math.max(1, Math.min(imageWidth, MAX_SIZE));
+        imageHeight = Math.max(1, Math.min(imageHeight, MAX_SIZE));
+
+        var image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, imageWidth, imageHeight);
+        g.scale(scale, scale);
+        g.translate(-left, -top);
+
+        new FigurePainter().paintAll(g, store);
+        g.dispose();
+
+        return image;
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+/**
+ * Obiekt IntList to rosnąca lista liczb całkowitych przechowywana w tablicy typu prostego,
+ * która nie tworzy osobnego obiektu dla każdego elementu.
+ */
+
+public class IntList {
+    private int[] values;
+    private int size;
+
+    /**
+     * Tworzy pustą listę.
+     */
+
+    public IntList() {
+        this(8);
+    }
+
+    /**
+     * Tworzy pustą listę o podanej początkowej pojemności.
+     * @param capacity początkowa pojemność
+     */
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+        size = 0;
+    }
+
+    /**
+     * Dodaje liczbę na koniec listy.
+     * @param value dodawana liczba
+     */
+
+    public void add(int value) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    /**
+     * Zwraca liczbę z danej pozycji.
+     * @param i pozycja na liście
+     * @return liczba z pozycji i
+     */
+
+    public int get(int i) {
+        return values[i];
+    }
+
+    /**
+     * Zmienia liczbę na danej pozycji.
+     * @param i pozycja na liście
+     * @param value nowa liczba
+     */
+
+    public void set(int i, int value) {
+        values[i] = value;
+    }
+
+    /**
+     * Usuwa pierwsze wystąpienie liczby, wstawiając na jej miejsce ostatni element.
+     * Nie zachowuje kolejności elementów.
+     * @param value usuwana liczba
+     * @return true jeżeli liczba była na liście
+     */
+
+    public boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                values[i] = values[--size];
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sortuje listę rosnąco.
+     */
+
+    public void sort() {
+        Arrays.sort(values, 0, size);
+    }
+
+    /**
+     * Sortuje rosnąco elementy listy od podanej pozycji do końca.
+     * @param from pozycja pierwszego sortowanego elementu
+     */
+
+    public void sort(int from) {
+        Arrays.sort(values, from, size);
+    }
+
+    /**
+     * Zwraca liczbę elementów listy.
+     * @return liczba elementów
+     */
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sprawdza, czy lista jest pusta.
+     * @return true jeżeli lista nie zawiera elementów
+     */
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Kopiuje elementy listy do nowej tablicy o długości równej liczbie elementów.
+     * @return tablica z elementami listy
+     */
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Skraca listę do podanej liczby elementów, zachowując jej pojemność.
+     * @param size nowa liczba elementów, nie większa od obecnej
+     */
+
+    public void truncate(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Usuwa wszystkie elementy listy, zachowując jej pojemność.
+     */
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,141 @@
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Obiekt InteractionRecorder zapisuje do pliku tekstowego zdarzenia myszy i klawiatury
+ * obsłużone przez FigureCanvas, a także wybór tworzonej figury i koloru, które nie pochodzą
+ * ze zdarzeń komponentu. Nagranie odtwarza bez ekranu obiekt InteractionReplay.
+ * Plik zaczyna się wierszem {@code # figury-trace 1 szerokość wysokość} z wymiarami komponentu,
+ * a każdy kolejny wiersz opisuje jedno zdarzenie i zaczyna się czasem w milisekundach od początku nagrania:
+ * <pre>
+ * czas mouse id x y przycisk modyfikatory kliknięcia obroty
+ * czas key id kod modyfikatory
+ * czas figure NAZWA|-
+ * czas color ARGB|-
+ * </pre>
+ * Metody zapisujące zdarzenia należy wywoływać z wątku obsługi zdarzeń. Błąd zapisu kończy
+ * nagrywanie bez przerywania obsługi zdarzeń, a jest zgłaszany dopiero przy zamknięciu.
+ */
+
+public class InteractionRecorder implements Closeable {
+    public static final String HEADER = "# figury-trace";
+    public static final int VERSION = 1;
+
+    private final BufferedWriter writer;
+    private final long start;
+
+    private IOException failure;
+
+    /**
+     * Tworzy obiekt zapisujący zdarzenia do otwartego pliku.
+     * @param writer strumień pliku nagrania
+     */
+
+    private InteractionRecorder(BufferedWriter writer) {
+        this.writer = writer;
+        start = System.currentTimeMillis();
+        failure = null;
+    }
+
+    /**
+     * Tworzy plik nagrania i zapisuje w nim wymiary komponentu, w którym odbywa się nagranie.
+     * @param path ścieżka pliku nagrania
+     * @param width szerokość komponentu
+     * @param height wysokość komponentu
+     * @return obiekt nagrywający
+     * @throws IOException jeżeli nie uda się utworzyć pliku
+     */
+
+    public static InteractionRecorder create(Path path, int width, int height) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(path);
+
+        try {
+            writer.write(HEADER + " " + VERSION + " " + width + " " + height);
+            writer.newLine();
+        } catch (IOException exception) {
+            writer.close();
+            throw exception;
+        }
+
+        return new InteractionRecorder(writer);
+    }
+
+    /**
+     * Zapisuje zdarzenie myszy. Zdarzenie kółka zapisuje też liczbę obrotów.
+     * @param e zdarzenie myszy
+     */
+
+    public void record(MouseEvent e) {
+        int rotation = e instanceof MouseWheelEvent wheel ? wheel.getWheelRotation() : 0;
+
+        write(e.getWhen(), "mouse " + e.getID() + " " + e.getX() + " " + e.getY() + " " + e.getButton()
+                + " " + e.getModifiersEx() + " " + e.getClickCount() + " " + rotation);
+    }
+
+    /**
+     * Zapisuje zdarzenie klawiatury.
+     * @param e zdarzenie klawiatury
+     */
+
+    public void record(KeyEvent e) {
+        write(e.getWhen(), "key " + e.getID() + " " + e.getKeyCode() + " " + e.getModifiersEx());
+    }
+
+    /**
+     * Zapisuje wybór figury, która zostanie utworzona przy następnym przeciągnięciu myszy.
+     * @param figure nazwa figury lub null
+     */
+
+    public void recordFigure(Figures figure) {
+        write(System.currentTimeMillis(), "figure " + (figure == null ? "-" : figure.name()));
+    }
+
+    /**
+     * Zapisuje kolor wybrany dla figury klikniętej prawym przyciskiem myszy.
+     * @param color wybrany kolor lub null, jeżeli wybór został anulowany
+     */
+
+    public void recordColor(Color color) {
+        write(System.currentTimeMillis(), "color " + (color == null ? "-" : Integer.toHexString(color.getRGB())));
+    }
+
+    /**
+     * Zamyka plik nagrania.
+     * @throws IOException jeżeli zapis któregoś zdarzenia lub zamknięcie pliku się nie powiodło
+     */
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } catch (IOException exception) {
+            if (failure == null) failure = exception;
+        }
+
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Zapisuje wiersz zdarzenia z czasem liczonym od początku nagrania.
+     * @param when czas zdarzenia w milisekundach od początku epoki
+     * @param event opis zdarzenia
+     */
+
+    private void write(long when, String event) {
+        if (failure != null) return;
+
+        try {
+            writer.write(Math.max(0, when - start) + " " + event);
+            writer.newLine();
+        } catch (IOException exception) {
+            failure = exception;
+        }
+    }
+}
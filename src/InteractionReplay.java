@@ -0,0 +1,269 @@
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Obiekt InteractionReplay odtwarza bez ekranu nagranie zapisane przez InteractionRecorder.
+ * Zdarzenia trafiają do tych samych obiektów obsługujących mysz i klawiaturę co w oknie programu,
+ * w komponencie FigureCanvas o wymiarach z nagrania, a po każdym zdarzeniu odłożone zmiany są
+ * stosowane od razu. Mierzony jest czas obsługi każdego zdarzenia, opcjonalnie razem z narysowaniem
+ * klatki do obrazu poza ekranem, a pomiary są zbierane osobno dla każdego rodzaju zdarzenia.
+ * Zdarzenia są odtwarzane jedno po drugim bez zachowania odstępów z nagrania.
+ */
+
+public class InteractionReplay {
+    private final boolean paint;
+    private final Map<String, Latency> latencies;
+
+    private FigureCanvas canvas;
+    private KeyListener keyHandler;
+    private BufferedImage frame;
+    private List<Color> colors;
+    private int nextColor;
+    private long replayNanos;
+
+    /**
+     * Tworzy obiekt odtwarzający nagrania.
+     * @param paint true, żeby po każdym zdarzeniu rysować klatkę i wliczać ją do czasu obsługi
+     */
+
+    public InteractionReplay(boolean paint) {
+        this.paint = paint;
+        latencies = new LinkedHashMap<>();
+    }
+
+    /**
+     * Odtwarza nagranie na figurach z magazynu. Magazyn jest zmieniany tak, jak zmieniłby go
+     * użytkownik wykonujący nagrane czynności.
+     * @param trace plik nagrania
+     * @param figures magazyn figur
+     * @return liczba odtworzonych zdarzeń
+     * @throws IOException jeżeli nagrania nie uda się odczytać lub ma nieprawidłowy format
+     */
+
+    public int replay(Path trace, FigureStore figures) throws IOException {
+        List<String> lines = Files.readAllLines(trace);
+        if (lines.isEmpty()) throw new IOException("Pusty plik nagrania");
+
+        String[] header = lines.get(0).split(" ");
+        if (!lines.get(0).startsWith(InteractionRecorder.HEADER) || header.length != 5
+                || !header[2].equals(Integer.toString(InteractionRecorder.VERSION))) {
+            throw new IOException("Nieobsługiwany format nagrania");
+        }
+
+        int width = parse(header[3], 1);
+        int height = parse(header[4], 1);
+
+        var events = new ArrayList<String[]>(lines.size() - 1);
+        colors = new ArrayList<>();
+        nextColor = 0;
+
+        // Kolor jest nagrywany po kliknięciu, które otworzyło okno wyboru, więc wszystkie kolory
+        // są odczytywane z góry i podawane kolejno zamiast okna wyboru.
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).isBlank() || lines.get(i).startsWith("#")) continue;
+
+            String[] event = lines.get(i).trim().split(" ");
+            if (event.length < 3) throw new IOException("Nieprawidłowy wiersz nagrania " + (i + 1));
+
+            if (event[1].equals("color")) colors.add(event[2].equals("-") ? null : new Color(parseColor(event[2], i + 1), true));
+            else events.add(event);
+        }
+
+        try {
+            EventQueue.invokeAndWait(() -> {
+                var index = new SpatialIndex(figures);
+                canvas = new FigureCanvas(figures, index, new FrameMetrics());
+                canvas.setSize(width, height);
+                canvas.setDoubleBuffered(false);
+                canvas.setColorChooser(() -> nextColor < colors.size() ? colors.get(nextColor++) : null);
+                keyHandler = canvas.createKeyHandler();
+                frame = paint ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB) : null;
+
+                long start = System.nanoTime();
+                for (String[] event : events) dispatch(event);
+                replayNanos = System.nanoTime() - start;
+            });
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Przerwano odtwarzanie");
+        } catch (InvocationTargetException exception) {
+            if (exception.getCause() instanceof IllegalArgumentException) {
+                throw new IOException(exception.getCause().getMessage());
+            }
+            throw new IOException(exception.getCause());
+        }
+
+        return events.size();
+    }
+
+    /**
+     * Wypisuje liczbę zdarzeń i percentyle czasu obsługi każdego rodzaju zdarzenia w mikrosekundach.
+     * @param out strumień wyników
+     */
+
+    public void report(PrintStream out) {
+        out.printf("%-14s %8s %10s %10s %10s %10s%n", "zdarzenie", "liczba", "p50 µs", "p90 µs", "p99 µs", "max µs");
+
+        // Percentyle są środkami przedziałów histogramu, więc nie mogą przekraczać największego pomiaru.
+        for (Map.Entry<String, Latency> entry : latencies.entrySet()) {
+            Histogram histogram = entry.getValue().histogram;
+            long max = entry.getValue().max;
+
+            out.printf("%-14s %8d %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), histogram.count(),
+                    Math.min(histogram.percentile(0.50), max) / 1e3, Math.min(histogram.percentile(0.90), max) / 1e3,
+                    Math.min(histogram.percentile(0.99), max) / 1e3, max / 1e3);
+        }
+
+        out.printf("Odtworzenie trwało %.3f s%n", replayNanos / 1e9);
+    }
+
+    /**
+     * Odtwarza jedno zdarzenie z nagrania i zapisuje czas jego obsługi.
+     * @param event pola wiersza nagrania
+     */
+
+    private void dispatch(String[] event) {
+        long when = System.currentTimeMillis();
+
+        switch (event[1]) {
+            case "figure" -> canvas.setCurrentFigure(event[2].equals("-") ? null : Figures.valueOf(event[2]));
+            case "mouse" -> {
+                int id = field(event, 2);
+                int x = field(event, 3);
+                int y = field(event, 4);
+                int button = field(event, 5);
+                int modifiers = field(event, 6);
+                int clicks = field(event, 7);
+                int rotation = field(event, 8);
+
+                MouseEvent e = id == MouseEvent.MOUSE_WHEEL
+                        ? new MouseWheelEvent(canvas, id, when, modifiers, x, y, clicks, false,
+                                MouseWheelEvent.WHEEL_UNIT_SCROLL, 3, rotation)
+                        : new MouseEvent(canvas, id, when, modifiers, x, y, clicks, false, button);
+
+                long start = System.nanoTime();
+                canvas.dispatchEvent(e);
+                finish(mouseName(id), start);
+            }
+            case "key" -> {
+                int id = field(event, 2);
+                var e = new KeyEvent(canvas, id, when, field(event, 4), field(event, 3), KeyEvent.CHAR_UNDEFINED);
+
+                long start = System.nanoTime();
+                if (id == KeyEvent.KEY_PRESSED) keyHandler.keyPressed(e);
+                else if (id == KeyEvent.KEY_RELEASED) keyHandler.keyReleased(e);
+                finish(id == KeyEvent.KEY_PRESSED ? "key pressed" : "key released", start);
+            }
+            default -> throw new IllegalArgumentException("Nieznane zdarzenie " + event[1]);
+        }
+    }
+
+    /**
+     * Stosuje odłożone zmiany, opcjonalnie rysuje klatkę i zapisuje czas obsługi zdarzenia.
+     * @param name rodzaj zdarzenia
+     * @param start czas rozpoczęcia obsługi z System.nanoTime
+     */
+
+    private void finish(String name, long start) {
+        canvas.flushInput();
+
+        if (frame != null) {
+            Graphics2D g = frame.createGraphics();
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, frame.getWidth(), frame.getHeight());
+            canvas.paint(g);
+            g.dispose();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        Latency latency = latencies.computeIfAbsent(name, key -> new Latency());
+        latency.histogram.record(elapsed);
+        latency.max = Math.max(latency.max, elapsed);
+    }
+
+    /**
+     * Zwraca nazwę rodzaju zdarzenia myszy.
+     * @param id identyfikator zdarzenia z MouseEvent
+     * @return nazwa rodzaju zdarzenia
+     */
+
+    private static String mouseName(int id) {
+        return switch (id) {
+            case MouseEvent.MOUSE_PRESSED -> "mouse pressed";
+            case MouseEvent.MOUSE_RELEASED -> "mouse released";
+            case MouseEvent.MOUSE_DRAGGED -> "mouse dragged";
+            case MouseEvent.MOUSE_MOVED -> "mouse moved";
+            case MouseEvent.MOUSE_WHEEL -> "mouse wheel";
+            default -> "mouse " + id;
+        };
+    }
+
+    /**
+     * Odczytuje pole wiersza nagrania będące liczbą całkowitą.
+     * @param event pola wiersza nagrania
+     * @param i numer pola
+     * @return wartość pola
+     */
+
+    private static int field(String[] event, int i) {
+        if (i >= event.length) throw new IllegalArgumentException("Brak pola w zdarzeniu " + String.join(" ", event));
+        return Integer.parseInt(event[i]);
+    }
+
+    /**
+     * Odczytuje dodatnią liczbę całkowitą z nagłówka nagrania.
+     * @param value tekst liczby
+     * @param min najmniejsza dozwolona wartość
+     * @return wartość liczby
+     * @throws IOException jeżeli tekst nie jest liczbą lub jest mniejszy od min
+     */
+
+    private static int parse(String value, int min) throws IOException {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= min) return result;
+        } catch (NumberFormatException ignored) {
+        }
+
+        throw new IOException("Nieprawidłowy nagłówek nagrania");
+    }
+
+    /**
+     * Odczytuje kolor ARGB zapisany szesnastkowo.
+     * @param value tekst koloru
+     * @param line numer wiersza nagrania
+     * @return kolor ARGB
+     * @throws IOException jeżeli tekst nie jest liczbą szesnastkową
+     */
+
+    private static int parseColor(String value, int line) throws IOException {
+        try {
+            return Integer.parseUnsignedInt(value, 16);
+        } catch (NumberFormatException exception) {
+            throw new IOException("Nieprawidłowy kolor w wierszu " + line);
+        }
+    }
+
+    /**
+     * Pomiary czasu obsługi jednego rodzaju zdarzenia w nanosekundach.
+     */
+
+    private static class Latency {
+        private final Histogram histogram = new Histogram();
+        private long max;
+    }
+}
@@ -3,18 +3,31 @@ import java.awt.*;
 
 /**
  * Program służący do rysowania i edytowania figur.
+ * Uruchomiony z argumentami działa w trybie wsadowym bez okien, np.
+ * {@code java Main export dokumenty miniatury --width 256 --height 256}
+ * albo {@code java Main replay nagranie.trace --document scena.fig}.
  * @version 1.0 2021-04-19
  * @author Marcin Wilk
  */
 
 public class Main {
     public static void main(String[] args) {
+        // Z argumentami program działa w trybie wsadowym bez wyświetlania okien
+        if (args.length > 0) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(new CommandLine(System.out, System.err).run(args));
+        }
+
+        // Ustawienia i ostatni dokument są odczytywane w tle, równolegle z tworzeniem okna
+        var startup = new Startup();
+
         // Utworzenie, skonfigurowanie i wyświetlenie głównego okna programu
         EventQueue.invokeLater(() -> {
-            var frame = new MainFrame();
+            var frame = new MainFrame(startup);
             frame.setTitle("Edytor figur");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             frame.setVisible(true);
+            startup.mark("okno widoczne");
         });
     }
 }
@@ -2,40 +2,148 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
 
 /**
  * Obiekt MainFrame zawiera główne okno programu. Zajmuje się stworzeniem interfejsu,
- * zapisaniem i wczytaniem wszystkich danych, oraz zawiera w sobie klasę tworzącą
- * główny komponent programu który obsługuje wszystkie funkcjonalności związane z tworzeniem
- * oraz edytowaniem figur. Posiada trzy pola, figures zawierające wszystkie figury znajdujące się
- * na ekranie, currentFigure zawierające nazwę aktualnie tworzonej figury oraz flagę isShiftPressed,
- * która przechowuje informację czy jest wciśnięty klawisz shift.
+ * zapisaniem i wczytaniem wszystkich danych, oraz dodaje do okna główny komponent programu
+ * FigureCanvas, który obsługuje wszystkie funkcjonalności związane z tworzeniem
+ * oraz edytowaniem figur. Wczytywanie i zapisywanie figur odbywa się w tle, a wszystkie
+ * zmiany figur są na bieżąco zapisywane w dzienniku, z którego są odtwarzane po ponownym uruchomieniu.
+ * Obsługę myszy i klawiatury można nagrywać do pliku, który odtwarza polecenie replay.
+ * Dokument stronicowany jest edytowany w miejscu, bez dziennika, a magazyn zawiera tylko jego widoczne strony.
+ * Okno jest pokazywane z pustym komponentem, zanim obiekt Startup odtworzy w tle ostatni dokument,
+ * a okno wyboru pliku jest tworzone dopiero przy pierwszym użyciu.
+ * Posiada pola figures będące magazynem wszystkich figur znajdujących się na ekranie,
+ * index będący indeksem przestrzennym tych figur, journal będące dziennikiem zmian, metrics zbierające pomiary płynności rysowania,
+ * canvas będące głównym komponentem, recorder będące obiektem nagrywającym zdarzenia,
+ * document będące otwartym dokumentem stronicowanym oraz startup mierzące czas uruchamiania.
  */
 
 public class MainFrame extends JFrame {
-    private ArrayList<Figure> figures;
-    private Figures currentFigure;
-
-    private boolean isShiftPressed;
+    private final FigureStore figures;
+    private final SpatialIndex index;
+    private final FrameMetrics metrics;
+    private final Startup startup;
+    private EditJournal journal;
+    private FigureCanvas canvas;
+    private InteractionRecorder recorder;
+    private PagedDocument document;
+    private JFileChooser chooser;
 
     /**
-     * Tworzy główne okno programu, inicjalizuje zmienne, ładuje ustawienia z pliku,
+     * Tworzy główne okno programu, inicjalizuje zmienne, ładuje ustawienia odczytane w tle,
      * tworzy menu, dodaje główny komponent programu i załącza obsługę klawiatury.
      * Ustawia również funkcję, która zapisze stan programu po zamknięciu.
+     * @param startup obiekt odczytujący w tle ustawienia i ostatni dokument
      */
 
-    public MainFrame() {
-        currentFigure = null;
-        isShiftPressed = false;
-        figures = new ArrayList<>();
+    public MainFrame(Startup startup) {
+        this.startup = startup;
+        recorder = null;
+        document = null;
+        journal = null;
+        chooser = null;
+        figures = new FigureStore();
+        index = new SpatialIndex(figures);
+        metrics = new FrameMetrics();
+        metrics.register();
 
         loadSettings();
         createMenuBar();
         addComponents();
         attachKeyboardHandler();
         saveSettings();
+        openJournal();
+        startup.mark("okno utworzone");
+    }
+
+    /**
+     * Dodaje do okna ostatni dokument odtworzony w tle z dziennika zmian. W trybie szybkiego startu
+     * okno jest pokazywane od razu, a do czasu dodania dokumentu przezroczysta szyba okna przechwytuje
+     * zdarzenia myszy, żeby nowe figury nie znalazły się pod dokumentem.
+     */
+
+    private void openJournal() {
+        canvas.whenPainted(startup::firstPaint);
+
+        if (!startup.isFastStart()) {
+            attachJournal();
+            return;
+        }
+
+        var glass = getGlassPane();
+        glass.addMouseListener(new MouseAdapter() {});
+        glass.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        glass.setVisible(true);
+
+        startup.document().whenComplete((recovery, failure) -> EventQueue.invokeLater(() -> {
+            try {
+                attachJournal();
+            } finally {
+                glass.setVisible(false);
+            }
+        }));
+    }
+
+    /**
+     * Dodaje figury odtworzone z dziennika zmian do magazynu i otwiera dziennik do dalszego zapisu.
+     * Dziennik jest zamykany przy zamknięciu okna. Jeżeli dziennika nie da się otworzyć albo przed
+     * odtworzeniem dokumentu wczytano już inne figury, program działa bez niego, a odtworzony
+     * dokument pozostaje w dzienniku do następnego uruchomienia.
+     */
+
+    private void attachJournal() {
+        try {
+            var recovery = startup.document().join();
+
+            if (figures.size() > 0 || document != null) {
+                System.err.println("Pominięto odtwarzanie dokumentu, bo wczytano już inne figury");
+                recovery.close();
+            } else {
+                journal = recovery.attach(figures);
+            }
+        } catch (CompletionException exception) {
+            exception.getCause().printStackTrace();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+
+        startup.documentShown(figures.size());
+        if (journal == null) return;
+
+        canvas.repaint();
+
+        EditJournal opened = journal;
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                try {
+                    opened.close();
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Zwraca okno wyboru pliku, tworząc je przy pierwszym użyciu.
+     * @return okno wyboru pliku
+     */
+
+    private JFileChooser chooser() {
+        if (chooser == null) {
+            chooser = new JFileChooser();
+            chooser.setCurrentDirectory(new File("."));
+        }
+
+        return chooser;
     }
 
     /**
@@ -47,6 +155,7 @@ public class MainFrame extends JFrame {
         setJMenuBar(menuBar);
 
         createFiguresMenu(menuBar);
+        createEditMenu(menuBar);
         createOptionsMenu(menuBar);
         createInfoMenu(menuBar);
     }
@@ -71,9 +180,30 @@ public class MainFrame extends JFrame {
         figuresMenu.add(triangle);
 
         // Dodanie reakcji na wybranie do koażdej figury z menu
-        circle.addActionListener(e -> currentFigure = Figures.CIRCLE);
-        rectangle.addActionListener(e -> currentFigure = Figures.RECTANGLE);
-        triangle.addActionListener(e -> currentFigure = Figures.TRIANGLE);
+        circle.addActionListener(e -> canvas.setCurrentFigure(Figures.CIRCLE));
+        rectangle.addActionListener(e -> canvas.setCurrentFigure(Figures.RECTANGLE));
+        triangle.addActionListener(e -> canvas.setCurrentFigure(Figures.TRIANGLE));
+    }
+
+    /**
+     * Tworzy element paska menu cofający i ponawiający zmiany figur.
+     * @param menuBar pasek menu, w którym ma się utworzyć element
+     */
+
+    private void createEditMenu(JMenuBar menuBar) {
+        var edit = new JMenu("Edycja");
+        menuBar.add(edit);
+
+        var undo = new JMenuItem("Cofnij (ctrl+Z)");
+        edit.add(undo);
+
+        var redo = new JMenuItem("Ponów (ctrl+Y)");
+        edit.add(redo);
+
+        // Skróty klawiszowe obsługuje komponent, więc elementy menu nie mają akceleratorów,
+        // które wywołałyby cofnięcie drugi raz.
+        undo.addActionListener(e -> canvas.undo());
+        redo.addActionListener(e -> canvas.redo());
     }
 
     /**
@@ -92,55 +222,248 @@ public class MainFrame extends JFrame {
         var load = new JMenuItem("Wczytaj");
         options.add(load);
 
-        var chooser = new JFileChooser();
-        chooser.setCurrentDirectory(new File("."));
+        var openPaged = new JMenuItem("Otwórz stronicowany");
+        options.add(openPaged);
+
+        var statistics = new JCheckBoxMenuItem("Statystyki");
+        options.add(statistics);
+
+        var resetView = new JMenuItem("Domyślny widok");
+        options.add(resetView);
+
+        var record = new JCheckBoxMenuItem("Nagrywaj zdarzenia");
+        options.add(record);
+
+        var snapping = new JCheckBoxMenuItem("Przyciąganie", true);
+        options.add(snapping);
+
+        // Włącza lub wyłącza dociąganie figur do krawędzi i środków innych figur.
+        snapping.addActionListener(e -> canvas.setSnapping(snapping.isSelected()));
+
+        // Przywraca widok bez przesunięcia i przybliżenia.
+        resetView.addActionListener(e -> canvas.resetViewport());
+
+        // Pokazuje lub ukrywa nakładkę z czasami rysowania i opóźnieniami.
+        statistics.addActionListener(e -> canvas.setHudVisible(statistics.isSelected()));
+
+        // Zaczyna nagrywanie zdarzeń do wybranego pliku albo kończy trwające nagrywanie.
+        record.addActionListener(e -> {
+            if (record.isSelected()) {
+                int result = chooser().showSaveDialog(null);
+                record.setSelected(result == JFileChooser.APPROVE_OPTION
+                        && startRecording(chooser().getSelectedFile().toPath()));
+            } else {
+                stopRecording();
+            }
+        });
 
         // Dodanie akcji do wciśnięcia przycisku zapisz, która wyświetla okno dialogowe,
-        // a następnie zapisze wszystkie figury do wybranego pliku
+        // a następnie zapisze w tle wszystkie figury do wybranego pliku
         save.addActionListener(e -> {
-            int result = chooser.showSaveDialog(null);
+            // Dokument stronicowany zapisuje tylko zmienione strony do swojego pliku.
+            if (document != null) {
+                flushPaged();
+                return;
+            }
 
-            if (result == JFileChooser.APPROVE_OPTION) {
-                String path = chooser.getSelectedFile().getPath();
+            int result = chooser().showSaveDialog(null);
 
-                try (FileOutputStream f = new FileOutputStream(path);
-                     ObjectOutputStream o = new ObjectOutputStream(f)) {
-                    for (Figure g : figures) {
-                        o.writeObject(g);
-                    }
-                } catch (IOException i) {
-                    i.printStackTrace();
-                }
+            if (result == JFileChooser.APPROVE_OPTION) {
+                startTask(new SaveTask(chooser().getSelectedFile().toPath()), "Zapisywanie figur", options);
             }
         });
 
         // Dodanie akcji do wciśnięcia przycisku wczytaj, która wyświetla okno dialogowe,
-        // a następnie wczyta wszystkie figury z wybranego pliku
+        // a następnie wczyta w tle wszystkie figury z wybranego pliku
         load.addActionListener(e -> {
-            int result = chooser.showOpenDialog(null);
+            int result = chooser().showOpenDialog(null);
 
             if (result == JFileChooser.APPROVE_OPTION) {
-                String path = chooser.getSelectedFile().getPath();
-
-                try (FileInputStream f = new FileInputStream(path);
-                     ObjectInputStream o = new ObjectInputStream(f)) {
-                    figures = new ArrayList<>();
-
-                    while (true) {
-                        try {
-                            Figure g = (Figure) o.readObject();
-                            figures.add(g);
-                        } catch (EOFException exception) {
-                            break;
-                        }
-                    }
+                startTask(new LoadTask(chooser().getSelectedFile().toPath()), "Wczytywanie figur", options);
+            }
+        });
 
-                    repaint();
-                } catch (IOException | ClassNotFoundException exception) {
-                    exception.printStackTrace();
-                }
+        // Otwiera dokument utworzony poleceniem paginate, z którego wczytywane są tylko widoczne strony.
+        openPaged.addActionListener(e -> {
+            int result = chooser().showOpenDialog(null);
+
+            if (result == JFileChooser.APPROVE_OPTION) openPaged(chooser().getSelectedFile().toPath(), options);
+        });
+    }
+
+    /**
+     * Otwiera dokument stronicowany w miejsce obecnych figur. Obecne figury są usuwane dopiero
+     * po sprawdzeniu pliku i po pytaniu, czy je zapisać. Na czas edycji dokumentu dziennik
+     * przestaje zapisywać zmiany, bo dokument zapisuje je we własnym pliku, więc do jego zamknięcia
+     * dziennik przechowuje figury sprzed otwarcia dokumentu.
+     * @param path ścieżka pliku dokumentu
+     * @param menu menu wyłączane na czas zapisywania obecnych figur
+     */
+
+    private void openPaged(Path path, JMenu menu) {
+        PagedDocument opened;
+
+        try {
+            opened = PagedDocument.open(path, figures);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            JOptionPane.showMessageDialog(this, exception.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        if (!confirmReplace(menu) || !closePaged()) {
+            try {
+                opened.close();
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+
+            return;
+        }
+
+        if (journal != null) figures.removeListener(journal);
+        canvas.reset();
+        figures.clear();
+
+        document = opened;
+        document.attach();
+        canvas.resetViewport();
+        canvas.setDocument(document);
+    }
+
+    /**
+     * Pyta, czy zapisać obecne figury, zanim zastąpi je dokument stronicowany, i zaczyna ich zapis.
+     * Zapisywana jest kopia figur z chwili rozpoczęcia zapisu, więc figury można od razu usunąć.
+     * @param menu menu wyłączane na czas zapisu
+     * @return true jeżeli figury można usunąć, false jeżeli użytkownik zrezygnował
+     */
+
+    private boolean confirmReplace(JMenu menu) {
+        if (document != null || figures.size() == 0) return true;
+
+        int answer = JOptionPane.showConfirmDialog(this, "Zapisać obecne figury przed otwarciem dokumentu?",
+                "Dokument stronicowany", JOptionPane.YES_NO_CANCEL_OPTION);
+
+        if (answer == JOptionPane.NO_OPTION) return true;
+        if (answer != JOptionPane.YES_OPTION) return false;
+        if (chooser().showSaveDialog(null) != JFileChooser.APPROVE_OPTION) return false;
+
+        startTask(new SaveTask(chooser().getSelectedFile().toPath()), "Zapisywanie figur", menu);
+        return true;
+    }
+
+    /**
+     * Zapisuje zmienione strony otwartego dokumentu stronicowanego.
+     */
+
+    private void flushPaged() {
+        try {
+            document.flush();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            JOptionPane.showMessageDialog(this, exception.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Zapisuje i zamyka dokument stronicowany, jeżeli jest otwarty, usuwa jego strony z magazynu
+     * i przywraca zapisywanie zmian w dzienniku. Jeżeli zmienionych stron nie da się zapisać,
+     * dokument pozostaje otwarty, a jego figury w magazynie.
+     * @return true jeżeli żaden dokument stronicowany nie jest już otwarty
+     */
+
+    private boolean closePaged() {
+        if (document == null) return true;
+
+        try {
+            document.flush();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            JOptionPane.showMessageDialog(this, exception.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+
+        canvas.setDocument(null);
+
+        try {
+            document.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+
+        document = null;
+        canvas.reset();
+
+        // Dziennik wraca przed wyczyszczeniem magazynu, więc zamiast figur sprzed otwarcia dokumentu
+        // przechowuje znowu to samo co magazyn.
+        if (journal != null) figures.addListener(journal);
+        figures.clear();
+
+        return true;
+    }
+
+    /**
+     * Zaczyna nagrywać zdarzenia obsługiwane przez główny komponent do danego pliku.
+     * Nagranie jest kończone przy zamknięciu okna.
+     * @param path ścieżka pliku nagrania
+     * @return true jeżeli nagrywanie się rozpoczęło
+     */
+
+    private boolean startRecording(Path path) {
+        try {
+            recorder = InteractionRecorder.create(path, canvas.getWidth(), canvas.getHeight());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            JOptionPane.showMessageDialog(this, exception.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+
+        canvas.setRecorder(recorder);
+        return true;
+    }
+
+    /**
+     * Kończy nagrywanie zdarzeń, jeżeli trwa.
+     */
+
+    private void stopRecording() {
+        if (recorder == null) return;
+
+        canvas.setRecorder(null);
+
+        try {
+            recorder.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+
+        recorder = null;
+    }
+
+    /**
+     * Uruchamia zadanie w tle i wyświetla okno z jego postępem, które pozwala je anulować.
+     * Na czas trwania zadania wyłącza menu opcji, żeby nie uruchomić dwóch zadań naraz.
+     * @param task uruchamiane zadanie
+     * @param message opis zadania wyświetlany w oknie postępu
+     * @param menu menu wyłączane na czas trwania zadania
+     */
+
+    private void startTask(SwingWorker<?, ?> task, String message, JMenu menu) {
+        var monitor = new ProgressMonitor(this, message, null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        menu.setEnabled(false);
+
+        task.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                monitor.setProgress(task.getProgress());
+                if (monitor.isCanceled()) task.cancel(false);
+            } else if (task.isDone()) {
+                monitor.close();
+                menu.setEnabled(true);
             }
         });
+
+        task.execute();
     }
 
     /**
@@ -169,26 +492,23 @@ public class MainFrame extends JFrame {
         // Dodanie akcji do wciśnięcia przycisku info wyświetlającej instrukcje w oknie dialogowym
         instruction.addActionListener(e -> JOptionPane.showMessageDialog(
                     this,
-                    "Żeby utworzyć figurę wybierz ją z menu głównego.",
+                    "Żeby utworzyć figurę wybierz ją z menu głównego.\n"
+                            + "Kilka figur zaznacza się klikając je z wciśniętym klawiszem shift\n"
+                            + "albo przeciągając prostokąt od pustego miejsca.\n"
+                            + "Przesuwane figury są przyciągane do krawędzi i środków innych figur.\n"
+                            + "Ctrl+Z cofa, a ctrl+Y ponawia ostatnią zmianę.\n"
+                            + "Widok przesuwa się przeciągając środkowym przyciskiem myszy,\n"
+                            + "a przybliża kółkiem myszy z wciśniętym klawiszem ctrl.",
                     "Instrukcja użytkowania", JOptionPane.PLAIN_MESSAGE)
         );
     }
 
     /**
-     * Ładuje ustawienia z pliku, a następnie wprowadza je do programu
+     * Wprowadza do programu ustawienia odczytane w tle z pliku.
      */
 
     private void loadSettings() {
-        var node = Preferences.userRoot().node("/Wilk/Marcin/Figury");
-
-        var dimensions = Toolkit.getDefaultToolkit().getScreenSize();
-
-        int windowLeft = node.getInt("left", 0);
-        int windowTop = node.getInt("top", 0);
-        int windowWidth = node.getInt("width", (int) (dimensions.getWidth() / 2));
-        int windowHeight = node.getInt("height", (int) (dimensions.getHeight() / 2));
-
-        setBounds(windowLeft, windowTop, windowWidth, windowHeight);
+        setBounds(startup.bounds());
     }
 
     /**
@@ -199,7 +519,17 @@ public class MainFrame extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                var node = Preferences.userRoot().node("/Wilk/Marcin/Figury");
+                stopRecording();
+
+                if (document != null) {
+                    try {
+                        document.close();
+                    } catch (IOException exception) {
+                        exception.printStackTrace();
+                    }
+                }
+
+                var node = Preferences.userRoot().node(Startup.PREFERENCES);
 
                 node.putInt("left", getX());
                 node.putInt("top", getY());
@@ -214,7 +544,8 @@ public class MainFrame extends JFrame {
      */
 
     private void addComponents() {
-        add(new MainComponent());
+        canvas = new FigureCanvas(figures, index, metrics);
+        add(canvas);
     }
 
     /**
@@ -222,144 +553,150 @@ public class MainFrame extends JFrame {
      */
 
     private void attachKeyboardHandler() {
-        // Zmienia flagę isShiftPressed w zależności od wciśnięcia fizycznego przycisku
-        addKeyListener(new KeyAdapter() {
-            @Override
-            public void keyPressed(KeyEvent e) {
-                if(e.getKeyCode() == KeyEvent.VK_SHIFT && !isShiftPressed) isShiftPressed = true;
-            }
-
-            @Override
-            public void keyReleased(KeyEvent e) {
-                if(e.getKeyCode() == KeyEvent.VK_SHIFT) isShiftPressed = false;
-            }
-        });
+        addKeyListener(canvas.createKeyHandler());
     }
 
     /**
-     * Główny komponent programu rysujący figury i obsługujący funkcjonalności
-     * z nimi związane. Zawiera dwa pola createdFigure, które przechowuje figurę
-     * w momencie jej tworzenia oraz markedFigure, które przechowuje figurę,
-     * która jest zaznaczona.
+     * Zadanie wczytujące figury z pliku w tle. Wczytane figury są przekazywane
+     * do głównego komponentu partiami, więc pojawiają się na ekranie stopniowo.
+     * Obecne figury są usuwane dopiero przy pierwszej wczytanej partii, więc plik,
+     * którego nie da się otworzyć, nie zmienia dokumentu.
      */
 
-    private class MainComponent extends JComponent {
-        private Figure createdFigure;
-        private Figure markedFigure;
+    private class LoadTask extends SwingWorker<Void, int[]> {
+        private static final int BATCH_SIZE = 20_000;
+
+        private final Path path;
+
+        private volatile boolean finished;
+        private boolean replacing;
+        private boolean abandoned;
 
         /**
-         * Tworzy główny komponent, inicjalizuje pola oraz dodaje obsługę myszy
-         * do danego komponentu.
+         * Tworzy zadanie wczytujące figury z danego pliku.
+         * Całe wczytanie jest jednym wpisem historii, więc cofnięcie przywraca poprzednie figury.
+         * @param path ścieżka pliku
          */
 
-        public MainComponent() {
-            markedFigure = null;
-            createdFigure = null;
+        private LoadTask(Path path) {
+            this.path = path;
+            finished = false;
+            replacing = false;
+            abandoned = false;
+        }
+
+        @Override
+        protected Void doInBackground() throws IOException {
+            try (FigureFile.Reader reader = FigureFile.open(path)) {
+                while (!isCancelled()) {
+                    int[] batch = new int[BATCH_SIZE * FigureStore.RECORD_INTS];
+                    int count = reader.read(batch, BATCH_SIZE);
+                    if (count == 0) break;
+
+                    publish(Arrays.copyOf(batch, count * FigureStore.RECORD_INTS));
+                    setProgress((int) (reader.progress() * 100));
+                }
+            }
 
-            attachMouseHandler();
+            finished = true;
+            return null;
+        }
+
+        @Override
+        protected void process(List<int[]> batches) {
+            if (!replace()) return;
+
+            // Dodaje kolejne partie figur na wierzch i odświeża komponent.
+            for (int[] batch : batches) figures.addRecords(batch, batch.length / FigureStore.RECORD_INTS);
+
+            canvas.repaint();
+        }
+
+        @Override
+        protected void done() {
+            // Pusty plik nie przekazuje żadnej partii, więc figury są wtedy usuwane po udanym odczycie.
+            if (finished && !isCancelled()) replace();
+            if (replacing) canvas.getHistory().end();
+
+            reportFailure(this);
         }
 
         /**
-         * Wyświetla wszystkie figury w danym komponencie kolorując je na ich kolory.
-         * @param g obiekt Graphics
+         * Zamyka dokument stronicowany i usuwa obecne figury, zaczynając wpis historii, jeżeli
+         * nie zostało to już zrobione. Jeżeli dokumentu stronicowanego nie da się zapisać,
+         * przerywa wczytywanie.
+         * @return true jeżeli wczytane figury można dodać do magazynu
          */
 
-        @Override
-        protected void paintComponent(Graphics g) {
-            var g2 = (Graphics2D) g;
-
-            // Iteruje po wszystkich figurach, zmienia kolor w zależności od figury,
-            // rysuje figurę, a następnie zmienia kolor z powrotem na czarny.
-            for (Figure f : figures) {
-                g2.setColor(f.getColor());
-                g2.fill(f.getShape());
-                g2.setColor(Color.BLACK);
+        private boolean replace() {
+            if (replacing || abandoned) return replacing;
+
+            if (!closePaged()) {
+                abandoned = true;
+                cancel(false);
+                return false;
             }
+
+            canvas.getHistory().beginReplace();
+            figures.clear();
+            canvas.reset();
+            replacing = true;
+
+            return true;
         }
+    }
+
+    /**
+     * Zadanie zapisujące figury do pliku w tle. Zapisuje kopię figur wykonaną w chwili
+     * utworzenia zadania, więc figury można edytować w trakcie zapisu.
+     */
+
+    private class SaveTask extends SwingWorker<Void, Void> {
+        private final Path path;
+        private final FigureSnapshot snapshot;
 
         /**
-         * Dodaje do komponentu obsługę myszy.
+         * Tworzy zadanie zapisujące obecne figury do danego pliku.
+         * @param path ścieżka pliku
          */
 
-        private void attachMouseHandler() {
-            var mouseHandler = new MouseAdapter() {
-                @Override
-                public void mousePressed(MouseEvent e) {
-                    if (e.getButton() == MouseEvent.BUTTON1) {
-                        int i = 0;
-
-                        // Szuka figury, która została kliknięta, przekazuje ją do zmiennej markedFigure i
-                        // przekazuje do tej figury położenie kursora względem niej.
-                        while (i < figures.size()) {
-                            if (figures.get(i).getShape().contains(e.getPoint())) {
-                                markedFigure = figures.get(i);
-                                markedFigure.setOffset(e.getX(), e.getY());
-                                break;
-                            }
-
-                            i++;
-                        }
-
-                        // Jeżeli nie znajdzie figury to ustawia markedFigure na null.
-                        if (i == figures.size()) markedFigure = null;
-                    } else if(e.getButton() == MouseEvent.BUTTON3) {
-
-                        // Szuka figury, która została kliknięta, a następnie wywołuje okno wyboru koloru,
-                        // z którego pobiera wybrany kolor i przypisuje go danej figurze.
-                        if(markedFigure != null && markedFigure.getShape().contains(e.getPoint())) {
-                            markedFigure.setColor(JColorChooser.showDialog(null, "ASD", Color.RED));
-
-                            repaint();
-                        }
-                    }
-                }
+        private SaveTask(Path path) {
+            this.path = path;
+            snapshot = figures.snapshot();
+        }
 
-                @Override
-                public void mouseReleased(MouseEvent e) {
-                    createdFigure = null;
-                    currentFigure = null;
-                }
+        @Override
+        protected Void doInBackground() throws IOException {
+            FigureFile.save(path, snapshot, progress -> {
+                setProgress((int) (progress * 100));
+                return !isCancelled();
+            });
 
-                @Override
-                public void mouseWheelMoved(MouseWheelEvent e) {
-                    // Skaluje figurę jeśli jest zaznaczona i jeżeli kursor się znajduje w jej obrębie.
-                    if(markedFigure != null && markedFigure.getShape().contains(e.getPoint())) {
-                        markedFigure.scale(e.getWheelRotation());
-                        repaint();
-                    }
-                }
-            };
-
-            addMouseListener(mouseHandler);
-            addMouseWheelListener(mouseHandler);
-            addMouseMotionListener(new MouseMotionAdapter() {
-                @Override
-                public void mouseDragged(MouseEvent e) {
-                    // Jeżeli kursor znajduje się w obrębie zaznaczonej figury przesuwa ją.
-                    if (currentFigure == null && markedFigure != null && markedFigure.getShape().contains(e.getPoint())) {
-                        markedFigure.move(e.getX(), e.getY());
-                        repaint();
-                    } else if (currentFigure != null) {
-                        // Jeżeli została wybrana figura, tworzy ją a następnie skaluje wraz z kursorem.
-                        if(createdFigure == null) {
-                            Figure f = new Figure(currentFigure, e.getX(), e.getY());
-                            createdFigure = f;
-                            figures.add(f);
-                        } else {
-                            Figure f = createdFigure;
-                            f.resize(e.getX(), e.getY(), isShiftPressed);
-                        }
-                        repaint();
-                    }
-                }
+            return null;
+        }
 
-                @Override
-                public void mouseMoved(MouseEvent e) {
-                    // Zmienia kursor na krzyżyk jeżeli została wybrana figura do utworzenia.
-                    if (currentFigure != null) setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
-                    else setCursor(Cursor.getDefaultCursor());
-                }
-            });
+        @Override
+        protected void done() {
+            reportFailure(this);
+        }
+    }
+
+    /**
+     * Wyświetla komunikat, jeżeli zakończone zadanie w tle zgłosiło błąd.
+     * @param task zakończone zadanie
+     */
+
+    private void reportFailure(SwingWorker<?, ?> task) {
+        if (task.isCancelled()) return;
+
+        try {
+            task.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException exception) {
+            exception.getCause().printStackTrace();
+            JOptionPane.showMessageDialog(this, exception.getCause().getMessage(),
+                    "Błąd", JOptionPane.ERROR_MESSAGE);
         }
     }
 }
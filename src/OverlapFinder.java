@@ -0,0 +1,345 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Obiekt OverlapFinder wyszukuje wszystkie pary nachodzących na siebie figur z kopii magazynu.
+ * Figury są sortowane po lewej krawędzi prostokąta, a następnie każda figura jest porównywana
+ * tylko z figurami, których lewa krawędź leży przed jej prawą krawędzią (sweep and prune).
+ * Pary o przecinających się prostokątach są sprawdzane dokładnie: figury są wypukłe, więc wielokąty
+ * są rozdzielane osiami z krawędzi, a koło jest sprowadzane do okręgu jednostkowego przekształceniem,
+ * które zachowuje przecinanie się figur. Figury nachodzą na siebie, jeżeli ich wnętrza mają wspólny
+ * obszar, więc figury stykające się krawędziami nie tworzą pary. Porównywanie jest dzielone na części
+ * po LEAF_SIZE figur wykonywane równolegle w puli ForkJoinPool, a kopia magazynu może być odczytywana
+ * przez wiele wątków, więc figury można w tym czasie edytować.
+ */
+
+public class OverlapFinder {
+    private static final int LEAF_SIZE = 2_048;
+    private static final ShapeKernel[] KERNELS = Arrays.stream(Figures.values()).map(Figures::kernel).toArray(ShapeKernel[]::new);
+    private static final int BISECTION_STEPS = 64;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Tworzy obiekt wyszukujący pary figur we wspólnej puli wątków.
+     */
+
+    public OverlapFinder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tworzy obiekt wyszukujący pary figur w podanej puli wątków.
+     * @param pool pula wątków
+     */
+
+    public OverlapFinder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Wyszukuje wszystkie pary nachodzących na siebie figur.
+     * @param snapshot kopia figur
+     * @return lista par slotów, po dwie liczby na parę, w każdej parze najpierw niżej narysowana figura
+     */
+
+    public IntList find(FigureSnapshot snapshot) {
+        var sweep = new Sweep(snapshot);
+        return pool.invoke(sweep.task(0, sweep.count));
+    }
+
+    /**
+     * Sprawdza, czy dwie figury nachodzą na siebie.
+     * @param snapshot kopia figur
+     * @param a slot pierwszej figury
+     * @param b slot drugiej figury
+     * @return true jeżeli wnętrza figur mają wspólny obszar
+     */
+
+    public static boolean overlaps(FigureSnapshot snapshot, int a, int b) {
+        int ax = snapshot.getX(a);
+        int ay = snapshot.getY(a);
+        int aw = snapshot.getWidth(a);
+        int ah = snapshot.getHeight(a);
+        int bx = snapshot.getX(b);
+        int by = snapshot.getY(b);
+        int bw = snapshot.getWidth(b);
+        int bh = snapshot.getHeight(b);
+
+        if (aw <= 0 || ah <= 0 || bw <= 0 || bh <= 0) return false;
+        if (ax >= bx + bw || bx >= ax + aw || ay >= by + bh || by >= ay + ah) return false;
+
+        return shapesOverlap(snapshot.getType(a), ax, ay, aw, ah, snapshot.getType(b), bx, by, bw, bh, new double[16]);
+    }
+
+    /**
+     * Sprawdza dokładnie, czy figury o przecinających się prostokątach nachodzą na siebie.
+     * @param buffer tablica na co najmniej 16 liczb na wierzchołki wielokątów
+     * @return true jeżeli wnętrza figur mają wspólny obszar
+     */
+
+    private static boolean shapesOverlap(int aType, int ax, int ay, int aw, int ah,
+                                         int bType, int bx, int by, int bw, int bh, double[] buffer) {
+        ShapeKernel aKernel = KERNELS[aType];
+        ShapeKernel bKernel = KERNELS[bType];
+
+        // Prostokąty o przecinających się prostokątach nachodzą na siebie bez dalszych sprawdzeń.
+        if (aKernel.fillsBounds() && bKernel.fillsBounds()) return true;
+
+        int an = aKernel.outline(ax, ay, aw, ah, buffer, 0);
+        int bn = bKernel.outline(bx, by, bw, bh, buffer, 8);
+
+        if (an > 0 && bn > 0) {
+            return !separated(buffer, 0, an, buffer, 8, bn) && !separated(buffer, 8, bn, buffer, 0, an);
+        }
+
+        if (an > 0) return ellipseOverlaps(bx, by, bw, bh, buffer, 0, an);
+        if (bn > 0) return ellipseOverlaps(ax, ay, aw, ah, buffer, 8, bn);
+
+        // Elipsa a staje się okręgiem jednostkowym o środku w początku układu.
+        double rx = aw / 2.0;
+        double ry = ah / 2.0;
+        double ex = (bx + bw / 2.0 - ax - rx) / rx;
+        double ey = (by + bh / 2.0 - ay - ry) / ry;
+
+        return ellipseDistance(ex, ey, bw / 2.0 / rx, bh / 2.0 / ry) < 1;
+    }
+
+    /**
+     * Sprawdza, czy elipsa wpisana w prostokąt nachodzi na wielokąt wypukły, sprowadzając elipsę
+     * do okręgu jednostkowego o środku w początku układu.
+     * @param points tablica z wierzchołkami wielokąta, która zostanie zmieniona
+     * @param offset pozycja pierwszej współrzędnej wielokąta
+     * @param n liczba wierzchołków
+     * @return true jeżeli wnętrza figur mają wspólny obszar
+     */
+
+    private static boolean ellipseOverlaps(int x, int y, int width, int height, double[] points, int offset, int n) {
+        double rx = width / 2.0;
+        double ry = height / 2.0;
+        double cx = x + rx;
+        double cy = y + ry;
+
+        for (int i = 0; i < 2 * n; i += 2) {
+            points[i] = (points[offset + i] - cx) / rx;
+            points[i + 1] = (points[offset + i + 1] - cy) / ry;
+        }
+
+        return polygonDistance(points, n) < 1;
+    }
+
+    /**
+     * Sprawdza, czy któraś krawędź pierwszego wielokąta wypukłego wyznacza oś, na której rzuty
+     * wielokątów nie mają wspólnego odcinka dodatniej długości.
+     * @return true jeżeli wielokąty są rozdzielone
+     */
+
+    private static boolean separated(double[] a, int aOffset, int an, double[] b, int bOffset, int bn) {
+        for (int i = 0; i < an; i++) {
+            int j = (i + 1) % an;
+            double nx = a[aOffset + 2 * j + 1] - a[aOffset + 2 * i + 1];
+            double ny = a[aOffset + 2 * i] - a[aOffset + 2 * j];
+            if (nx == 0 && ny == 0) continue;
+
+            double aMin = Double.POSITIVE_INFINITY;
+            double aMax = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < an; k++) {
+                double p = nx * a[aOffset + 2 * k] + ny * a[aOffset + 2 * k + 1];
+                aMin = Math.min(aMin, p);
+                aMax = Math.max(aMax, p);
+            }
+
+            double bMin = Double.POSITIVE_INFINITY;
+            double bMax = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < bn; k++) {
+                double p = nx * b[bOffset + 2 * k] + ny * b[bOffset + 2 * k + 1];
+                bMin = Math.min(bMin, p);
+                bMax = Math.max(bMax, p);
+            }
+
+            if (aMax <= bMin || bMax <= aMin) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Wylicza odległość początku układu od wielokąta wypukłego.
+     * @param points pary współrzędnych wierzchołków
+     * @param n liczba wierzchołków
+     * @return 0, jeżeli początek układu leży wewnątrz wielokąta, a w przeciwnym razie odległość od najbliższej krawędzi
+     */
+
+    private static double polygonDistance(double[] points, int n) {
+        boolean inside = true;
+        double distance = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            double x0 = points[2 * i];
+            double y0 = points[2 * i + 1];
+            double dx = points[2 * j] - x0;
+            double dy = points[2 * j + 1] - y0;
+
+            // Wierzchołki są uporządkowane zgodnie z ruchem wskazówek zegara przy osi y skierowanej w dół.
+            if (dx * -y0 - dy * -x0 < 0) inside = false;
+
+            double length = dx * dx + dy * dy;
+            double t = length > 0 ? Math.max(0, Math.min(1, -(x0 * dx + y0 * dy) / length)) : 0;
+            distance = Math.min(distance, Math.hypot(x0 + t * dx, y0 + t * dy));
+        }
+
+        return inside ? 0 : distance;
+    }
+
+    /**
+     * Wylicza odległość początku układu od elipsy o osiach równoległych do osi układu.
+     * Najbliższy punkt brzegu elipsy jest szukany bisekcją równania jego parametru.
+     * @param cx współrzędna x środka elipsy
+     * @param cy współrzędna y środka elipsy
+     * @param rx półoś pozioma
+     * @param ry półoś pionowa
+     * @return 0, jeżeli początek układu leży wewnątrz elipsy, a w przeciwnym razie odległość od jej brzegu
+     */
+
+    private static double ellipseDistance(double cx, double cy, double rx, double ry) {
+        double px = Math.abs(cx);
+        double py = Math.abs(cy);
+        if ((px / rx) * (px / rx) + (py / ry) * (py / ry) < 1) return 0;
+
+        // Najbliższy punkt brzegu to (rx² px / (t + rx²), ry² py / (t + ry²)) dla t > 0,
+        // przy którym leży on na elipsie, a lewa strona równania maleje wraz z t.
+        double rx2 = rx * rx;
+        double ry2 = ry * ry;
+        double low = 0;
+        double high = Math.max(rx, ry) * Math.hypot(px, py);
+
+        for (int i = 0; i < BISECTION_STEPS; i++) {
+            double t = (low + high) / 2;
+            double u = rx * px / (t + rx2);
+            double v = ry * py / (t + ry2);
+
+            if (u * u + v * v > 1) low = t;
+            else high = t;
+        }
+
+        double t = (low + high) / 2;
+        return Math.hypot(px - rx2 * px / (t + rx2), py - ry2 * py / (t + ry2));
+    }
+
+    /**
+     * Figury z kopii magazynu posortowane po lewej krawędzi prostokąta, w tablicach ułożonych
+     * w kolejności sortowania, żeby przeglądanie sąsiednich figur czytało pamięć po kolei.
+     * Figury bez rozmiaru są pomijane, bo nie mogą nachodzić na inne.
+     */
+
+    private static class Sweep {
+        private final int count;
+        private final int[] slots;
+        private final int[] types;
+        private final int[] minX;
+        private final int[] maxX;
+        private final int[] minY;
+        private final int[] maxY;
+
+        /**
+         * Sortuje figury z kopii magazynu.
+         * @param snapshot kopia figur
+         */
+
+        private Sweep(FigureSnapshot snapshot) {
+            // Klucz łączy lewą krawędź w starszych bitach ze slotem w młodszych, więc sortowanie
+            // kluczy porządkuje figury po lewej krawędzi, a przy równych krawędziach po slotach.
+            long[] keys = new long[snapshot.size()];
+            int n = 0;
+            for (int slot = 0; slot < snapshot.size(); slot++) {
+                if (snapshot.getWidth(slot) > 0 && snapshot.getHeight(slot) > 0) {
+                    keys[n++] = ((long) snapshot.getX(slot) << 32) | slot;
+                }
+            }
+
+            Arrays.parallelSort(keys, 0, n);
+
+            count = n;
+            slots = new int[n];
+            types = new int[n];
+            minX = new int[n];
+            maxX = new int[n];
+            minY = new int[n];
+            maxY = new int[n];
+
+            for (int i = 0; i < n; i++) {
+                int slot = (int) keys[i];
+
+                slots[i] = slot;
+                types[i] = snapshot.getType(slot);
+                minX[i] = snapshot.getX(slot);
+                maxX[i] = minX[i] + snapshot.getWidth(slot);
+                minY[i] = snapshot.getY(slot);
+                maxY[i] = minY[i] + snapshot.getHeight(slot);
+            }
+        }
+
+        /**
+         * Tworzy zadanie porównujące figury z części posortowanej tablicy z figurami leżącymi za nimi.
+         * @param first pierwsza figura części
+         * @param last figura za ostatnią figurą części
+         * @return zadanie zwracające listę par slotów
+         */
+
+        private RecursiveTask<IntList> task(int first, int last) {
+            return new RecursiveTask<>() {
+                @Override
+                protected IntList compute() {
+                    if (last - first > LEAF_SIZE) {
+                        int middle = (first + last) >>> 1;
+                        RecursiveTask<IntList> left = task(first, middle);
+                        RecursiveTask<IntList> right = task(middle, last);
+
+                        invokeAll(left, right);
+
+                        IntList pairs = left.join();
+                        IntList other = right.join();
+                        for (int i = 0; i < other.size(); i++) pairs.add(other.get(i));
+
+                        return pairs;
+                    }
+
+                    return sweep(first, last);
+                }
+            };
+        }
+
+        /**
+         * Porównuje każdą figurę z części z figurami za nią w kolejności sortowania, dopóki
+         * ich lewa krawędź leży przed prawą krawędzią tej figury.
+         * @param first pierwsza figura części
+         * @param last figura za ostatnią figurą części
+         * @return lista par slotów
+         */
+
+        private IntList sweep(int first, int last) {
+            var pairs = new IntList();
+            double[] buffer = new double[16];
+
+            for (int i = first; i < last; i++) {
+                int right = maxX[i];
+                int top = minY[i];
+                int bottom = maxY[i];
+
+                for (int j = i + 1; j < count && minX[j] < right; j++) {
+                    if (minY[j] >= bottom || maxY[j] <= top) continue;
+
+                    if (shapesOverlap(types[i], minX[i], top, right - minX[i], bottom - top,
+                            types[j], minX[j], minY[j], maxX[j] - minX[j], maxY[j] - minY[j], buffer)) {
+                        pairs.add(Math.min(slots[i], slots[j]));
+                        pairs.add(Math.max(slots[i], slots[j]));
+                    }
+                }
+            }
+
+            return pairs;
+        }
+    }
+}
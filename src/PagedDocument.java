@@ -0,0 +1,850 @@
+import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Obiekt PagedDocument otwiera dokument stronicowany, który może być większy od pamięci programu.
+ * Plik dokumentu zaczyna się nagłówkiem z sygnaturą, wersją, liczbą stron, rozmiarem rekordu,
+ * położeniem katalogu stron i następnym numerem kolejności rysowania. Po nim leżą strony, czyli ciągi
+ * rekordów figur blisko siebie w dokumencie, a na końcu katalog z położeniem, pojemnością,
+ * liczbą figur i prostokątem każdej strony. Rekord ma pola rekordu FigureFile oraz numer kolejności
+ * rysowania figury w całym dokumencie. Plik stronicowany tworzy metoda create ze zwykłego pliku figur
+ * bez wczytywania go do pamięci.
+ * <p>
+ * Magazyn figur zawiera tylko strony przecinające widoczny obszar i strony z zaznaczonymi figurami,
+ * a także ostatnio używane strony, dopóki mieszczą się w MAX_RESIDENT figurach, które można zmienić
+ * właściwością figury.residentFigures. Gdy potrzebna strona nie jest w magazynie, najdawniej używane
+ * strony są usuwane, a magazyn jest wypełniany od nowa figurami wszystkich stron w kolejności
+ * rysowania. Zmiana figur oznacza jej stronę jako zmienioną, a zmienione strony są zapisywane
+ * z powrotem do pliku przy usuwaniu z magazynu i w metodzie flush. Nowe figury trafiają na osobną
+ * stronę dopisywaną na końcu pliku. Zapis nie jest odporny na awarię w jego trakcie.
+ * Metody należy wywoływać z wątku obsługi zdarzeń, a magazyn może zmieniać tylko ten obiekt
+ * i obsługa edycji, aż do zamknięcia dokumentu.
+ */
+
+public class PagedDocument implements FigureStore.Listener, Closeable {
+    public static final int MAGIC = 0x46494750;
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_INTS = FigureStore.RECORD_INTS + 1;
+    public static final int RECORD_SIZE = RECORD_INTS * Integer.BYTES;
+    public static final int PAGE_FIGURES = Integer.getInteger("figury.pageFigures", 4_096);
+    public static final int MAX_RESIDENT = Integer.getInteger("figury.residentFigures", 1 << 20);
+
+    private static final int ENTRY_SIZE = 32;
+    private static final int MAX_GRID_BITS = 11;
+    private static final int BATCH_SIZE = 1 << 14;
+    private static final long SEGMENT_RECORDS = (1L << 30) / RECORD_SIZE;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final FigureStore store;
+    private final LinkedHashMap<Integer, Page> resident;
+
+    private int pageCount;
+    private long[] offsets;
+    private int[] capacities;
+    private int[] counts;
+    private int[] minX;
+    private int[] minY;
+    private int[] maxX;
+    private int[] maxY;
+    private long end;
+    private int nextSequence;
+
+    private int[] slotPages;
+    private int[] slotIndexes;
+    private int additions;
+    private boolean rebuilding;
+
+    /**
+     * Tworzy obiekt dokumentu z odczytanego katalogu stron.
+     * @param path ścieżka pliku
+     * @param channel kanał otwartego pliku
+     * @param store pusty magazyn figur
+     */
+
+    private PagedDocument(Path path, FileChannel channel, FigureStore store) {
+        this.path = path;
+        this.channel = channel;
+        this.store = store;
+        resident = new LinkedHashMap<>(16, 0.75f, true);
+
+        slotPages = new int[16];
+        slotIndexes = new int[16];
+        additions = -1;
+        rebuilding = false;
+    }
+
+    /**
+     * Tworzy plik stronicowany ze zwykłego pliku figur. Figury są przydzielane do komórek siatki
+     * według środków ich prostokątów, komórki są układane wzdłuż krzywej Z, a kolejne PAGE_FIGURES
+     * figur w tym porządku tworzy stronę. Plik źródłowy jest czytany trzy razy, a rekordy są zapisywane
+     * od razu na swoje miejsce w zmapowanym pliku docelowym, więc pamięć programu zależy tylko
+     * od liczby komórek siatki, a nie od liczby figur.
+     * @param source zwykły plik figur
+     * @param target plik stronicowany
+     * @param pageFigures liczba figur na stronie
+     * @return liczba stron
+     * @throws IOException jeżeli odczyt lub zapis się nie powiedzie
+     */
+
+    public static int create(Path source, Path target, int pageFigures) throws IOException {
+        if (pageFigures < 1) throw new IllegalArgumentException("Błąd: strona musi mieścić co najmniej jedną figurę");
+
+        int[] records = new int[BATCH_SIZE * FigureStore.RECORD_INTS];
+        int count;
+
+        // Pierwszy odczyt wyznacza liczbę figur i zakres ich środków.
+        long size = 0;
+        long left = Long.MAX_VALUE;
+        long top = Long.MAX_VALUE;
+        long right = Long.MIN_VALUE;
+        long bottom = Long.MIN_VALUE;
+
+        try (FigureFile.Reader reader = FigureFile.open(source)) {
+            while ((count = reader.read(records, BATCH_SIZE)) > 0) {
+                for (int r = 0; r < count * FigureStore.RECORD_INTS; r += FigureStore.RECORD_INTS) {
+                    long cx = centerX(records, r);
+                    long cy = centerY(records, r);
+
+                    left = Math.min(left, cx);
+                    top = Math.min(top, cy);
+                    right = Math.max(right, cx);
+                    bottom = Math.max(bottom, cy);
+                }
+                size += count;
+            }
+        }
+
+        if (size > Integer.MAX_VALUE) throw new IOException("Zbyt wiele figur: " + size);
+
+        // Komórek jest około czterech na stronę, żeby strony obejmowały zwarte obszary dokumentu.
+        int bits = 0;
+        while (bits < MAX_GRID_BITS && (1L << (2 * bits)) < 4 * size / pageFigures) bits++;
+
+        var grid = new Grid(bits, left, top, right, bottom);
+        int[] starts = new int[1 << (2 * bits)];
+
+        // Drugi odczyt liczy figury w komórkach, z których wynika położenie pierwszej figury każdej komórki.
+        try (FigureFile.Reader reader = FigureFile.open(source)) {
+            while ((count = reader.read(records, BATCH_SIZE)) > 0) {
+                for (int r = 0; r < count * FigureStore.RECORD_INTS; r += FigureStore.RECORD_INTS) {
+                    starts[grid.cell(centerX(records, r), centerY(records, r))]++;
+                }
+            }
+        }
+
+        for (int cell = 0, position = 0; cell < starts.length; cell++) {
+            int cellSize = starts[cell];
+            starts[cell] = position;
+            position += cellSize;
+        }
+
+        int pages = (int) ((size + pageFigures - 1) / pageFigures);
+        long recordsEnd = HEADER_SIZE + size * RECORD_SIZE;
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean finished = false;
+
+        try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Rekordy są mapowane odcinkami, bo jeden bufor nie może przekroczyć 2 GB.
+            var segments = new MappedByteBuffer[(int) ((size + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+            for (int s = 0; s < segments.length; s++) {
+                long first = s * SEGMENT_RECORDS;
+                long length = Math.min(SEGMENT_RECORDS, size - first) * RECORD_SIZE;
+                segments[s] = output.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * RECORD_SIZE, length);
+            }
+
+            // Trzeci odczyt zapisuje każdą figurę na kolejne miejsce jej komórki.
+            try (FigureFile.Reader reader = FigureFile.open(source)) {
+                int sequence = 0;
+
+                while ((count = reader.read(records, BATCH_SIZE)) > 0) {
+                    for (int r = 0; r < count * FigureStore.RECORD_INTS; r += FigureStore.RECORD_INTS, sequence++) {
+                        int position = starts[grid.cell(centerX(records, r), centerY(records, r))]++;
+                        MappedByteBuffer segment = segments[(int) (position / SEGMENT_RECORDS)];
+                        int offset = (int) (position % SEGMENT_RECORDS) * RECORD_SIZE;
+
+                        for (int field = 0; field < FigureStore.RECORD_INTS; field++) {
+                            segment.putInt(offset + field * Integer.BYTES, records[r + field]);
+                        }
+                        segment.putInt(offset + FigureStore.RECORD_INTS * Integer.BYTES, sequence);
+                    }
+                }
+            }
+
+            // Katalog stron z prostokątami obejmującymi figury każdej strony.
+            ByteBuffer directory = ByteBuffer.allocate(pages * ENTRY_SIZE);
+            for (int page = 0; page < pages; page++) {
+                long first = (long) page * pageFigures;
+                int pageSize = (int) Math.min(pageFigures, size - first);
+                int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+
+                for (long position = first; position < first + pageSize; position++) {
+                    MappedByteBuffer segment = segments[(int) (position / SEGMENT_RECORDS)];
+                    int offset = (int) (position % SEGMENT_RECORDS) * RECORD_SIZE;
+                    int x = segment.getInt(offset + Integer.BYTES);
+                    int y = segment.getInt(offset + 2 * Integer.BYTES);
+
+                    include(bounds, x, y, segment.getInt(offset + 3 * Integer.BYTES), segment.getInt(offset + 4 * Integer.BYTES));
+                }
+
+                directory.putLong(HEADER_SIZE + first * RECORD_SIZE).putInt(pageSize).putInt(pageSize);
+                directory.putInt(bounds[0]).putInt(bounds[1]).putInt(bounds[2]).putInt(bounds[3]);
+            }
+
+            for (MappedByteBuffer segment : segments) segment.force();
+
+            write(output, directory.flip(), recordsEnd);
+            write(output, header(pages, recordsEnd, (int) size), 0);
+            output.force(true);
+            finished = true;
+        } finally {
+            if (!finished) Files.deleteIfExists(temporary);
+        }
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return pages;
+    }
+
+    /**
+     * Sprawdza, czy plik jest plikiem stronicowanym.
+     * @param path ścieżka pliku
+     * @return true jeżeli plik zaczyna się sygnaturą pliku stronicowanego
+     * @throws IOException jeżeli odczyt się nie powiedzie
+     */
+
+    public static boolean isPaged(Path path) throws IOException {
+        try (FileChannel input = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            return input.read(magic, 0) == Integer.BYTES && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Otwiera plik stronicowany i sprawdza jego nagłówek i katalog stron, nie zmieniając magazynu figur.
+     * Dokument zaczyna korzystać z magazynu dopiero po wywołaniu attach, więc obecne figury można
+     * usunąć dopiero wtedy, gdy wiadomo, że plik da się otworzyć.
+     * @param path ścieżka pliku
+     * @param store magazyn figur, do którego będą wczytywane strony
+     * @return otwarty dokument
+     * @throws IOException jeżeli odczyt się nie powiedzie albo plik jest uszkodzony
+     */
+
+    public static PagedDocument open(Path path, FigureStore store) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            read(channel, header, 0);
+
+            int pages = header.getInt(8);
+            long directoryOffset = header.getLong(16);
+
+            if (header.getInt(0) != MAGIC) throw new IOException("Nieznany format pliku: " + path);
+            if (header.getInt(4) != VERSION || header.getInt(12) != RECORD_SIZE)
+                throw new IOException("Nieobsługiwana wersja pliku: " + header.getInt(4));
+            if (pages < 0 || directoryOffset < HEADER_SIZE || channel.size() < directoryOffset + (long) pages * ENTRY_SIZE)
+                throw new IOException("Plik jest niekompletny: " + path);
+
+            var document = new PagedDocument(path, channel, store);
+            document.readDirectory(pages, directoryOffset, header.getInt(24));
+
+            return document;
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Zaczyna edycję dokumentu w magazynie figur, który musi być wtedy pusty. Strony są wczytywane
+     * do magazynu dopiero przez metodę show.
+     */
+
+    public void attach() {
+        if (store.size() > 0) throw new IllegalArgumentException("Magazyn figur nie jest pusty");
+        store.addListener(this);
+    }
+
+    /**
+     * Zwraca liczbę figur w całym dokumencie.
+     * @return liczba figur
+     */
+
+    public long size() {
+        long size = 0;
+        for (int page = 0; page < pageCount; page++) size += counts[page];
+
+        return size;
+    }
+
+    /**
+     * Wczytuje do magazynu strony przecinające obszar dokumentu i strony z podanymi figurami.
+     * Jeżeli wszystkie są już w magazynie, magazyn się nie zmienia. W przeciwnym razie magazyn jest
+     * wypełniany od nowa, więc sloty figur się zmieniają, a sloty podanych figur są zastępowane
+     * ich nowymi slotami. Stron przecinających obszar jest wczytywanych najwyżej tyle, ile mieści
+     * się w MAX_RESIDENT figurach.
+     * @param area obszar dokumentu
+     * @param pinned sloty figur, których strony mają pozostać w magazynie
+     * @return true jeżeli magazyn został wypełniony od nowa
+     * @throws IOException jeżeli odczyt lub zapis strony się nie powiedzie
+     */
+
+    public boolean show(Rectangle2D area, int[] pinned) throws IOException {
+        var needed = new IntList();
+        var chosen = new boolean[pageCount];
+        int figures = 0;
+
+        // Strona z nowymi figurami i strony zaznaczonych figur są potrzebne niezależnie od obszaru.
+        if (additions >= 0) {
+            needed.add(additions);
+            chosen[additions] = true;
+            figures += counts[additions];
+        }
+
+        for (int slot : pinned) {
+            int page = slotPages[slot];
+            if (chosen[page]) continue;
+
+            needed.add(page);
+            chosen[page] = true;
+            figures += counts[page];
+        }
+
+        for (int page = 0; page < pageCount; page++) {
+            if (chosen[page] || counts[page] == 0 || figures + counts[page] > MAX_RESIDENT) continue;
+            if (area.getMaxX() <= minX[page] || area.getX() >= maxX[page]
+                    || area.getMaxY() <= minY[page] || area.getY() >= maxY[page]) continue;
+
+            needed.add(page);
+            chosen[page] = true;
+            figures += counts[page];
+        }
+
+        boolean missing = false;
+        for (int i = 0; i < needed.size(); i++) {
+            // Odczyt z mapy przesuwa stronę na koniec kolejności używania.
+            if (resident.get(needed.get(i)) == null) missing = true;
+        }
+
+        if (!missing) return false;
+
+        rebuild(needed, chosen, figures, pinned);
+        return true;
+    }
+
+    /**
+     * Zapisuje do pliku wszystkie zmienione strony, katalog stron i nagłówek.
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    public void flush() throws IOException {
+        for (Page page : resident.values()) {
+            if (page.dirty) writeBack(page);
+        }
+
+        ByteBuffer directory = ByteBuffer.allocate(pageCount * ENTRY_SIZE);
+        for (int page = 0; page < pageCount; page++) {
+            directory.putLong(offsets[page]).putInt(capacities[page]).putInt(counts[page]);
+            directory.putInt(minX[page]).putInt(minY[page]).putInt(maxX[page]).putInt(maxY[page]);
+        }
+
+        write(channel, directory.flip(), end);
+        write(channel, header(pageCount, end, nextSequence), 0);
+        channel.truncate(end + (long) pageCount * ENTRY_SIZE);
+        channel.force(true);
+    }
+
+    /**
+     * Zapisuje zmiany, przestaje obserwować magazyn i zamyka plik. Figury pozostają w magazynie.
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            store.removeListener(this);
+            channel.close();
+        }
+    }
+
+    /**
+     * Zwraca ścieżkę pliku dokumentu.
+     * @return ścieżka pliku
+     */
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Dopisuje nową figurę do strony z nowymi figurami, zaczynając nową stronę, gdy poprzednia jest pełna.
+     * @param slot slot dodanej figury
+     */
+
+    @Override
+    public void figureAdded(int slot) {
+        if (rebuilding) return;
+
+        if (additions < 0 || counts[additions] == capacities[additions]) {
+            additions = allocate();
+            resident.put(additions, new Page(additions, new int[PAGE_FIGURES], new int[PAGE_FIGURES]));
+        }
+
+        Page page = resident.get(additions);
+        int index = counts[additions]++;
+
+        page.slots[index] = slot;
+        page.sequences[index] = nextSequence++;
+        page.dirty = true;
+
+        locate(slot, additions, index);
+        include(additions, slot);
+    }
+
+    /**
+     * Oznacza stronę zmienionej figury jako zmienioną.
+     * @param slot slot zmienionej figury
+     */
+
+    @Override
+    public void figureChanged(int slot) {
+        if (rebuilding) return;
+
+        Page page = resident.get(slotPages[slot]);
+        page.dirty = true;
+        include(page.page, slot);
+    }
+
+    /**
+     * Usuwa ze stron figury usunięte z wierzchu magazynu, przenosząc na ich miejsce ostatnią figurę strony.
+     * @param from slot pierwszej usuniętej figury
+     * @param to slot za ostatnią usuniętą figurą
+     */
+
+    @Override
+    public void figuresRemoved(int from, int to) {
+        for (int slot = to - 1; slot >= from; slot--) {
+            int number = slotPages[slot];
+            Page page = resident.get(number);
+            int index = slotIndexes[slot];
+            int last = --counts[number];
+
+            page.slots[index] = page.slots[last];
+            page.sequences[index] = page.sequences[last];
+            slotIndexes[page.slots[index]] = index;
+            page.dirty = true;
+        }
+    }
+
+    /**
+     * Zapomina strony w magazynie, jeżeli magazyn został wyczyszczony poza tym obiektem.
+     * Zmiany stron, które nie zostały jeszcze zapisane, przepadają.
+     */
+
+    @Override
+    public void cleared() {
+        if (rebuilding) return;
+
+        resident.clear();
+        additions = -1;
+    }
+
+    /**
+     * Wypełnia magazyn od nowa figurami potrzebnych stron i najpóźniej używanych stron, które się
+     * zmieszczą, w kolejności rysowania. Strony usuwane z magazynu są najpierw zapisywane do pliku.
+     * @param needed potrzebne strony
+     * @param chosen strony wybrane do magazynu, uzupełniane o zachowane strony
+     * @param figures liczba figur potrzebnych stron
+     * @param pinned sloty figur do zastąpienia nowymi slotami
+     * @throws IOException jeżeli odczyt lub zapis strony się nie powiedzie
+     */
+
+    private void rebuild(IntList needed, boolean[] chosen, int figures, int[] pinned) throws IOException {
+        // Zachowuje najpóźniej używane strony, które mieszczą się obok potrzebnych.
+        var kept = new ArrayList<Page>(resident.values());
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            int page = kept.get(i).page;
+            if (!chosen[page] && figures + counts[page] <= MAX_RESIDENT) {
+                needed.add(page);
+                chosen[page] = true;
+                figures += counts[page];
+            }
+        }
+
+        for (Page page : kept) {
+            if (!chosen[page.page] && page.dirty) writeBack(page);
+        }
+
+        // Zapamiętuje strony i pozycje figur, których sloty trzeba zastąpić.
+        int[] pinnedPages = new int[pinned.length];
+        int[] pinnedIndexes = new int[pinned.length];
+        for (int i = 0; i < pinned.length; i++) {
+            pinnedPages[i] = slotPages[pinned[i]];
+            pinnedIndexes[i] = slotIndexes[pinned[i]];
+        }
+
+        // Zbiera rekordy wszystkich stron: zachowane z magazynu, a pozostałe z pliku.
+        int[] records = new int[figures * RECORD_INTS];
+        int[] pages = new int[figures];
+        int[] indexes = new int[figures];
+        var next = new LinkedHashMap<Integer, Page>(16, 0.75f, true);
+        int total = 0;
+
+        for (int i = 0; i < needed.size(); i++) {
+            int number = needed.get(i);
+            int count = counts[number];
+            Page page = resident.get(number);
+
+            if (page != null) {
+                for (int k = 0; k < count; k++) {
+                    int slot = page.slots[k];
+                    int r = (total + k) * RECORD_INTS;
+
+                    records[r] = store.getType(slot);
+                    records[r + 1] = store.getX(slot);
+                    records[r + 2] = store.getY(slot);
+                    records[r + 3] = store.getWidth(slot);
+                    records[r + 4] = store.getHeight(slot);
+                    records[r + 5] = store.getColor(slot);
+                    records[r + 6] = page.sequences[k];
+                }
+            } else {
+                readPage(number, records, total * RECORD_INTS);
+
+                int capacity = number == additions ? PAGE_FIGURES : count;
+                page = new Page(number, new int[capacity], new int[capacity]);
+                for (int k = 0; k < count; k++) page.sequences[k] = records[(total + k) * RECORD_INTS + 6];
+            }
+
+            for (int k = 0; k < count; k++) {
+                pages[total + k] = number;
+                indexes[total + k] = k;
+            }
+
+            next.put(number, page);
+            total += count;
+        }
+
+        // Klucz łączy numer kolejności rysowania ze starszych bitów z numerem rekordu w młodszych.
+        long[] keys = new long[total];
+        for (int i = 0; i < total; i++) keys[i] = (long) records[i * RECORD_INTS + 6] << 32 | i;
+        Arrays.sort(keys);
+
+        rebuilding = true;
+        try {
+            store.clear();
+
+            int[] batch = new int[Math.min(Math.max(total, 1), BATCH_SIZE) * FigureStore.RECORD_INTS];
+            for (int first = 0; first < total; first += BATCH_SIZE) {
+                int count = Math.min(BATCH_SIZE, total - first);
+
+                for (int i = 0; i < count; i++) {
+                    int record = (int) keys[first + i];
+                    int slot = first + i;
+
+                    System.arraycopy(records, record * RECORD_INTS, batch, i * FigureStore.RECORD_INTS, FigureStore.RECORD_INTS);
+                    ensureCapacity(slot + 1);
+                    locate(slot, pages[record], indexes[record]);
+                    next.get(pages[record]).slots[indexes[record]] = slot;
+                }
+
+                store.addRecords(batch, count);
+            }
+        } finally {
+            rebuilding = false;
+        }
+
+        resident.clear();
+        resident.putAll(next);
+
+        for (int i = 0; i < pinned.length; i++) pinned[i] = resident.get(pinnedPages[i]).slots[pinnedIndexes[i]];
+    }
+
+    /**
+     * Zapisuje figury strony z magazynu do pliku i wylicza od nowa prostokąt strony.
+     * @param page strona
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    private void writeBack(Page page) throws IOException {
+        int count = counts[page.page];
+        ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+        IntBuffer ints = buffer.asIntBuffer();
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+
+        for (int k = 0; k < count; k++) {
+            int slot = page.slots[k];
+
+            ints.put(store.getType(slot)).put(store.getX(slot)).put(store.getY(slot)).put(store.getWidth(slot))
+                    .put(store.getHeight(slot)).put(store.getColor(slot)).put(page.sequences[k]);
+            include(bounds, store.getX(slot), store.getY(slot), store.getWidth(slot), store.getHeight(slot));
+        }
+
+        write(channel, buffer, offsets[page.page]);
+
+        minX[page.page] = bounds[0];
+        minY[page.page] = bounds[1];
+        maxX[page.page] = bounds[2];
+        maxY[page.page] = bounds[3];
+        page.dirty = false;
+    }
+
+    /**
+     * Odczytuje rekordy strony z pliku.
+     * @param page numer strony
+     * @param records tablica, do której zostaną zapisane rekordy
+     * @param offset pozycja pierwszego rekordu w tablicy
+     * @throws IOException jeżeli odczyt się nie powiedzie
+     */
+
+    private void readPage(int page, int[] records, int offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(counts[page] * RECORD_SIZE);
+        read(channel, buffer, offsets[page]);
+        buffer.asIntBuffer().get(records, offset, counts[page] * RECORD_INTS);
+
+        int types = Figures.values().length;
+        for (int r = offset; r < offset + counts[page] * RECORD_INTS; r += RECORD_INTS) {
+            if (records[r] < 0 || records[r] >= types) throw new IOException("Nieznana figura na stronie " + page);
+        }
+    }
+
+    /**
+     * Odczytuje katalog stron.
+     * @param pages liczba stron
+     * @param directoryOffset położenie katalogu w pliku
+     * @param sequence następny numer kolejności rysowania
+     * @throws IOException jeżeli odczyt się nie powiedzie albo katalog jest uszkodzony
+     */
+
+    private void readDirectory(int pages, long directoryOffset, int sequence) throws IOException {
+        ByteBuffer directory = ByteBuffer.allocate(pages * ENTRY_SIZE);
+        read(channel, directory, directoryOffset);
+
+        pageCount = pages;
+        offsets = new long[Math.max(pages, 1)];
+        capacities = new int[offsets.length];
+        counts = new int[offsets.length];
+        minX = new int[offsets.length];
+        minY = new int[offsets.length];
+        maxX = new int[offsets.length];
+        maxY = new int[offsets.length];
+        end = directoryOffset;
+        nextSequence = sequence;
+
+        for (int page = 0; page < pages; page++) {
+            offsets[page] = directory.getLong();
+            capacities[page] = directory.getInt();
+            counts[page] = directory.getInt();
+            minX[page] = directory.getInt();
+            minY[page] = directory.getInt();
+            maxX[page] = directory.getInt();
+            maxY[page] = directory.getInt();
+
+            if (counts[page] < 0 || counts[page] > capacities[page] || offsets[page] < HEADER_SIZE
+                    || offsets[page] + (long) capacities[page] * RECORD_SIZE > directoryOffset)
+                throw new IOException("Uszkodzony katalog stron: " + path);
+        }
+    }
+
+    /**
+     * Przydziela nową pustą stronę o pojemności PAGE_FIGURES figur na końcu obszaru stron.
+     * Katalog stron jest przesuwany za nią przy następnym zapisie.
+     * @return numer strony
+     */
+
+    private int allocate() {
+        if (pageCount == offsets.length) {
+            int capacity = offsets.length * 2;
+
+            offsets = Arrays.copyOf(offsets, capacity);
+            capacities = Arrays.copyOf(capacities, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            minX = Arrays.copyOf(minX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+        }
+
+        int page = pageCount++;
+        offsets[page] = end;
+        capacities[page] = PAGE_FIGURES;
+        counts[page] = 0;
+        minX[page] = Integer.MAX_VALUE;
+        minY[page] = Integer.MAX_VALUE;
+        maxX[page] = Integer.MIN_VALUE;
+        maxY[page] = Integer.MIN_VALUE;
+        end += (long) PAGE_FIGURES * RECORD_SIZE;
+
+        return page;
+    }
+
+    /**
+     * Zapisuje stronę i pozycję figury w magazynie.
+     * @param slot slot figury
+     * @param page numer strony
+     * @param index pozycja figury na stronie
+     */
+
+    private void locate(int slot, int page, int index) {
+        ensureCapacity(slot + 1);
+        slotPages[slot] = page;
+        slotIndexes[slot] = index;
+    }
+
+    /**
+     * Poszerza prostokąt strony o prostokąt figury.
+     * @param page numer strony
+     * @param slot slot figury
+     */
+
+    private void include(int page, int slot) {
+        minX[page] = Math.min(minX[page], store.getX(slot));
+        minY[page] = Math.min(minY[page], store.getY(slot));
+        maxX[page] = Math.max(maxX[page], store.getX(slot) + store.getWidth(slot));
+        maxY[page] = Math.max(maxY[page], store.getY(slot) + store.getHeight(slot));
+    }
+
+    /**
+     * Zapewnia miejsce na strony i pozycje danej liczby figur w magazynie.
+     * @param capacity wymagana liczba figur
+     */
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= slotPages.length) return;
+
+        int length = Math.max(capacity, slotPages.length * 2);
+        slotPages = Arrays.copyOf(slotPages, length);
+        slotIndexes = Arrays.copyOf(slotIndexes, length);
+    }
+
+    /**
+     * Poszerza prostokąt {minX, minY, maxX, maxY} o prostokąt figury.
+     */
+
+    private static void include(int[] bounds, int x, int y, int width, int height) {
+        bounds[0] = Math.min(bounds[0], x);
+        bounds[1] = Math.min(bounds[1], y);
+        bounds[2] = Math.max(bounds[2], x + width);
+        bounds[3] = Math.max(bounds[3], y + height);
+    }
+
+    /**
+     * Zwraca współrzędną x środka prostokąta figury z rekordu.
+     */
+
+    private static long centerX(int[] records, int r) {
+        return records[r + 1] + (long) records[r + 3] / 2;
+    }
+
+    /**
+     * Zwraca współrzędną y środka prostokąta figury z rekordu.
+     */
+
+    private static long centerY(int[] records, int r) {
+        return records[r + 2] + (long) records[r + 4] / 2;
+    }
+
+    /**
+     * Tworzy nagłówek pliku.
+     * @param pages liczba stron
+     * @param directoryOffset położenie katalogu stron
+     * @param sequence następny numer kolejności rysowania
+     * @return bufor z nagłówkiem gotowy do zapisu
+     */
+
+    private static ByteBuffer header(int pages, long directoryOffset, int sequence) {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(pages).putInt(RECORD_SIZE)
+                .putLong(directoryOffset).putInt(sequence).putInt(0).flip();
+    }
+
+    /**
+     * Zapisuje cały bufor do kanału od podanego położenia.
+     */
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    /**
+     * Wypełnia cały bufor danymi z kanału od podanego położenia i przygotowuje go do odczytu.
+     */
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Plik jest niekompletny");
+            position += read;
+        }
+
+        buffer.flip();
+    }
+
+    /**
+     * Strona w magazynie: sloty jej figur i ich numery kolejności rysowania.
+     */
+
+    private static class Page {
+        private final int page;
+        private final int[] slots;
+        private final int[] sequences;
+        private boolean dirty;
+
+        private Page(int page, int[] slots, int[] sequences) {
+            this.page = page;
+            this.slots = slots;
+            this.sequences = sequences;
+            dirty = false;
+        }
+    }
+
+    /**
+     * Siatka komórek o boku 2^bits komórek rozpięta na zakresie środków figur. Numer komórki
+     * przeplata bity jej kolumny i wiersza, więc kolejne numery leżą wzdłuż krzywej Z.
+     */
+
+    private static class Grid {
+        private final int bits;
+        private final long left;
+        private final long top;
+        private final double scaleX;
+        private final double scaleY;
+
+        private Grid(int bits, long left, long top, long right, long bottom) {
+            this.bits = bits;
+            this.left = left;
+            this.top = top;
+            scaleX = (double) (1 << bits) / Math.max(1, right - left + 1);
+            scaleY = (double) (1 << bits) / Math.max(1, bottom - top + 1);
+        }
+
+        private int cell(long x, long y) {
+            int column = (int) Math.min((1 << bits) - 1, (x - left) * scaleX);
+            int row = (int) Math.min((1 << bits) - 1, (y - top) * scaleY);
+
+            int code = 0;
+            for (int bit = 0; bit < bits; bit++) {
+                code |= ((column >>> bit) & 1) << (2 * bit);
+                code |= ((row >>> bit) & 1) << (2 * bit + 1);
+            }
+
+            return code;
+        }
+    }
+}
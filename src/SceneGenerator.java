@@ -0,0 +1,134 @@
+import java.util.Random;
+
+/**
+ * Obiekt SceneGenerator tworzy dokumenty do testów obciążeniowych: po tyle samo figur każdego
+ * rodzaju z Figures, o losowych wymiarach, położeniach i kolorach. Wymiary figur są losowane
+ * z przedziału od minSize do maxSize równomiernie albo logarytmicznie, czyli z przewagą małych figur.
+ * Wymiary dokumentu są dobierane tak, by średnio każdy punkt był przykryty przez overlap figur,
+ * a figury są rozrzucone równomiernie po dokumencie albo skupione wokół podanej liczby środków,
+ * gdzie nachodzą na siebie znacznie bardziej niż średnio. Ten sam zarodek daje zawsze ten sam dokument.
+ */
+
+public class SceneGenerator {
+    /**
+     * Rozkład wymiarów figur.
+     */
+
+    public enum Sizes {
+        UNIFORM,
+        LOG
+    }
+
+    private static final Figures[] NAMES = Figures.values();
+    private static final int BATCH_SIZE = 20_000;
+
+    private final int count;
+    private final int minSize;
+    private final int maxSize;
+    private final Sizes sizes;
+    private final double overlap;
+    private final int clusters;
+    private final long seed;
+
+    /**
+     * Tworzy generator dokumentów o podanych parametrach.
+     * @param count liczba figur każdego rodzaju
+     * @param minSize najmniejsza szerokość i wysokość figury
+     * @param maxSize największa szerokość i wysokość figury
+     * @param sizes rozkład wymiarów figur
+     * @param overlap średnia liczba figur przykrywających punkt dokumentu
+     * @param clusters liczba skupisk figur lub 0, żeby rozrzucić figury równomiernie
+     * @param seed zarodek generatora liczb losowych
+     */
+
+    public SceneGenerator(int count, int minSize, int maxSize, Sizes sizes, double overlap, int clusters, long seed) {
+        if (count < 0 || minSize < 1 || maxSize < minSize || overlap <= 0 || clusters < 0) {
+            throw new IllegalArgumentException("Nieprawidłowe parametry dokumentu");
+        }
+
+        this.count = count;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.sizes = sizes;
+        this.overlap = overlap;
+        this.clusters = clusters;
+        this.seed = seed;
+    }
+
+    /**
+     * Zwraca długość boku kwadratowego dokumentu, w którym figury dają zadane nakładanie się.
+     * @return długość boku dokumentu
+     */
+
+    public int documentSize() {
+        double mean = sizes == Sizes.LOG && maxSize > minSize
+                ? (maxSize - minSize) / Math.log((double) maxSize / minSize)
+                : (minSize + maxSize) / 2.0;
+        double area = (double) count * NAMES.length * mean * mean / overlap;
+
+        return (int) Math.min(Integer.MAX_VALUE / 2, Math.max(maxSize, Math.ceil(Math.sqrt(area))));
+    }
+
+    /**
+     * Dodaje wygenerowane figury na wierzch magazynu. Rodzaje figur występują na przemian,
+     * więc każdy rodzaj jest rozłożony po całej kolejności rysowania.
+     * @param store magazyn figur
+     */
+
+    public void generate(FigureStore store) {
+        var random = new Random(seed);
+        int side = documentSize();
+
+        // Środki skupisk i ich rozrzut, przy którym skupiska zajmują razem mniej więcej cały dokument.
+        double[] centers = new double[2 * clusters];
+        for (int i = 0; i < centers.length; i++) centers[i] = random.nextDouble() * side;
+        double spread = clusters > 0 ? side / (4 * Math.sqrt(clusters)) : 0;
+
+        int total = count * NAMES.length;
+        int batchSize = Math.max(1, Math.min(total, BATCH_SIZE));
+        int[] batch = new int[batchSize * FigureStore.RECORD_INTS];
+
+        for (int first = 0; first < total; first += batchSize) {
+            int size = Math.min(batchSize, total - first);
+
+            for (int i = 0, r = 0; i < size; i++, r += FigureStore.RECORD_INTS) {
+                int width = nextSize(random);
+                int height = nextSize(random);
+
+                double x;
+                double y;
+                if (clusters > 0) {
+                    int cluster = random.nextInt(clusters);
+                    x = centers[2 * cluster] + random.nextGaussian() * spread - width / 2.0;
+                    y = centers[2 * cluster + 1] + random.nextGaussian() * spread - height / 2.0;
+                } else {
+                    x = random.nextDouble() * (side - width);
+                    y = random.nextDouble() * (side - height);
+                }
+
+                batch[r] = NAMES[(first + i) % NAMES.length].ordinal();
+                batch[r + 1] = (int) Math.max(0, Math.min(side - width, x));
+                batch[r + 2] = (int) Math.max(0, Math.min(side - height, y));
+                batch[r + 3] = width;
+                batch[r + 4] = height;
+                batch[r + 5] = 0xFF000000 | random.nextInt(1 << 24);
+            }
+
+            store.addRecords(batch, size);
+        }
+    }
+
+    /**
+     * Losuje szerokość lub wysokość figury z wybranego rozkładu.
+     * @param random generator liczb losowych
+     * @return wymiar figury
+     */
+
+    private int nextSize(Random random) {
+        if (sizes == Sizes.LOG) {
+            return (int) Math.min(maxSize, Math.round(minSize * Math.pow((double) maxSize / minSize, random.nextDouble())));
+        }
+
+        return minSize + random.nextInt(maxSize - minSize + 1);
+    }
+}
@@ -0,0 +1,202 @@
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Obiekt Selection przechowuje zaznaczone figury jako zbiór bitów, w którym bit o numerze
+ * slotu oznacza, że figura jest zaznaczona, więc zaznaczenie nawet miliona figur zajmuje
+ * kilkaset kilobajtów i nie tworzy obiektu dla żadnej figury. Lista slotów zaznaczonych figur,
+ * potrzebna do zmieniania ich wszystkich naraz, jest tworzona dopiero po zmianie zaznaczenia.
+ * Zaznaczenie obserwuje magazyn figur i znika po usunięciu wszystkich figur.
+ */
+
+public class Selection implements FigureStore.Listener {
+    private final FigureStore store;
+    private final IntList slots;
+    private final IntList found;
+
+    private long[] words;
+    private int count;
+    private boolean slotsValid;
+
+    /**
+     * Tworzy puste zaznaczenie figur z magazynu i zaczyna obserwować jego zmiany.
+     * @param store magazyn figur
+     */
+
+    public Selection(FigureStore store) {
+        this.store = store;
+        slots = new IntList();
+        found = new IntList();
+
+        words = new long[1];
+        count = 0;
+        slotsValid = true;
+
+        store.addListener(this);
+    }
+
+    /**
+     * Zaznacza figurę.
+     * @param slot slot figury
+     */
+
+    public void add(int slot) {
+        int word = slot >>> 6;
+        if (word >= words.length) words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+
+        long bit = 1L << slot;
+        if ((words[word] & bit) != 0) return;
+
+        words[word] |= bit;
+        count++;
+        slotsValid = false;
+    }
+
+    /**
+     * Zaznacza figurę, jeżeli nie była zaznaczona, albo usuwa jej zaznaczenie.
+     * @param slot slot figury
+     * @return true jeżeli figura jest teraz zaznaczona
+     */
+
+    public boolean toggle(int slot) {
+        if (!contains(slot)) {
+            add(slot);
+            return true;
+        }
+
+        words[slot >>> 6] &= ~(1L << slot);
+        count--;
+        slotsValid = false;
+
+        return false;
+    }
+
+    /**
+     * Sprawdza, czy figura jest zaznaczona.
+     * @param slot slot figury
+     * @return true jeżeli figura jest zaznaczona
+     */
+
+    public boolean contains(int slot) {
+        int word = slot >>> 6;
+        return word < words.length && (words[word] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Zaznacza figury, których prostokąty leżą w całości w danym obszarze, wyszukując je w indeksie.
+     * @param index indeks przestrzenny figur z magazynu
+     * @param area obszar dokumentu
+     * @return liczba nowo zaznaczonych figur
+     */
+
+    public int addArea(SpatialIndex index, Rectangle2D area) {
+        int before = count;
+
+        found.clear();
+        index.query(area, found);
+
+        for (int i = 0; i < found.size(); i++) {
+            int slot = found.get(i);
+
+            if (area.contains(store.getX(slot), store.getY(slot), store.getWidth(slot), store.getHeight(slot))) {
+                add(slot);
+            }
+        }
+
+        return count - before;
+    }
+
+    /**
+     * Usuwa zaznaczenie wszystkich figur.
+     */
+
+    public void clear() {
+        if (count == 0) return;
+
+        Arrays.fill(words, 0);
+        count = 0;
+        slotsValid = false;
+    }
+
+    /**
+     * Zwraca liczbę zaznaczonych figur.
+     * @return liczba zaznaczonych figur
+     */
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Zwraca sloty zaznaczonych figur w kolejności rysowania. Lista należy do zaznaczenia
+     * i jest aktualna do jego następnej zmiany.
+     * @return lista slotów
+     */
+
+    public IntList slots() {
+        if (slotsValid) return slots;
+
+        slots.clear();
+        for (int word = 0; word < words.length; word++) {
+            long bits = words[word];
+
+            while (bits != 0) {
+                slots.add((word << 6) + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+
+        slotsValid = true;
+        return slots;
+    }
+
+    /**
+     * Wylicza najmniejszy prostokąt zawierający wszystkie zaznaczone figury.
+     * @param bounds prostokąt, do którego zostanie zapisany wynik, pusty, jeżeli nic nie jest zaznaczone
+     */
+
+    public void bounds(Rectangle bounds) {
+        IntList selected = slots();
+        if (selected.isEmpty()) {
+            bounds.setBounds(0, 0, 0, 0);
+            return;
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+
+        for (int i = 0; i < selected.size(); i++) {
+            int slot = selected.get(i);
+
+            minX = Math.min(minX, store.getX(slot));
+            minY = Math.min(minY, store.getY(slot));
+            maxX = Math.max(maxX, store.getX(slot) + store.getWidth(slot));
+            maxY = Math.max(maxY, store.getY(slot) + store.getHeight(slot));
+        }
+
+        bounds.setBounds(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    @Override
+    public void figureAdded(int slot) {
+    }
+
+    @Override
+    public void figureChanged(int slot) {
+    }
+
+    @Override
+    public void figuresRemoved(int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            if (contains(slot)) toggle(slot);
+        }
+    }
+
+    @Override
+    public void cleared() {
+        clear();
+    }
+}
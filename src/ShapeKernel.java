@@ -0,0 +1,229 @@
+import java.awt.*;
+
+/**
+ * Jądro kształtu zawiera całą geometrię jednego rodzaju figury: sprawdzanie, czy kształt zawiera punkt,
+ * obrys wielokąta używany przy wyszukiwaniu nachodzących figur i wypełnianie kształtu. Kształt jest
+ * zawsze wpisany w prostokąt figury, więc przesuwanie, zmiana wielkości i skalowanie, które zmieniają
+ * tylko ten prostokąt, nie zależą od rodzaju figury. Każdy rodzaj z Figures wskazuje swoje jądro,
+ * więc nowy rodzaj figury wymaga tylko nowej klasy jądra i wartości w Figures, bez zmieniania
+ * kodu magazynu, rysowania czy wyszukiwania.
+ */
+
+public sealed interface ShapeKernel permits ShapeKernel.Ellipse, ShapeKernel.Box, ShapeKernel.Triangle {
+    ShapeKernel ELLIPSE = new Ellipse();
+    ShapeKernel BOX = new Box();
+    ShapeKernel TRIANGLE = new Triangle();
+
+    /**
+     * Sprawdza, czy kształt wpisany w prostokąt zawiera punkt (px, py) leżący wewnątrz prostokąta.
+     * @param x współrzędna x prostokąta
+     * @param y współrzędna y prostokąta
+     * @param width szerokość prostokąta
+     * @param height wysokość prostokąta
+     * @param px współrzędna x punktu
+     * @param py współrzędna y punktu
+     * @return true jeżeli punkt leży wewnątrz kształtu
+     */
+
+    boolean contains(double x, double y, double width, double height, double px, double py);
+
+    /**
+     * Zapisuje wierzchołki kształtu wielokątnego w kolejności zgodnej z ruchem wskazówek zegara na ekranie.
+     * @param x współrzędna x prostokąta
+     * @param y współrzędna y prostokąta
+     * @param width szerokość prostokąta
+     * @param height wysokość prostokąta
+     * @param points tablica, do której zostaną zapisane pary współrzędnych
+     * @param offset pozycja pierwszej współrzędnej
+     * @return liczba wierzchołków albo 0 dla elipsy, która nie jest wielokątem
+     */
+
+    int outline(int x, int y, int width, int height, double[] points, int offset);
+
+    /**
+     * Sprawdza, czy kształt wypełnia cały prostokąt, więc przecinanie się prostokątów wystarcza.
+     * @return true jeżeli kształt jest prostokątem
+     */
+
+    boolean fillsBounds();
+
+    /**
+     * Wypełnia kształt bieżącym kolorem obiektu Graphics.
+     * @param g obiekt Graphics
+     * @param x współrzędna x prostokąta
+     * @param y współrzędna y prostokąta
+     * @param width szerokość prostokąta
+     * @param height wysokość prostokąta
+     * @param pointsX tablica pomocnicza na co najmniej 4 współrzędne x wierzchołków
+     * @param pointsY tablica pomocnicza na co najmniej 4 współrzędne y wierzchołków
+     */
+
+    void fill(Graphics g, int x, int y, int width, int height, int[] pointsX, int[] pointsY);
+
+    /**
+     * Zwraca najwyżej narysowaną figurę z listy, której kształt zawiera punkt (px, py). Lista może
+     * zawierać tylko figury rysowane tym jądrem, których prostokąty zawierają punkt. Każda klasa jądra
+     * ma własną kopię tej pętli, więc wywołanie contains ma w niej zawsze tę samą klasę.
+     * @param store magazyn figur
+     * @param slots sloty figur
+     * @param top slot dotąd znalezionej figury albo -1
+     * @param px współrzędna x punktu
+     * @param py współrzędna y punktu
+     * @return slot najwyżej narysowanej figury zawierającej punkt albo top, jeżeli żadna nie leży wyżej
+     */
+
+    int topmost(FigureStore store, IntList slots, int top, double px, double py);
+
+    /**
+     * Elipsa wpisana w prostokąt, sprawdzana równaniem elipsy.
+     */
+
+    final class Ellipse implements ShapeKernel {
+        private Ellipse() {}
+
+        @Override
+        public boolean contains(double x, double y, double width, double height, double px, double py) {
+            double nx = (px - x) / width - 0.5;
+            double ny = (py - y) / height - 0.5;
+
+            return nx * nx + ny * ny < 0.25;
+        }
+
+        @Override
+        public int outline(int x, int y, int width, int height, double[] points, int offset) {
+            return 0;
+        }
+
+        @Override
+        public boolean fillsBounds() {
+            return false;
+        }
+
+        @Override
+        public void fill(Graphics g, int x, int y, int width, int height, int[] pointsX, int[] pointsY) {
+            g.fillOval(x, y, width, height);
+        }
+
+        @Override
+        public int topmost(FigureStore store, IntList slots, int top, double px, double py) {
+            for (int i = 0; i < slots.size(); i++) {
+                int slot = slots.get(i);
+
+                if (slot > top && contains(store.getX(slot), store.getY(slot), store.getWidth(slot),
+                        store.getHeight(slot), px, py)) top = slot;
+            }
+
+            return top;
+        }
+    }
+
+    /**
+     * Prostokąt, który wypełnia cały prostokąt figury.
+     */
+
+    final class Box implements ShapeKernel {
+        private Box() {}
+
+        @Override
+        public boolean contains(double x, double y, double width, double height, double px, double py) {
+            return true;
+        }
+
+        @Override
+        public int outline(int x, int y, int width, int height, double[] points, int offset) {
+            points[offset] = x;
+            points[offset + 1] = y;
+            points[offset + 2] = x + width;
+            points[offset + 3] = y;
+            points[offset + 4] = x + width;
+            points[offset + 5] = y + height;
+            points[offset + 6] = x;
+            points[offset + 7] = y + height;
+            return 4;
+        }
+
+        @Override
+        public boolean fillsBounds() {
+            return true;
+        }
+
+        @Override
+        public void fill(Graphics g, int x, int y, int width, int height, int[] pointsX, int[] pointsY) {
+            g.fillRect(x, y, width, height);
+        }
+
+        @Override
+        public int topmost(FigureStore store, IntList slots, int top, double px, double py) {
+            for (int i = 0; i < slots.size(); i++) {
+                int slot = slots.get(i);
+
+                if (slot > top && contains(store.getX(slot), store.getY(slot), store.getWidth(slot),
+                        store.getHeight(slot), px, py)) top = slot;
+            }
+
+            return top;
+        }
+    }
+
+    /**
+     * Trójkąt równoramienny o wierzchołkach w lewym dolnym rogu, na środku górnej krawędzi i w prawym
+     * dolnym rogu prostokąta, sprawdzany znakami iloczynów wektorowych. Środek górnej krawędzi jest
+     * zaokrąglany w dół do całkowitej współrzędnej, tak jak przy rysowaniu.
+     */
+
+    final class Triangle implements ShapeKernel {
+        private Triangle() {}
+
+        @Override
+        public boolean contains(double x, double y, double width, double height, double px, double py) {
+            double apexX = x + Math.floor(width / 2);
+            double bottom = y + height;
+
+            double left = (apexX - x) * (py - bottom) - (y - bottom) * (px - x);
+            double right = (x + width - apexX) * (py - y) - (bottom - y) * (px - apexX);
+
+            return left >= 0 && right >= 0;
+        }
+
+        @Override
+        public int outline(int x, int y, int width, int height, double[] points, int offset) {
+            points[offset] = x;
+            points[offset + 1] = y + height;
+            points[offset + 2] = x + width / 2;
+            points[offset + 3] = y;
+            points[offset + 4] = x + width;
+            points[offset + 5] = y + height;
+            return 3;
+        }
+
+        @Override
+        public boolean fillsBounds() {
+            return false;
+        }
+
+        @Override
+        public void fill(Graphics g, int x, int y, int width, int height, int[] pointsX, int[] pointsY) {
+            pointsX[0] = x;
+            pointsX[1] = x + width / 2;
+            pointsX[2] = x + width;
+
+            pointsY[0] = y + height;
+            pointsY[1] = y;
+            pointsY[2] = y + height;
+
+            g.fillPolygon(pointsX, pointsY, 3);
+        }
+
+        @Override
+        public int topmost(FigureStore store, IntList slots, int top, double px, double py) {
+            for (int i = 0; i < slots.size(); i++) {
+                int slot = slots.get(i);
+
+                if (slot > top && contains(store.getX(slot), store.getY(slot), store.getWidth(slot),
+                        store.getHeight(slot), px, py)) top = slot;
+            }
+
+            return top;
+        }
+    }
+}
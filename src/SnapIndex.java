@@ -0,0 +1,421 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Obiekt SnapIndex wyszukuje krawędzie i środki figur, do których można dociągnąć przesuwaną lub
+ * tworzoną figurę. Lewe krawędzie, środki w poziomie, prawe krawędzie, górne krawędzie, środki
+ * w pionie i dolne krawędzie wszystkich figur są przechowywane w sześciu posortowanych zbiorach
+ * liczb long, w których współrzędna zajmuje starsze 32 bity, a slot figury młodsze, więc linie
+ * leżące w zadanej odległości od współrzędnej wyszukuje się przeszukiwaniem binarnym. Zbiory są
+ * podzielone na bloki po co najwyżej 2 * BLOCK_SIZE liczb, więc zmiana jednej figury przesuwa
+ * w pamięci tylko część jednego bloku. Indeks obserwuje magazyn i tylko zapamiętuje zmienione
+ * figury, a ich linie są poprawiane przy następnym wyszukiwaniu. Figury pomijane w wyszukiwaniu,
+ * np. przesuwane, pozostają zapamiętane do wyszukiwania, w którym nie są pomijane, więc ich
+ * przesuwanie nie zmienia zbiorów. Jeżeli do poprawienia jest tyle figur, że szybciej jest
+ * posortować wszystkie linie od nowa, indeks jest budowany od nowa.
+ * Indeks jest budowany dopiero przy pierwszym wyszukiwaniu.
+ */
+
+public class SnapIndex implements FigureStore.Listener {
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int MIN_REBUILD_CHANGES = 4_096;
+    private static final int LINES = 6;
+
+    private final FigureStore store;
+    private final Keys[] keys;
+    private final IntList dirty;
+
+    private int[] bounds;
+    private long[] indexedBits;
+    private long[] dirtyBits;
+    private boolean stale;
+
+    /**
+     * Tworzy indeks linii figur z magazynu i zaczyna obserwować jego zmiany.
+     * @param store magazyn figur
+     */
+
+    public SnapIndex(FigureStore store) {
+        this.store = store;
+
+        keys = new Keys[LINES];
+        for (int line = 0; line < LINES; line++) keys[line] = new Keys();
+
+        dirty = new IntList();
+        bounds = new int[0];
+        indexedBits = new long[0];
+        dirtyBits = new long[0];
+        stale = true;
+
+        store.addListener(this);
+    }
+
+    /**
+     * Szuka linii innej figury najbliższej krawędzi lub środkowi dociąganego odcinka na danej osi.
+     * Linie figur są porównywane z liniami tego samego rodzaju i z pozostałymi, np. lewa krawędź
+     * odcinka może zostać dociągnięta do prawej krawędzi innej figury.
+     * @param axis X, żeby dociągać w poziomie, albo Y, żeby dociągać w pionie
+     * @param start współrzędna początku odcinka
+     * @param length długość odcinka, 0 dla punktu
+     * @param tolerance największa odległość dociągnięcia
+     * @param skipped figury, do których nie można dociągać, np. dociągana figura
+     * @param match tablica, do której zostanie zapisane przesunięcie dociągające odcinek i współrzędna linii
+     * @return true jeżeli znaleziono linię w zadanej odległości
+     */
+
+    public boolean snap(int axis, int start, int length, int tolerance, IntPredicate skipped, int[] match) {
+        update(skipped);
+
+        int bestDistance = Integer.MAX_VALUE;
+        int bestLine = NONE;
+        int bestShift = 0;
+
+        for (int i = 0; i < 3; i++) {
+            int target = start + (i == 0 ? 0 : i == 1 ? length / 2 : length);
+
+            for (int line = 3 * axis; line < 3 * axis + 3; line++) {
+                int found = keys[line].nearest(target, tolerance, skipped);
+                if (found == NONE) continue;
+
+                int distance = Math.abs(found - target);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    bestLine = found;
+                    bestShift = found - target;
+                }
+            }
+        }
+
+        if (bestLine == NONE) return false;
+
+        match[0] = bestShift;
+        match[1] = bestLine;
+        return true;
+    }
+
+    @Override
+    public void figureAdded(int slot) {
+        markDirty(slot);
+    }
+
+    @Override
+    public void figureChanged(int slot) {
+        markDirty(slot);
+    }
+
+    @Override
+    public void figuresRemoved(int from, int to) {
+        for (int slot = from; slot < to && !stale; slot++) markDirty(slot);
+    }
+
+    @Override
+    public void cleared() {
+        for (Keys lines : keys) lines.fill(new long[0], 0);
+
+        dirty.clear();
+        Arrays.fill(indexedBits, 0);
+        Arrays.fill(dirtyBits, 0);
+    }
+
+    /**
+     * Zapamiętuje zmienioną figurę do poprawienia jej linii przy następnym wyszukiwaniu.
+     * @param slot slot figury
+     */
+
+    private void markDirty(int slot) {
+        if (stale || isSet(dirtyBits, slot)) return;
+
+        dirtyBits = set(dirtyBits, slot);
+        dirty.add(slot);
+    }
+
+    /**
+     * Buduje indeks od nowa, jeżeli jest nieaktualny, albo poprawia linie zmienionych figur,
+     * które nie są pomijane w wyszukiwaniu.
+     * @param skipped figury pomijane w wyszukiwaniu
+     */
+
+    private void update(IntPredicate skipped) {
+        int changed = 0;
+        for (int i = 0; i < dirty.size() && !stale; i++) {
+            int slot = dirty.get(i);
+            if (slot >= store.size() || !skipped.test(slot)) changed++;
+        }
+
+        // Po tylu zmianach posortowanie wszystkich linii od nowa jest szybsze od poprawiania ich po kolei.
+        if (stale || changed > Math.max(MIN_REBUILD_CHANGES, store.size() >> 3)) {
+            rebuild();
+            return;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < dirty.size(); i++) {
+            int slot = dirty.get(i);
+
+            if (slot < store.size() && skipped.test(slot)) {
+                dirty.set(kept++, slot);
+                continue;
+            }
+
+            dirtyBits[slot >>> 6] &= ~(1L << slot);
+            if (isSet(indexedBits, slot)) removeLines(slot);
+            if (slot < store.size()) addLines(slot);
+        }
+
+        dirty.truncate(kept);
+    }
+
+    /**
+     * Sortuje od nowa linie wszystkich figur z magazynu.
+     */
+
+    private void rebuild() {
+        int size = store.size();
+        bounds = new int[4 * size];
+        indexedBits = new long[(size >>> 6) + 1];
+        dirtyBits = new long[indexedBits.length];
+        dirty.clear();
+
+        long[] lines = new long[size];
+        for (int line = 0; line < LINES; line++) {
+            for (int slot = 0; slot < size; slot++) {
+                lines[slot] = key(coordinate(line, store.getX(slot), store.getY(slot), store.getWidth(slot),
+                        store.getHeight(slot)), slot);
+            }
+
+            Arrays.parallelSort(lines, 0, size);
+            keys[line].fill(lines, size);
+        }
+
+        for (int slot = 0; slot < size; slot++) {
+            record(slot);
+            indexedBits[slot >>> 6] |= 1L << slot;
+        }
+
+        stale = false;
+    }
+
+    /**
+     * Dodaje linie figury w obecnym położeniu i zapamiętuje jej prostokąt.
+     * @param slot slot figury
+     */
+
+    private void addLines(int slot) {
+        record(slot);
+        indexedBits = set(indexedBits, slot);
+
+        int r = 4 * slot;
+        for (int line = 0; line < LINES; line++) {
+            keys[line].add(key(coordinate(line, bounds[r], bounds[r + 1], bounds[r + 2], bounds[r + 3]), slot));
+        }
+    }
+
+    /**
+     * Usuwa linie figury wyliczone z zapamiętanego prostokąta.
+     * @param slot slot figury
+     */
+
+    private void removeLines(int slot) {
+        indexedBits[slot >>> 6] &= ~(1L << slot);
+
+        int r = 4 * slot;
+        for (int line = 0; line < LINES; line++) {
+            keys[line].remove(key(coordinate(line, bounds[r], bounds[r + 1], bounds[r + 2], bounds[r + 3]), slot));
+        }
+    }
+
+    /**
+     * Zapamiętuje prostokąt figury, z którego wyliczone są jej linie w indeksie.
+     * @param slot slot figury
+     */
+
+    private void record(int slot) {
+        int r = 4 * slot;
+        if (r + 4 > bounds.length) bounds = Arrays.copyOf(bounds, Math.max(r + 4, bounds.length * 2));
+
+        bounds[r] = store.getX(slot);
+        bounds[r + 1] = store.getY(slot);
+        bounds[r + 2] = store.getWidth(slot);
+        bounds[r + 3] = store.getHeight(slot);
+    }
+
+    /**
+     * Wylicza współrzędną linii prostokąta.
+     * @param line numer linii: lewa krawędź, środek w poziomie, prawa krawędź, górna krawędź, środek w pionie, dolna krawędź
+     * @return współrzędna linii
+     */
+
+    private static int coordinate(int line, int x, int y, int width, int height) {
+        return switch (line) {
+            case 0 -> x;
+            case 1 -> x + width / 2;
+            case 2 -> x + width;
+            case 3 -> y;
+            case 4 -> y + height / 2;
+            default -> y + height;
+        };
+    }
+
+    /**
+     * Łączy współrzędną linii ze slotem figury w liczbę, której porządek jest porządkiem współrzędnych.
+     */
+
+    private static long key(int coordinate, int slot) {
+        return ((long) coordinate << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    private static boolean isSet(long[] bits, int slot) {
+        int word = slot >>> 6;
+        return word < bits.length && (bits[word] & (1L << slot)) != 0;
+    }
+
+    private static long[] set(long[] bits, int slot) {
+        int word = slot >>> 6;
+        if (word >= bits.length) bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+
+        bits[word] |= 1L << slot;
+        return bits;
+    }
+
+    /**
+     * Posortowany zbiór liczb long podzielony na bloki, z których każdy zawiera od 1 do 2 * BLOCK_SIZE liczb.
+     */
+
+    private static class Keys {
+        private long[][] blocks;
+        private int[] sizes;
+        private int count;
+
+        private Keys() {
+            blocks = new long[1][2 * BLOCK_SIZE];
+            sizes = new int[1];
+            count = 1;
+        }
+
+        /**
+         * Zastępuje zawartość zbioru posortowanymi liczbami, dzieląc je na bloki po BLOCK_SIZE liczb.
+         * @param sorted posortowane liczby
+         * @param size liczba liczb
+         */
+
+        private void fill(long[] sorted, int size) {
+            count = Math.max(1, (size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            blocks = new long[count][];
+            sizes = new int[count];
+
+            for (int b = 0; b < count; b++) {
+                int from = b * BLOCK_SIZE;
+                sizes[b] = Math.min(BLOCK_SIZE, size - from);
+                blocks[b] = new long[2 * BLOCK_SIZE];
+                if (sizes[b] > 0) System.arraycopy(sorted, from, blocks[b], 0, sizes[b]);
+            }
+        }
+
+        /**
+         * Zwraca ostatni blok, którego pierwsza liczba nie jest większa od klucza, albo pierwszy blok.
+         */
+
+        private int block(long key) {
+            int low = 1;
+            int high = count - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (blocks[middle][0] <= key) low = middle + 1;
+                else high = middle - 1;
+            }
+
+            return low - 1;
+        }
+
+        private void add(long key) {
+            int b = block(key);
+            int i = Arrays.binarySearch(blocks[b], 0, sizes[b], key);
+            if (i >= 0) return;
+            i = -i - 1;
+
+            System.arraycopy(blocks[b], i, blocks[b], i + 1, sizes[b] - i);
+            blocks[b][i] = key;
+            sizes[b]++;
+
+            if (sizes[b] == 2 * BLOCK_SIZE) split(b);
+        }
+
+        private void remove(long key) {
+            int b = block(key);
+            int i = Arrays.binarySearch(blocks[b], 0, sizes[b], key);
+            if (i < 0) return;
+
+            System.arraycopy(blocks[b], i + 1, blocks[b], i, sizes[b] - i - 1);
+            sizes[b]--;
+
+            // Pusty blok jest usuwany, bo wyszukiwanie bloku porównuje klucz z pierwszymi liczbami bloków.
+            if (sizes[b] == 0 && count > 1) {
+                System.arraycopy(blocks, b + 1, blocks, b, count - b - 1);
+                System.arraycopy(sizes, b + 1, sizes, b, count - b - 1);
+                count--;
+            }
+        }
+
+        /**
+         * Dzieli pełny blok na dwa bloki po BLOCK_SIZE liczb.
+         */
+
+        private void split(int b) {
+            if (count == blocks.length) {
+                blocks = Arrays.copyOf(blocks, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+
+            System.arraycopy(blocks, b + 1, blocks, b + 2, count - b - 1);
+            System.arraycopy(sizes, b + 1, sizes, b + 2, count - b - 1);
+            count++;
+
+            blocks[b + 1] = new long[2 * BLOCK_SIZE];
+            System.arraycopy(blocks[b], BLOCK_SIZE, blocks[b + 1], 0, BLOCK_SIZE);
+            sizes[b] = BLOCK_SIZE;
+            sizes[b + 1] = BLOCK_SIZE;
+        }
+
+        /**
+         * Szuka współrzędnej najbliższej danej współrzędnej spośród linii figur, które nie są pomijane.
+         * @param target współrzędna, dla której szukana jest linia
+         * @param tolerance największa odległość linii
+         * @param skipped pomijane figury
+         * @return współrzędna najbliższej linii lub NONE
+         */
+
+        private int nearest(int target, int tolerance, IntPredicate skipped) {
+            long from = key((int) Math.max(Integer.MIN_VALUE + 1L, (long) target - tolerance), 0);
+            long to = (long) target + tolerance;
+
+            int b = block(from);
+            int i = Arrays.binarySearch(blocks[b], 0, sizes[b], from);
+            if (i < 0) i = -i - 1;
+
+            int best = NONE;
+            long bestDistance = Long.MAX_VALUE;
+
+            for (; b < count; b++, i = 0) {
+                for (; i < sizes[b]; i++) {
+                    long key = blocks[b][i];
+                    int coordinate = (int) (key >> 32);
+                    if (coordinate > to || coordinate - (long) target >= bestDistance) return best;
+                    if (skipped.test((int) key)) continue;
+
+                    long distance = Math.abs((long) coordinate - target);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = coordinate;
+                    }
+                }
+            }
+
+            return best;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Obiekt SpatialIndex to indeks przestrzenny figur oparty na jednorodnej siatce.
+ * Każda figura jest zapisana w komórkach siatki, które przecina jej prostokąt,
+ * dzięki czemu wyszukiwanie figury pod kursorem sprawdza tylko figury leżące w pobliżu.
+ * Indeks obserwuje magazyn figur i aktualizuje się po każdej zmianie figury.
+ * Kolejność rysowania figur odpowiada kolejności ich slotów w magazynie.
+ * Metoda figureAtPerType korzysta ze wspólnych list pomocniczych,
+ * więc należy ją wywoływać z jednego wątku.
+ */
+
+public class SpatialIndex implements FigureStore.Listener {
+    private static final int CELL_SIZE = 128;
+
+    private final FigureStore store;
+    private final HashMap<Long, IntList> cells;
+    private final ShapeKernel[] kernels;
+    private final IntList[] candidates;
+
+    private int[] minCellX;
+    private int[] maxCellX;
+    private int[] minCellY;
+    private int[] maxCellY;
+    private int[] stamps;
+
+    private int queryStamp;
+
+    /**
+     * Tworzy indeks przestrzenny figur z magazynu i zaczyna obserwować jego zmiany.
+     * @param store magazyn figur
+     */
+
+    public SpatialIndex(FigureStore store) {
+        this.store = store;
+        cells = new HashMap<>();
+        var figures = Figures.values();
+        kernels = new ShapeKernel[figures.length];
+        candidates = new IntList[figures.length];
+        for (int type = 0; type < figures.length; type++) {
+            kernels[type] = figures[type].kernel();
+            candidates[type] = new IntList();
+        }
+
+        minCellX = new int[16];
+        maxCellX = new int[16];
+        minCellY = new int[16];
+        maxCellY = new int[16];
+        stamps = new int[16];
+        queryStamp = 0;
+
+        for (int slot = 0; slot < store.size(); slot++) figureAdded(slot);
+        store.addListener(this);
+    }
+
+    /**
+     * Dodaje nową figurę do indeksu.
+     * @param slot slot dodanej figury
+     */
+
+    @Override
+    public void figureAdded(int slot) {
+        ensureCapacity(slot + 1);
+        stamps[slot] = 0;
+
+        insert(slot);
+    }
+
+    /**
+     * Aktualizuje położenie figury w indeksie po zmianie jej prostokąta.
+     * @param slot slot zmienionej figury
+     */
+
+    @Override
+    public void figureChanged(int slot) {
+        // Jeżeli figura nie zmieniła zajmowanych komórek, nie trzeba nic przepisywać.
+        int x = store.getX(slot);
+        int y = store.getY(slot);
+
+        if (cell(x) == minCellX[slot] && cell(x + store.getWidth(slot)) == maxCellX[slot]
+                && cell(y) == minCellY[slot] && cell(y + store.getHeight(slot)) == maxCellY[slot]) return;
+
+        remove(slot);
+        insert(slot);
+    }
+
+    /**
+     * Usuwa z indeksu figury usunięte z wierzchu magazynu.
+     * @param from slot pierwszej usuniętej figury
+     * @param to slot za ostatnią usuniętą figurą
+     */
+
+    @Override
+    public void figuresRemoved(int from, int to) {
+        for (int slot = from; slot < to; slot++) remove(slot);
+    }
+
+    /**
+     * Usuwa wszystkie figury z indeksu.
+     */
+
+    @Override
+    public void cleared() {
+        cells.clear();
+    }
+
+    /**
+     * Zwraca najwyżej narysowaną figurę, której kształt zawiera punkt (x, y).
+     * @param x współrzędna x punktu
+     * @param y współrzędna y punktu
+     * @return slot znalezionej figury lub -1, jeżeli w punkcie nie ma żadnej figury
+     */
+
+    public int figureAt(int x, int y) {
+        var cell = cells.get(key(cell(x), cell(y)));
+        if (cell == null) return -1;
+
+        // Spośród figur z komórki wybiera tę, która została narysowana najpóźniej.
+        int top = -1;
+        for (int i = 0; i < cell.size(); i++) {
+            int slot = cell.get(i);
+            if (slot > top && store.contains(slot, x, y)) top = slot;
+        }
+
+        return top;
+    }
+
+    /**
+     * Zwraca to samo co figureAt, ale kształty figur sprawdza osobno dla każdego rodzaju. Najpierw
+     * jednym przejściem przez komórkę wybiera figury, których prostokąty zawierają punkt, rozdzielając
+     * je według rodzaju, a potem każde jądro kształtu sprawdza figury swojego rodzaju we własnej pętli,
+     * w której wywołanie contains ma zawsze tę samą klasę. Służy do porównania w benchmarku.
+     * @param x współrzędna x punktu
+     * @param y współrzędna y punktu
+     * @return slot znalezionej figury lub -1, jeżeli w punkcie nie ma żadnej figury
+     */
+
+    public int figureAtPerType(int x, int y) {
+        var cell = cells.get(key(cell(x), cell(y)));
+        if (cell == null) return -1;
+
+        for (IntList list : candidates) list.clear();
+
+        for (int i = 0; i < cell.size(); i++) {
+            int slot = cell.get(i);
+            int left = store.getX(slot);
+            int top = store.getY(slot);
+            int width = store.getWidth(slot);
+            int height = store.getHeight(slot);
+
+            if (width > 0 && height > 0 && x >= left && y >= top && x < left + width && y < top + height) {
+                candidates[store.getType(slot)].add(slot);
+            }
+        }
+
+        int top = -1;
+        for (int type = 0; type < candidates.length; type++) {
+            if (!candidates[type].isEmpty()) top = kernels[type].topmost(store, candidates[type], top, x, y);
+        }
+
+        return top;
+    }
+
+    /**
+     * Wyszukuje figury, których prostokąty przecinają dany obszar,
+     * i dopisuje ich sloty do listy w kolejności rysowania.
+     * @param area przeszukiwany obszar
+     * @param result lista, do której zostaną dopisane sloty znalezionych figur
+     */
+
+    public void query(Rectangle2D area, IntList result) {
+        int minX = cell(area.getMinX());
+        int maxX = cell(area.getMaxX());
+        int minY = cell(area.getMinY());
+        int maxY = cell(area.getMaxY());
+
+        // Jeżeli obszar obejmuje więcej komórek niż jest zajętych, np. przy oddalonym widoku,
+        // szybciej jest przejrzeć wszystkie figury po kolei, bo wynik jest wtedy od razu posortowany.
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+            for (int slot = 0; slot < store.size(); slot++) {
+                if (area.intersects(store.getX(slot), store.getY(slot), store.getWidth(slot), store.getHeight(slot))) {
+                    result.add(slot);
+                }
+            }
+
+            return;
+        }
+
+        // Każde zapytanie ma własny znacznik, dzięki któremu figura zapisana
+        // w kilku komórkach zostanie znaleziona tylko raz.
+        int stamp = ++queryStamp;
+        int first = result.size();
+
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                var cell = cells.get(key(cx, cy));
+                if (cell != null) collect(cell, area, stamp, result);
+            }
+        }
+
+        result.sort(first);
+    }
+
+    /**
+     * Dopisuje do wyniku figury z komórki przecinające obszar, które nie zostały jeszcze znalezione.
+     * @param cell komórka siatki
+     * @param area przeszukiwany obszar
+     * @param stamp znacznik bieżącego zapytania
+     * @param result lista wyników
+     */
+
+    private void collect(IntList cell, Rectangle2D area, int stamp, IntList result) {
+        for (int i = 0; i < cell.size(); i++) {
+            int slot = cell.get(i);
+
+            if (stamps[slot] != stamp && area.intersects(store.getX(slot), store.getY(slot),
+                    store.getWidth(slot), store.getHeight(slot))) {
+                stamps[slot] = stamp;
+                result.add(slot);
+            }
+        }
+    }
+
+    /**
+     * Wpisuje figurę do wszystkich komórek przecinanych przez jej prostokąt.
+     * @param slot slot figury
+     */
+
+    private void insert(int slot) {
+        int x = store.getX(slot);
+        int y = store.getY(slot);
+
+        minCellX[slot] = cell(x);
+        maxCellX[slot] = cell(x + store.getWidth(slot));
+        minCellY[slot] = cell(y);
+        maxCellY[slot] = cell(y + store.getHeight(slot));
+
+        for (int cx = minCellX[slot]; cx <= maxCellX[slot]; cx++) {
+            for (int cy = minCellY[slot]; cy <= maxCellY[slot]; cy++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new IntList(4)).add(slot);
+            }
+        }
+    }
+
+    /**
+     * Usuwa figurę ze wszystkich komórek, w których była wcześniej zapisana.
+     * @param slot slot figury
+     */
+
+    private void remove(int slot) {
+        for (int cx = minCellX[slot]; cx <= maxCellX[slot]; cx++) {
+            for (int cy = minCellY[slot]; cy <= maxCellY[slot]; cy++) {
+                Long key = key(cx, cy);
+                var cell = cells.get(key);
+
+                if (cell != null) {
+                    cell.removeValue(slot);
+                    if (cell.isEmpty()) cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Powiększa tablice zakresów komórek tak, by zmieściły podaną liczbę figur.
+     * @param capacity wymagana pojemność
+     */
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= stamps.length) return;
+
+        int newCapacity = Math.max(capacity, stamps.length * 2);
+
+        minCellX = Arrays.copyOf(minCellX, newCapacity);
+        maxCellX = Arrays.copyOf(maxCellX, newCapacity);
+        minCellY = Arrays.copyOf(minCellY, newCapacity);
+        maxCellY = Arrays.copyOf(maxCellY, newCapacity);
+        stamps = Arrays.copyOf(stamps, newCapacity);
+    }
+
+    /**
+     * Zwraca numer komórki siatki, w której leży dana współrzędna.
+     * @param coordinate współrzędna
+     * @return numer komórki
+     */
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    /**
+     * Łączy numery komórki w jeden klucz.
+     * @param cx numer kolumny
+     * @param cy numer wiersza
+     * @return klucz komórki
+     */
+
+    private static Long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
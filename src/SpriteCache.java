@@ -0,0 +1,119 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Obiekt SpriteCache przechowuje obrazy figur wyrenderowane raz przed ich przeciąganiem,
+ * dzięki czemu każda klatka przeciągania sprowadza się do skopiowania obrazu w nowe miejsce.
+ * Obraz zależy tylko od kształtu, wymiarów, koloru i skali figury, więc figury o takim samym
+ * wyglądzie korzystają z tego samego obrazu. Łączna liczba pikseli obrazów jest ograniczona
+ * przez MAX_PIXELS, który można zmienić właściwością figury.spriteCachePixels, a po jej
+ * przekroczeniu usuwane są obrazy najdawniej używane.
+ */
+
+public class SpriteCache {
+    public static final int MAX_PIXELS = Integer.getInteger("figury.spriteCachePixels", 8 << 20);
+
+    private final FigurePainter painter;
+    private final LinkedHashMap<Key, BufferedImage> sprites;
+
+    private long pixels;
+
+    /**
+     * Tworzy pustą pamięć obrazów figur.
+     */
+
+    public SpriteCache() {
+        painter = new FigurePainter();
+        sprites = new LinkedHashMap<>(16, 0.75f, true);
+        pixels = 0;
+    }
+
+    /**
+     * Zwraca obraz figury w danej skali, renderując go, jeżeli nie ma go jeszcze w pamięci.
+     * Lewy górny róg prostokąta figury leży w punkcie (0, 0) obrazu.
+     * @param store magazyn figur
+     * @param slot slot figury
+     * @param scale skala widoku
+     * @param configuration konfiguracja ekranu lub null
+     * @return obraz figury lub null, jeżeli figura jest zbyt duża, żeby ją zapamiętać
+     */
+
+    public BufferedImage get(FigureStore store, int slot, double scale, GraphicsConfiguration configuration) {
+        var key = new Key(store.getType(slot), store.getWidth(slot), store.getHeight(slot), store.getColor(slot), scale);
+
+        BufferedImage sprite = sprites.get(key);
+        if (sprite != null) return sprite;
+
+        // Jeden pusty piksel zapasu mieści krawędzie kształtu wypadające na granicy prostokąta.
+        int width = (int) Math.ceil(store.getWidth(slot) * scale) + 1;
+        int height = (int) Math.ceil(store.getHeight(slot) * scale) + 1;
+        if ((long) width * height > MAX_PIXELS / 4) return null;
+
+        sprite = render(store, slot, scale, configuration, width, height);
+        sprites.put(key, sprite);
+        pixels += (long) width * height;
+
+        evict();
+
+        return sprite;
+    }
+
+    /**
+     * Usuwa wszystkie obrazy.
+     */
+
+    public void clear() {
+        sprites.clear();
+        pixels = 0;
+    }
+
+    /**
+     * Usuwa najdawniej używane obrazy, dopóki łączna liczba pikseli przekracza MAX_PIXELS.
+     */
+
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> eldest = sprites.entrySet().iterator();
+
+        while (pixels > MAX_PIXELS && eldest.hasNext()) {
+            BufferedImage sprite = eldest.next().getValue();
+            pixels -= (long) sprite.getWidth() * sprite.getHeight();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Renderuje figurę do nowego przezroczystego obrazu.
+     * @param store magazyn figur
+     * @param slot slot figury
+     * @param scale skala widoku
+     * @param configuration konfiguracja ekranu lub null
+     * @param width szerokość obrazu
+     * @param height wysokość obrazu
+     * @return obraz figury
+     */
+
+    private BufferedImage render(FigureStore store, int slot, double scale, GraphicsConfiguration configuration,
+                                 int width, int height) {
+        BufferedImage sprite = configuration != null
+                ? configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g = sprite.createGraphics();
+        g.scale(scale, scale);
+        g.translate(-store.getX(slot), -store.getY(slot));
+        painter.paint(g, store, slot);
+        g.dispose();
+
+        return sprite;
+    }
+
+    /**
+     * Klucz obrazu opisujący wygląd figury niezależnie od jej położenia.
+     */
+
+    private record Key(int type, int width, int height, int color, double scale) {
+    }
+}
@@ -0,0 +1,192 @@
+import javax.swing.filechooser.FileSystemView;
+import java.awt.*;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.prefs.Preferences;
+
+/**
+ * Obiekt Startup skraca czas od uruchomienia programu do pierwszego narysowania okna. Przed utworzeniem
+ * okna zaczyna w osobnych wątkach odczyt położenia okna z Preferences razem z rozmiarem ekranu
+ * i odtwarzanie ostatniego dokumentu z dziennika zmian, więc okno z pustym komponentem jest pokazywane
+ * od razu, a figury pojawiają się w nim po odtworzeniu dokumentu. Po pierwszym narysowaniu okna
+ * w tle wczytywane są klasy okna wyboru pliku, które jest tworzone dopiero przy pierwszym użyciu.
+ * Czas każdego etapu jest liczony od uruchomienia procesu, a po narysowaniu okna z dokumentem czasy
+ * są wypisywane na standardowe wyjście błędów, jeżeli ustawiona jest właściwość figury.startupTimes.
+ * Właściwość figury.fastStart=false wyłącza szybki start, więc okno jest pokazywane dopiero
+ * z odtworzonym dokumentem.
+ */
+
+public class Startup {
+    public static final String PREFERENCES = "/Wilk/Marcin/Figury";
+
+    private static final boolean FAST_START = Boolean.parseBoolean(System.getProperty("figury.fastStart", "true"));
+    private static final boolean REPORT = Boolean.getBoolean("figury.startupTimes");
+
+    private final long origin;
+    private final ArrayList<String> phases;
+    private final CompletableFuture<Rectangle> bounds;
+    private final CompletableFuture<EditJournal.Recovery> document;
+
+    private CompletableFuture<Void> warmup;
+    private boolean painted;
+    private boolean shown;
+
+    /**
+     * Zaczyna w tle odczyt ustawień okna i odtwarzanie dokumentu z katalogu dziennika.
+     * Wywoływać na początku programu, przed utworzeniem okna.
+     */
+
+    public Startup() {
+        // Czas jest liczony od uruchomienia procesu, więc obejmuje też start maszyny wirtualnej.
+        long now = System.nanoTime();
+        origin = ProcessHandle.current().info().startInstant()
+                .map(start -> now - Duration.between(start, Instant.now()).toNanos())
+                .orElse(now);
+        phases = new ArrayList<>();
+        warmup = CompletableFuture.completedFuture(null);
+        painted = false;
+        shown = false;
+
+        mark("start programu");
+
+        bounds = CompletableFuture.supplyAsync(() -> {
+            var bounds = readBounds();
+            mark("ustawienia okna");
+            return bounds;
+        });
+
+        document = CompletableFuture.supplyAsync(() -> {
+            try {
+                var recovery = EditJournal.recover(EditJournal.defaultDirectory());
+                mark("odtworzenie dokumentu (" + recovery.size() + " figur)");
+                return recovery;
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        });
+    }
+
+    /**
+     * Sprawdza, czy okno ma być pokazane przed odtworzeniem dokumentu.
+     * @return true jeżeli szybki start jest włączony
+     */
+
+    public boolean isFastStart() {
+        return FAST_START;
+    }
+
+    /**
+     * Zwraca położenie i rozmiar okna z ustawień, czekając na ich odczyt.
+     * @return prostokąt okna
+     */
+
+    public Rectangle bounds() {
+        return bounds.join();
+    }
+
+    /**
+     * Zwraca odtwarzany w tle dokument.
+     * @return dokument odtworzony z dziennika, zakończony wyjątkiem, jeżeli odtwarzanie się nie powiodło
+     */
+
+    public CompletableFuture<EditJournal.Recovery> document() {
+        return document;
+    }
+
+    /**
+     * Zapisuje czas zakończenia etapu uruchamiania. Można wywoływać w dowolnym wątku.
+     * @param phase nazwa etapu
+     */
+
+    public void mark(String phase) {
+        double millis = (System.nanoTime() - origin) / 1e6;
+
+        synchronized (phases) {
+            phases.add(String.format("%8.1f ms  %s", millis, phase));
+        }
+    }
+
+    /**
+     * Zapisuje pierwsze narysowanie okna i zaczyna w tle wczytywanie klas okna wyboru pliku.
+     * Kolejne wywołania nic nie robią. Wywoływać w wątku obsługi zdarzeń.
+     */
+
+    public void firstPaint() {
+        if (painted) return;
+        painted = true;
+
+        mark("pierwsze narysowanie okna");
+
+        // Wczytuje klasy okna wyboru pliku i widok systemu plików, których pierwsze użycie trwa najdłużej.
+        warmup = CompletableFuture.runAsync(() -> {
+            try {
+                Class.forName("javax.swing.JFileChooser");
+                Class.forName("javax.swing.plaf.metal.MetalFileChooserUI");
+                FileSystemView.getFileSystemView().getDefaultDirectory();
+            } catch (ClassNotFoundException exception) {
+                return;
+            }
+
+            mark("klasy okna wyboru pliku");
+        });
+
+        if (shown) report();
+    }
+
+    /**
+     * Zapisuje dodanie odtworzonego dokumentu do okna. Wywoływać w wątku obsługi zdarzeń.
+     * @param count liczba figur dokumentu
+     */
+
+    public void documentShown(int count) {
+        if (shown) return;
+        shown = true;
+
+        mark("dokument w oknie (" + count + " figur)");
+        if (painted) report();
+    }
+
+    /**
+     * Wypisuje czasy etapów na standardowe wyjście błędów po wczytaniu klas okna wyboru pliku,
+     * żeby ten etap też znalazł się w zestawieniu.
+     */
+
+    private void report() {
+        if (REPORT) warmup.whenComplete((result, failure) -> report(System.err));
+    }
+
+    /**
+     * Wypisuje czasy etapów.
+     * @param out strumień, do którego zostaną wypisane czasy
+     */
+
+    private void report(PrintStream out) {
+        synchronized (phases) {
+            out.println("Czasy uruchamiania:");
+            for (String phase : phases) out.println(phase);
+        }
+    }
+
+    /**
+     * Odczytuje z Preferences położenie i rozmiar okna, domyślnie ćwiartkę ekranu w jego lewym górnym rogu.
+     * @return prostokąt okna
+     */
+
+    private static Rectangle readBounds() {
+        var node = Preferences.userRoot().node(PREFERENCES);
+
+        var dimensions = Toolkit.getDefaultToolkit().getScreenSize();
+
+        int windowLeft = node.getInt("left", 0);
+        int windowTop = node.getInt("top", 0);
+        int windowWidth = node.getInt("width", (int) (dimensions.getWidth() / 2));
+        int windowHeight = node.getInt("height", (int) (dimensions.getHeight() / 2));
+
+        return new Rectangle(windowLeft, windowTop, windowWidth, windowHeight);
+    }
+}
@@ -0,0 +1,255 @@
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Obiekt TiledRenderer rysuje duże sceny równolegle. Rysowany obszar jest dzielony na kafelki,
+ * figury pobrane z indeksu przestrzennego są przydzielane kafelkom, które przecinają,
+ * a następnie kafelki są rasteryzowane równolegle w puli ForkJoinPool do osobnych obrazów
+ * i składane w docelowym obiekcie Graphics. Z rysowania kafelkami warto korzystać dopiero
+ * przy scenach większych niż THRESHOLD figur, który można zmienić właściwością figury.tiledThreshold.
+ * Kafelki są wyznaczane na ekranie, więc przy przesuniętym lub oddalonym widoku każdy kafelek
+ * obejmuje odpowiednio większy obszar dokumentu.
+ */
+
+public class TiledRenderer {
+    public static final int THRESHOLD = Integer.getInteger("figury.tiledThreshold", 20_000);
+
+    private static final int TILE_SIZE = 256;
+
+    private final FigureStore store;
+    private final SpatialIndex index;
+    private final ForkJoinPool pool;
+    private final Viewport identity;
+    private final IntList visibleFigures;
+    private final Rectangle2D.Double visibleArea;
+
+    private BufferedImage[] tileImages;
+    private IntList[] tileFigures;
+    private FigurePainter[] tilePainters;
+
+    /**
+     * Tworzy obiekt rysujący figury z magazynu w puli wspólnej ForkJoinPool.
+     * @param store magazyn figur
+     * @param index indeks przestrzenny figur z magazynu
+     */
+
+    public TiledRenderer(FigureStore store, SpatialIndex index) {
+        this(store, index, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tworzy obiekt rysujący figury z magazynu w podanej puli.
+     * @param store magazyn figur
+     * @param index indeks przestrzenny figur z magazynu
+     * @param pool pula wątków rasteryzujących kafelki
+     */
+
+    public TiledRenderer(FigureStore store, SpatialIndex index, ForkJoinPool pool) {
+        this.store = store;
+        this.index = index;
+        this.pool = pool;
+        identity = new Viewport();
+        visibleFigures = new IntList();
+        visibleArea = new Rectangle2D.Double();
+
+        tileImages = new BufferedImage[0];
+        tileFigures = new IntList[0];
+        tilePainters = new FigurePainter[0];
+    }
+
+    /**
+     * Rysuje figury o slotach od from do to, które przecinają dany obszar.
+     * Metoda blokuje wątek wywołujący do czasu złożenia wszystkich kafelków.
+     * @param g obiekt Graphics, w którym zostaną złożone kafelki
+     * @param area rysowany obszar we współrzędnych obiektu Graphics
+     * @param from pierwszy rysowany slot
+     * @param to slot za ostatnim rysowanym
+     * @return liczba narysowanych figur, w której figura leżąca na kilku kafelkach jest liczona kilka razy
+     */
+
+    public int render(Graphics g, Rectangle area, int from, int to) {
+        return render(g, area, identity, from, to);
+    }
+
+    /**
+     * Rysuje w danym widoku figury o slotach od from do to, które przecinają dany obszar ekranu.
+     * Metoda blokuje wątek wywołujący do czasu złożenia wszystkich kafelków.
+     * @param g obiekt Graphics rysujący we współrzędnych ekranu, w którym zostaną złożone kafelki
+     * @param area rysowany obszar we współrzędnych ekranu
+     * @param viewport widok, w którym rysowane są figury
+     * @param from pierwszy rysowany slot
+     * @param to slot za ostatnim rysowanym
+     * @return liczba narysowanych figur, w której figura leżąca na kilku kafelkach jest liczona kilka razy
+     */
+
+    public int render(Graphics g, Rectangle area, Viewport viewport, int from, int to) {
+        if (area.isEmpty() || from >= to) return 0;
+
+        int columns = (area.width + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (area.height + TILE_SIZE - 1) / TILE_SIZE;
+        int tiles = columns * rows;
+
+        ensureTiles(tiles);
+
+        // Wyszukiwanie figur odbywa się w wątku wywołującym, bo indeks przestrzenny nie obsługuje
+        // równoczesnych zapytań. Indeks jest pytany raz o cały obszar, a znalezione figury są
+        // rozdzielane na kafelki, które przecina ich prostokąt na ekranie.
+        for (int i = 0; i < tiles; i++) tileFigures[i].clear();
+
+        visibleFigures.clear();
+        viewport.toWorld(area, visibleArea);
+        index.query(visibleArea, visibleFigures);
+
+        for (int i = 0; i < visibleFigures.size(); i++) {
+            int slot = visibleFigures.get(i);
+            if (slot < from || slot >= to) continue;
+
+            int x = store.getX(slot);
+            int y = store.getY(slot);
+
+            int firstColumn = tileIndex(viewport.toScreenX(x) - area.x, columns);
+            int lastColumn = tileIndex(viewport.toScreenX(x + store.getWidth(slot)) - area.x, columns);
+            int firstRow = tileIndex(viewport.toScreenY(y) - area.y, rows);
+            int lastRow = tileIndex(viewport.toScreenY(y + store.getHeight(slot)) - area.y, rows);
+
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    tileFigures[row * columns + column].add(slot);
+                }
+            }
+        }
+
+        int count = pool.invoke(new RenderTiles(area, viewport, columns, from, to, 0, tiles));
+
+        // Składanie gotowych kafelków w kolejności, w jakiej leżą na ekranie.
+        var tile = new Rectangle();
+
+        for (int i = 0; i < tiles; i++) {
+            tileBounds(area, columns, i, tile);
+            if (!tileFigures[i].isEmpty()) g.drawImage(tileImages[i], tile.x, tile.y, null);
+        }
+
+        return count;
+    }
+
+    /**
+     * Zwraca numer kolumny lub wiersza kafelków, w którym leży współrzędna, ograniczony do rysowanego obszaru.
+     * @param offset współrzędna ekranu względem początku rysowanego obszaru
+     * @param count liczba kolumn lub wierszy kafelków
+     * @return numer kolumny lub wiersza
+     */
+
+    private static int tileIndex(double offset, int count) {
+        return Math.max(0, Math.min(count - 1, (int) Math.floor(offset / TILE_SIZE)));
+    }
+
+    /**
+     * Wylicza prostokąt kafelka o danym numerze.
+     * @param area rysowany obszar
+     * @param columns liczba kolumn kafelków
+     * @param i numer kafelka
+     * @param tile prostokąt, do którego zostanie zapisany wynik
+     */
+
+    private static void tileBounds(Rectangle area, int columns, int i, Rectangle tile) {
+        int x = area.x + (i % columns) * TILE_SIZE;
+        int y = area.y + (i / columns) * TILE_SIZE;
+
+        tile.setBounds(x, y, Math.min(TILE_SIZE, area.x + area.width - x),
+                Math.min(TILE_SIZE, area.y + area.height - y));
+    }
+
+    /**
+     * Zapewnia obrazy, listy figur i obiekty rysujące dla podanej liczby kafelków.
+     * @param tiles liczba kafelków
+     */
+
+    private void ensureTiles(int tiles) {
+        if (tiles <= tileImages.length) return;
+
+        var images = new BufferedImage[tiles];
+        var figures = new IntList[tiles];
+        var painters = new FigurePainter[tiles];
+
+        System.arraycopy(tileImages, 0, images, 0, tileImages.length);
+        System.arraycopy(tileFigures, 0, figures, 0, tileFigures.length);
+        System.arraycopy(tilePainters, 0, painters, 0, tilePainters.length);
+
+        for (int i = tileImages.length; i < tiles; i++) {
+            images[i] = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+            figures[i] = new IntList();
+            painters[i] = new FigurePainter();
+        }
+
+        tileImages = images;
+        tileFigures = figures;
+        tilePainters = painters;
+    }
+
+    /**
+     * Zadanie rasteryzujące kafelki o numerach od first do last, dzielące się na mniejsze
+     * zadania, dopóki obejmuje więcej niż jeden kafelek. Wynikiem jest liczba narysowanych figur.
+     */
+
+    @SuppressWarnings("serial")
+    private class RenderTiles extends RecursiveTask<Integer> {
+        private final Rectangle area;
+        private final Viewport viewport;
+        private final int columns;
+        private final int from;
+        private final int to;
+        private final int first;
+        private final int last;
+
+        private RenderTiles(Rectangle area, Viewport viewport, int columns, int from, int to, int first, int last) {
+            this.area = area;
+            this.viewport = viewport;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                var left = new RenderTiles(area, viewport, columns, from, to, first, middle);
+                var right = new RenderTiles(area, viewport, columns, from, to, middle, last);
+
+                invokeAll(left, right);
+                return left.join() + right.join();
+            }
+
+            IntList figures = tileFigures[first];
+            if (figures.isEmpty()) return 0;
+
+            var tile = new Rectangle();
+            tileBounds(area, columns, first, tile);
+
+            // Czyści kafelek i rysuje na nim figury z zakresu slotów w widoku przesuniętym do układu kafelka.
+            Graphics2D g = tileImages[first].createGraphics();
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.clipRect(0, 0, tile.width, tile.height);
+            g.translate(-tile.x, -tile.y);
+            viewport.apply(g);
+
+            FigurePainter painter = tilePainters[first];
+            painter.setViewport(viewport, tile);
+
+            int count = painter.paint(g, store, figures, from, to);
+            g.dispose();
+
+            // Kafelek bez figur z zakresu nie musi być składany.
+            if (count == 0) figures.clear();
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,579 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Obiekt VectorExporter zapisuje dokument z figurami jako grafikę wektorową SVG albo jednostronicowy
+ * plik PDF, np. do druku. Dokument jest czytany z pliku partiami przez FigureFile.open dwa razy:
+ * najpierw w celu wyliczenia wymiarów dokumentu i zebrania używanych kolorów, a potem w celu
+ * zapisania figur, po jednym elemencie na figurę. Figury nie są wczytywane do magazynu, a tekst
+ * trafia do pliku przez bufor o stałym rozmiarze, więc zużycie pamięci nie zależy od liczby figur.
+ * Powtarzające się kolory są w SVG zapisywane raz jako klasy stylu, a w PDF kolor jest ustawiany
+ * tylko wtedy, gdy kolejna figura ma inny kolor niż poprzednia, a półprzezroczystość przez stany
+ * grafiki zapisane raz dla każdego użytego krycia. Strona obejmuje również figury leżące przy
+ * ujemnych współrzędnych.
+ */
+
+public class VectorExporter {
+    private static final int BATCH_SIZE = 1 << 14;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_STYLES = 1024;
+    private static final int STYLE_TABLE_SIZE = MAX_STYLES * 2;
+    private static final int PDF_MAX_SIZE = 14_400;
+    private static final double BEZIER_CIRCLE = 0.5522847498;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    /**
+     * Format pliku wektorowego.
+     */
+
+    public enum Format {
+        SVG, PDF
+    }
+
+    private final Format format;
+    private final int[] records;
+    private final double[] points;
+    private final int[] styleColors;
+    private final int[] styleIndices;
+    private final boolean[] alphas;
+
+    private int styles;
+    private int documentX;
+    private int documentY;
+    private int documentWidth;
+    private int documentHeight;
+
+    /**
+     * Tworzy obiekt eksportujący dokumenty do plików w podanym formacie. Obiekt przechowuje
+     * tablice pomocnicze, więc każdy wątek eksportujący powinien mieć własny.
+     * @param format format plików wyjściowych
+     */
+
+    public VectorExporter(Format format) {
+        this.format = format;
+        records = new int[BATCH_SIZE * FigureStore.RECORD_INTS];
+        points = new double[8];
+        styleColors = new int[STYLE_TABLE_SIZE];
+        styleIndices = new int[STYLE_TABLE_SIZE];
+        alphas = new boolean[256];
+    }
+
+    /**
+     * Zapisuje dokument z pliku jako grafikę wektorową. Plik wyjściowy powstaje najpierw jako plik
+     * tymczasowy, który zastępuje docelowy plik dopiero po zapisaniu wszystkich figur.
+     * @param input plik z figurami
+     * @param output plik grafiki wektorowej
+     * @return liczba zapisanych figur
+     * @throws IOException jeżeli odczyt dokumentu lub zapis pliku się nie powiedzie
+     */
+
+    public int export(Path input, Path output) throws IOException {
+        measure(input);
+
+        Path temporary = output.resolveSibling(output.getFileName() + ".tmp");
+        int figures;
+        boolean finished = false;
+
+        try (var writer = new Writer(temporary); FigureFile.Reader reader = FigureFile.open(input)) {
+            figures = format == Format.SVG ? writeSvg(reader, writer) : writePdf(reader, writer);
+            finished = true;
+        } finally {
+            if (!finished) Files.deleteIfExists(temporary);
+        }
+
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return figures;
+    }
+
+    /**
+     * Wylicza obszar dokumentu od punktu (0, 0), a jeżeli figury leżą przy ujemnych współrzędnych,
+     * od ich lewego górnego rogu, do prawego dolnego rogu figur. Zbiera do tablicy stylów najwyżej
+     * MAX_STYLES pierwszych kolorów w kolejności ich wystąpienia oraz wszystkie użyte krycia.
+     * @param input plik z figurami
+     * @throws IOException jeżeli odczyt dokumentu się nie powiedzie
+     */
+
+    private void measure(Path input) throws IOException {
+        Arrays.fill(styleIndices, -1);
+        Arrays.fill(alphas, false);
+        styles = 0;
+
+        long left = 0;
+        long top = 0;
+        long right = 1;
+        long bottom = 1;
+
+        try (FigureFile.Reader reader = FigureFile.open(input)) {
+            int count;
+
+            while ((count = reader.read(records, BATCH_SIZE)) > 0) {
+                for (int i = 0, r = 0; i < count; i++, r += FigureStore.RECORD_INTS) {
+                    left = Math.min(left, records[r + 1]);
+                    top = Math.min(top, records[r + 2]);
+                    right = Math.max(right, (long) records[r + 1] + records[r + 3]);
+                    bottom = Math.max(bottom, (long) records[r + 2] + records[r + 4]);
+                    alphas[records[r + 5] >>> 24] = true;
+                    if (styles < MAX_STYLES) addStyle(records[r + 5]);
+                }
+            }
+        }
+
+        documentX = (int) left;
+        documentY = (int) top;
+        documentWidth = (int) Math.min(right - left, Integer.MAX_VALUE);
+        documentHeight = (int) Math.min(bottom - top, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Dodaje kolor do tablicy stylów, jeżeli jeszcze go w niej nie ma.
+     * @param argb kolor ARGB
+     */
+
+    private void addStyle(int argb) {
+        int i = slot(argb);
+        if (styleIndices[i] >= 0) return;
+
+        styleColors[i] = argb;
+        styleIndices[i] = styles++;
+    }
+
+    /**
+     * Zwraca numer klasy stylu koloru.
+     * @param argb kolor ARGB
+     * @return numer klasy lub -1, jeżeli koloru nie ma w tablicy stylów
+     */
+
+    private int style(int argb) {
+        return styleIndices[slot(argb)];
+    }
+
+    /**
+     * Wyszukuje w tablicy stylów miejsce koloru metodą adresowania otwartego. Tablica jest dwa razy
+     * większa niż największa liczba stylów, więc zawsze ma wolne miejsca.
+     * @param argb kolor ARGB
+     * @return pozycja koloru albo pierwsza wolna pozycja, na której powinien się znaleźć
+     */
+
+    private int slot(int argb) {
+        int i = (argb * 0x9E3779B9 >>> 16) & (STYLE_TABLE_SIZE - 1);
+
+        while (styleIndices[i] >= 0 && styleColors[i] != argb) i = (i + 1) & (STYLE_TABLE_SIZE - 1);
+        return i;
+    }
+
+    /**
+     * Zapisuje dokument SVG z klasami stylów dla zebranych kolorów i jednym elementem na figurę.
+     * @param reader obiekt odczytujący figury
+     * @param writer obiekt zapisujący plik
+     * @return liczba zapisanych figur
+     * @throws IOException jeżeli odczyt lub zapis się nie powiedzie
+     */
+
+    private int writeSvg(FigureFile.Reader reader, Writer writer) throws IOException {
+        writer.text("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"")
+                .integer(documentWidth).text("\" height=\"").integer(documentHeight)
+                .text("\" viewBox=\"").integer(documentX).text(" ").integer(documentY).text(" ").integer(documentWidth).text(" ").integer(documentHeight).text("\">\n");
+
+        // Klasy stylów są zapisywane w kolejności numerów, czyli pierwszego wystąpienia koloru.
+        if (styles > 0) {
+            int[] colors = new int[styles];
+            for (int i = 0; i < STYLE_TABLE_SIZE; i++) {
+                if (styleIndices[i] >= 0) colors[styleIndices[i]] = styleColors[i];
+            }
+
+            writer.text("<style>\n");
+            for (int i = 0; i < styles; i++) {
+                writer.text(".c").integer(i).text("{fill:");
+                svgColor(writer, colors[i], ";fill-opacity:");
+                writer.text("}\n");
+            }
+            writer.text("</style>\n");
+        }
+
+        Figures[] figures = Figures.values();
+        int written = 0;
+        int count;
+
+        while ((count = reader.read(records, BATCH_SIZE)) > 0) {
+            for (int i = 0, r = 0; i < count; i++, r += FigureStore.RECORD_INTS) {
+                ShapeKernel kernel = figures[records[r]].kernel();
+                int x = records[r + 1];
+                int y = records[r + 2];
+                int width = records[r + 3];
+                int height = records[r + 4];
+                int vertices = kernel.outline(x, y, width, height, points, 0);
+
+                if (kernel.fillsBounds()) {
+                    writer.text("<rect");
+                    svgFill(writer, records[r + 5]);
+                    writer.text(" x=\"").integer(x).text("\" y=\"").integer(y)
+                            .text("\" width=\"").integer(width).text("\" height=\"").integer(height);
+                } else if (vertices > 0) {
+                    writer.text("<polygon");
+                    svgFill(writer, records[r + 5]);
+                    writer.text(" points=\"");
+                    for (int v = 0; v < vertices; v++) {
+                        if (v > 0) writer.text(" ");
+                        writer.decimal(points[2 * v]).text(",").decimal(points[2 * v + 1]);
+                    }
+                } else {
+                    writer.text("<ellipse");
+                    svgFill(writer, records[r + 5]);
+                    writer.text(" cx=\"").decimal(x + width / 2.0).text("\" cy=\"").decimal(y + height / 2.0)
+                            .text("\" rx=\"").decimal(width / 2.0).text("\" ry=\"").decimal(height / 2.0);
+                }
+
+                writer.text("\"/>\n");
+            }
+
+            written += count;
+        }
+
+        writer.text("</svg>\n");
+        return written;
+    }
+
+    /**
+     * Zapisuje wypełnienie elementu SVG: klasę stylu albo, dla kolorów spoza tablicy stylów, atrybuty koloru.
+     * @param writer obiekt zapisujący plik
+     * @param argb kolor ARGB
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    private void svgFill(Writer writer, int argb) throws IOException {
+        int style = style(argb);
+
+        if (style >= 0) {
+            writer.text(" class=\"c").integer(style).text("\"");
+        } else {
+            writer.text(" fill=\"");
+            svgColor(writer, argb, "\" fill-opacity=\"");
+            writer.text("\"");
+        }
+    }
+
+    /**
+     * Zapisuje kolor w postaci #rrggbb, a jeżeli nie jest nieprzezroczysty, także jego krycie.
+     * @param writer obiekt zapisujący plik
+     * @param argb kolor ARGB
+     * @param opacity tekst poprzedzający krycie
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    private static void svgColor(Writer writer, int argb, String opacity) throws IOException {
+        writer.text("#");
+        for (int shift = 20; shift >= 0; shift -= 4) writer.put(HEX[(argb >>> shift) & 0xF]);
+
+        int alpha = argb >>> 24;
+        if (alpha != 255) writer.text(opacity).decimal(alpha / 255.0);
+    }
+
+    /**
+     * Zapisuje jednostronicowy plik PDF z figurami w jednym strumieniu treści. Strona ma wymiary
+     * dokumentu, zmniejszone do największego rozmiaru strony PDF, jeżeli dokument jest od niego większy.
+     * Każde użyte krycie ma stan grafiki /aN, gdzie N to kanał alfa, ustawiany przy zmianie krycia.
+     * @param reader obiekt odczytujący figury
+     * @param writer obiekt zapisujący plik
+     * @return liczba zapisanych figur
+     * @throws IOException jeżeli odczyt lub zapis się nie powiedzie
+     */
+
+    private int writePdf(FigureFile.Reader reader, Writer writer) throws IOException {
+        double scale = Math.min(1, (double) PDF_MAX_SIZE / Math.max(documentWidth, documentHeight));
+        double pageWidth = documentWidth * scale;
+        double pageHeight = documentHeight * scale;
+        long[] offsets = new long[6];
+
+        writer.text("%PDF-1.4\n");
+
+        offsets[1] = writer.position();
+        writer.text("1 0 obj\n<</Type/Catalog/Pages 2 0 R>>\nendobj\n");
+
+        offsets[2] = writer.position();
+        writer.text("2 0 obj\n<</Type/Pages/Kids[3 0 R]/Count 1>>\nendobj\n");
+
+        offsets[3] = writer.position();
+        writer.text("3 0 obj\n<</Type/Page/Parent 2 0 R/MediaBox[0 0 ").decimal(pageWidth).text(" ")
+                .decimal(pageHeight).text("]/Resources<<");
+        pdfAlphaStates(writer);
+        writer.text(">>/Contents 4 0 R>>\nendobj\n");
+
+        // Długość strumienia nie jest znana przed zapisaniem figur, więc jest osobnym obiektem.
+        offsets[4] = writer.position();
+        writer.text("4 0 obj\n<</Length 5 0 R>>\nstream\n");
+        long streamStart = writer.position();
+
+        // Odwraca oś y, bo w PDF rośnie ona w górę, a w dokumencie w dół, i przesuwa lewy górny róg
+        // dokumentu do lewego górnego rogu strony.
+        writer.decimal(scale).text(" 0 0 ").decimal(-scale).text(" ").decimal(-documentX * scale).text(" ")
+                .decimal(pageHeight + documentY * scale).text(" cm\n");
+
+        Figures[] figures = Figures.values();
+        int written = 0;
+        int count;
+        int color = 0;
+        int alpha = 255;
+        boolean hasColor = false;
+
+        while ((count = reader.read(records, BATCH_SIZE)) > 0) {
+            for (int i = 0, r = 0; i < count; i++, r += FigureStore.RECORD_INTS) {
+                ShapeKernel kernel = figures[records[r]].kernel();
+                int x = records[r + 1];
+                int y = records[r + 2];
+                int width = records[r + 3];
+                int height = records[r + 4];
+                int vertices = kernel.outline(x, y, width, height, points, 0);
+
+                if (!hasColor || records[r + 5] != color) {
+                    color = records[r + 5];
+                    hasColor = true;
+                    writer.decimal((color >> 16 & 0xFF) / 255.0).text(" ").decimal((color >> 8 & 0xFF) / 255.0)
+                            .text(" ").decimal((color & 0xFF) / 255.0).text(" rg\n");
+
+                    if (color >>> 24 != alpha) {
+                        alpha = color >>> 24;
+                        writer.text("/a").integer(alpha).text(" gs\n");
+                    }
+                }
+
+                if (kernel.fillsBounds()) {
+                    writer.integer(x).text(" ").integer(y).text(" ").integer(width).text(" ").integer(height)
+                            .text(" re f\n");
+                } else if (vertices > 0) {
+                    writer.decimal(points[0]).text(" ").decimal(points[1]).text(" m");
+                    for (int v = 1; v < vertices; v++) {
+                        writer.text(" ").decimal(points[2 * v]).text(" ").decimal(points[2 * v + 1]).text(" l");
+                    }
+                    writer.text(" h f\n");
+                } else {
+                    pdfEllipse(writer, x + width / 2.0, y + height / 2.0, width / 2.0, height / 2.0);
+                }
+            }
+
+            written += count;
+        }
+
+        long length = writer.position() - streamStart;
+        writer.text("endstream\nendobj\n");
+
+        offsets[5] = writer.position();
+        writer.text("5 0 obj\n").integer(length).text("\nendobj\n");
+
+        // Każdy wpis tablicy odsyłaczy ma dokładnie 20 bajtów.
+        long xref = writer.position();
+        writer.text("xref\n0 6\n0000000000 65535 f \n");
+        for (int i = 1; i < offsets.length; i++) writer.padded(offsets[i], 10).text(" 00000 n \n");
+
+        writer.text("trailer\n<</Size 6/Root 1 0 R>>\nstartxref\n").integer(xref).text("\n%%EOF\n");
+        return written;
+    }
+
+    /**
+     * Zapisuje słownik stanów grafiki z kryciem wypełnienia dla każdego użytego kanału alfa,
+     * jeżeli któraś figura nie jest nieprzezroczysta.
+     * @param writer obiekt zapisujący plik
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    private void pdfAlphaStates(Writer writer) throws IOException {
+        boolean translucent = false;
+        for (int alpha = 0; alpha < 255; alpha++) translucent |= alphas[alpha];
+        if (!translucent) return;
+
+        writer.text("/ExtGState<<");
+        for (int alpha = 0; alpha < alphas.length; alpha++) {
+            if (alphas[alpha]) writer.text("/a").integer(alpha).text("<</ca ").decimal(alpha / 255.0).text(">>");
+        }
+        writer.text(">>");
+    }
+
+    /**
+     * Zapisuje wypełnioną elipsę jako cztery krzywe Béziera.
+     * @param writer obiekt zapisujący plik
+     * @param cx współrzędna x środka
+     * @param cy współrzędna y środka
+     * @param rx promień poziomy
+     * @param ry promień pionowy
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    private static void pdfEllipse(Writer writer, double cx, double cy, double rx, double ry) throws IOException {
+        double kx = rx * BEZIER_CIRCLE;
+        double ky = ry * BEZIER_CIRCLE;
+
+        writer.decimal(cx + rx).text(" ").decimal(cy).text(" m\n");
+        pdfCurve(writer, cx + rx, cy + ky, cx + kx, cy + ry, cx, cy + ry);
+        pdfCurve(writer, cx - kx, cy + ry, cx - rx, cy + ky, cx - rx, cy);
+        pdfCurve(writer, cx - rx, cy - ky, cx - kx, cy - ry, cx, cy - ry);
+        pdfCurve(writer, cx + kx, cy - ry, cx + rx, cy - ky, cx + rx, cy);
+        writer.text("f\n");
+    }
+
+    /**
+     * Zapisuje krzywą Béziera trzeciego stopnia od bieżącego punktu.
+     * @throws IOException jeżeli zapis się nie powiedzie
+     */
+
+    private static void pdfCurve(Writer writer, double x1, double y1, double x2, double y2, double x3, double y3)
+            throws IOException {
+        writer.decimal(x1).text(" ").decimal(y1).text(" ").decimal(x2).text(" ").decimal(y2).text(" ")
+                .decimal(x3).text(" ").decimal(y3).text(" c\n");
+    }
+
+    /**
+     * Zapisuje tekst ASCII i liczby do kanału pliku przez bufor o stałym rozmiarze, bez tworzenia
+     * obiektów String dla liczb, i liczy zapisane bajty.
+     */
+
+    private static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final byte[] digits;
+
+        private long flushed;
+
+        /**
+         * Tworzy plik i otwiera go do zapisu.
+         * @param path ścieżka pliku
+         * @throws IOException jeżeli nie uda się utworzyć pliku
+         */
+
+        private Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            digits = new byte[20];
+            flushed = 0;
+        }
+
+        /**
+         * Zwraca liczbę bajtów zapisanych od początku pliku.
+         * @return pozycja w pliku
+         */
+
+        private long position() {
+            return flushed + buffer.position();
+        }
+
+        /**
+         * Zapisuje jeden bajt.
+         * @param value bajt
+         * @throws IOException jeżeli zapis się nie powiedzie
+         */
+
+        private void put(byte value) throws IOException {
+            if (!buffer.hasRemaining()) flush();
+            buffer.put(value);
+        }
+
+        /**
+         * Zapisuje tekst złożony ze znaków ASCII.
+         * @param text tekst
+         * @return ten obiekt
+         * @throws IOException jeżeli zapis się nie powiedzie
+         */
+
+        private Writer text(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) put((byte) text.charAt(i));
+            return this;
+        }
+
+        /**
+         * Zapisuje liczbę całkowitą w zapisie dziesiętnym.
+         * @param value liczba
+         * @return ten obiekt
+         * @throws IOException jeżeli zapis się nie powiedzie
+         */
+
+        private Writer integer(long value) throws IOException {
+            return padded(value, 1);
+        }
+
+        /**
+         * Zapisuje liczbę całkowitą w zapisie dziesiętnym, uzupełnioną z przodu zerami do podanej liczby cyfr.
+         * @param value liczba
+         * @param width najmniejsza liczba cyfr
+         * @return ten obiekt
+         * @throws IOException jeżeli zapis się nie powiedzie
+         */
+
+        private Writer padded(long value, int width) throws IOException {
+            if (value < 0) {
+                put((byte) '-');
+                value = -value;
+            }
+
+            int length = 0;
+            do {
+                digits[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0 || length < width);
+
+            while (length > 0) put(digits[--length]);
+            return this;
+        }
+
+        /**
+         * Zapisuje liczbę z dokładnością do trzech miejsc po przecinku, bez zer na końcu części ułamkowej.
+         * @param value liczba
+         * @return ten obiekt
+         * @throws IOException jeżeli zapis się nie powiedzie
+         */
+
+        private Writer decimal(double value) throws IOException {
+            long scaled = Math.round(value * 1000);
+            if (scaled < 0) {
+                put((byte) '-');
+                scaled = -scaled;
+            }
+
+            integer(scaled / 1000);
+
+            int fraction = (int) (scaled % 1000);
+            if (fraction == 0) return this;
+
+            int width = 3;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                width--;
+            }
+
+            put((byte) '.');
+            return padded(fraction, width);
+        }
+
+        /**
+         * Zapisuje zawartość bufora do kanału.
+         * @throws IOException jeżeli zapis się nie powiedzie
+         */
+
+        private void flush() throws IOException {
+            buffer.flip();
+            flushed += buffer.remaining();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Zapisuje resztę bufora, utrwala plik na dysku i go zamyka.
+         * @throws IOException jeżeli zapis się nie powiedzie
+         */
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
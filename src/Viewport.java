@@ -0,0 +1,155 @@
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Obiekt Viewport opisuje, która część dokumentu jest widoczna w komponencie. Punkt dokumentu
+ * (x, y) jest rysowany w punkcie ekranu (x * scale + offsetX, y * scale + offsetY), więc widok
+ * można przesuwać, zmieniając przesunięcie, i przybliżać, zmieniając skalę. Obiekt przelicza
+ * współrzędne kursora na współrzędne dokumentu i obszary ekranu na obszary dokumentu.
+ */
+
+public class Viewport {
+    public static final double MIN_SCALE = 1.0 / 1024;
+    public static final double MAX_SCALE = 64;
+
+    private double scale;
+    private double offsetX;
+    private double offsetY;
+
+    /**
+     * Tworzy widok, w którym współrzędne dokumentu są równe współrzędnym ekranu.
+     */
+
+    public Viewport() {
+        scale = 1;
+        offsetX = 0;
+        offsetY = 0;
+    }
+
+    /**
+     * Zwraca skalę widoku, czyli liczbę pikseli ekranu na jednostkę dokumentu.
+     * @return skala widoku
+     */
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Przesuwa widok o podaną liczbę pikseli ekranu.
+     * @param dx przesunięcie w poziomie
+     * @param dy przesunięcie w pionie
+     */
+
+    public void pan(int dx, int dy) {
+        offsetX += dx;
+        offsetY += dy;
+    }
+
+    /**
+     * Zmienia skalę widoku tak, by punkt dokumentu leżący pod punktem ekranu (x, y) pozostał na miejscu.
+     * Skala jest ograniczona do przedziału od MIN_SCALE do MAX_SCALE.
+     * @param factor mnożnik skali
+     * @param x współrzędna x punktu ekranu
+     * @param y współrzędna y punktu ekranu
+     * @return true jeżeli skala się zmieniła
+     */
+
+    public boolean zoom(double factor, int x, int y) {
+        double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        if (newScale == scale) return false;
+
+        offsetX = x - (x - offsetX) * newScale / scale;
+        offsetY = y - (y - offsetY) * newScale / scale;
+        scale = newScale;
+
+        return true;
+    }
+
+    /**
+     * Przywraca widok, w którym współrzędne dokumentu są równe współrzędnym ekranu.
+     */
+
+    public void reset() {
+        scale = 1;
+        offsetX = 0;
+        offsetY = 0;
+    }
+
+    /**
+     * Przelicza współrzędną x ekranu na współrzędną x dokumentu.
+     * @param x współrzędna x ekranu
+     * @return współrzędna x dokumentu
+     */
+
+    public int toWorldX(int x) {
+        return (int) Math.floor((x - offsetX) / scale);
+    }
+
+    /**
+     * Przelicza współrzędną y ekranu na współrzędną y dokumentu.
+     * @param y współrzędna y ekranu
+     * @return współrzędna y dokumentu
+     */
+
+    public int toWorldY(int y) {
+        return (int) Math.floor((y - offsetY) / scale);
+    }
+
+    /**
+     * Przelicza współrzędną x dokumentu na współrzędną x ekranu.
+     * @param x współrzędna x dokumentu
+     * @return współrzędna x ekranu
+     */
+
+    public double toScreenX(double x) {
+        return x * scale + offsetX;
+    }
+
+    /**
+     * Przelicza współrzędną y dokumentu na współrzędną y ekranu.
+     * @param y współrzędna y dokumentu
+     * @return współrzędna y ekranu
+     */
+
+    public double toScreenY(double y) {
+        return y * scale + offsetY;
+    }
+
+    /**
+     * Wylicza obszar dokumentu widoczny w prostokącie ekranu.
+     * @param screen prostokąt ekranu
+     * @param world prostokąt, do którego zostanie zapisany wynik
+     */
+
+    public void toWorld(Rectangle screen, Rectangle2D world) {
+        world.setRect((screen.x - offsetX) / scale, (screen.y - offsetY) / scale,
+                screen.width / scale, screen.height / scale);
+    }
+
+    /**
+     * Wylicza najmniejszy prostokąt ekranu zawierający prostokąt dokumentu.
+     * @param world prostokąt dokumentu
+     * @param screen prostokąt, do którego zostanie zapisany wynik
+     */
+
+    public void toScreen(Rectangle world, Rectangle screen) {
+        int minX = (int) Math.floor(toScreenX(world.x));
+        int minY = (int) Math.floor(toScreenY(world.y));
+        int maxX = (int) Math.ceil(toScreenX(world.x + world.width));
+        int maxY = (int) Math.ceil(toScreenY(world.y + world.height));
+
+        screen.setBounds(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Dokłada przekształcenie widoku do przekształcenia obiektu Graphics, więc kolejne figury
+     * rysowane we współrzędnych dokumentu trafią na właściwe miejsce ekranu.
+     * @param g obiekt Graphics rysujący we współrzędnych ekranu
+     */
+
+    public void apply(Graphics2D g) {
+        g.translate(offsetX, offsetY);
+        g.scale(scale, scale);
+    }
+}